@@ -0,0 +1,101 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.api.service;
+
+import org.orbisgis.orbisserver.api.model.*;
+
+/**
+ * Asynchronous variant of the {@link Service} interface. The calls return immediately with a {@link ServiceFuture}
+ * completed once the service has done the work, so the caller thread, usually an HTTP thread, is never parked while
+ * the service works. The status changes of the executed jobs can be followed with a {@link StatusListener}.
+ *
+ * A synchronous Service can be used as an AsyncService with the {@link SyncServiceAdapter}.
+ */
+public interface AsyncService extends Service {
+
+    /**
+     * Execute an operation with the given data.
+     *
+     * @param request Request containing all the data for the execution
+     *
+     * @return The future of the statusInfo object containing all the information about the execution
+     */
+    ServiceFuture<StatusInfo> executeOperationAsync(ExecuteRequest request);
+
+    /**
+     * Gets the status of an execution.
+     *
+     * @param request Request containing the identifier of an execution
+     *
+     * @return The future of the statusInfo object containing all the information about the execution
+     */
+    ServiceFuture<StatusInfo> getStatusAsync(StatusRequest request);
+
+    /**
+     * Returns the result according to the data contained in the StatusRequest.
+     *
+     * @param request Object containing all the data to get the result.
+     *
+     * @return The future of the Result object containing the results.
+     */
+    ServiceFuture<Result> getResultAsync(StatusRequest request);
+
+    /**
+     * Returns the operation with the given id.
+     *
+     * @param id Id of the operation to get.
+     *
+     * @return The future of the Operation, completed with null if it is not found.
+     */
+    ServiceFuture<Operation> getOperationAsync(String id);
+
+    /**
+     * Adds a listener notified each time the status of a job executed by the service changes.
+     *
+     * @param listener Listener to add.
+     */
+    void addStatusListener(StatusListener listener);
+
+    /**
+     * Removes a status listener.
+     *
+     * @param listener Listener to remove.
+     */
+    void removeStatusListener(StatusListener listener);
+}
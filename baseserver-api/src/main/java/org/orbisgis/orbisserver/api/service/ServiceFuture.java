@@ -0,0 +1,205 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.api.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of an asynchronous call of a service, completed once by the service. The callbacks added before the
+ * completion are called by the thread completing the future, the ones added after are called immediately by the
+ * thread adding them, so a caller never has to block on {@link #get()}.
+ *
+ * @param <T> Type of the value given by the call.
+ */
+public class ServiceFuture<T> implements Future<T> {
+
+    /** Released once the future is completed. */
+    private final CountDownLatch doneLatch = new CountDownLatch(1);
+    /** Callbacks waiting for the completion, guarded by this. */
+    private List<ServiceCallback<? super T>> callbackList = new ArrayList<>();
+    /** Value of the call. */
+    private T value;
+    /** Cause of the failure of the call, null if it succeeded. */
+    private Throwable cause;
+    /** True if the call has been cancelled. */
+    private boolean cancelled;
+
+    /**
+     * Returns a future already completed with the given value.
+     *
+     * @param value Value of the call.
+     * @param <T> Type of the value.
+     *
+     * @return The completed future.
+     */
+    public static <T> ServiceFuture<T> completed(T value) {
+        ServiceFuture<T> future = new ServiceFuture<>();
+        future.complete(value);
+        return future;
+    }
+
+    /**
+     * Completes the future with the given value.
+     *
+     * @param value Value of the call.
+     *
+     * @return True if the future has been completed by this call, false if it was already done.
+     */
+    public boolean complete(T value) {
+        return finish(value, null, false);
+    }
+
+    /**
+     * Completes the future with a failure.
+     *
+     * @param cause Cause of the failure.
+     *
+     * @return True if the future has been completed by this call, false if it was already done.
+     */
+    public boolean fail(Throwable cause) {
+        return finish(null, cause, false);
+    }
+
+    /**
+     * Adds a callback notified once the future is completed.
+     *
+     * @param callback Callback to notify.
+     *
+     * @return This future.
+     */
+    public ServiceFuture<T> addCallback(ServiceCallback<? super T> callback) {
+        synchronized (this) {
+            if(callbackList != null) {
+                callbackList.add(callback);
+                return this;
+            }
+        }
+        notifyCallback(callback);
+        return this;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(null, new CancellationException(), true);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return callbackList == null;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        doneLatch.await();
+        return getValue();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if(!doneLatch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getValue();
+    }
+
+    /**
+     * Sets the outcome of the call and notifies the waiting callbacks.
+     */
+    private boolean finish(T value, Throwable cause, boolean cancelled) {
+        List<ServiceCallback<? super T>> toNotify;
+        synchronized (this) {
+            if(callbackList == null) {
+                return false;
+            }
+            this.value = value;
+            this.cause = cause;
+            this.cancelled = cancelled;
+            toNotify = callbackList;
+            callbackList = null;
+        }
+        doneLatch.countDown();
+        for(ServiceCallback<? super T> callback : toNotify) {
+            notifyCallback(callback);
+        }
+        return true;
+    }
+
+    /**
+     * Notifies a callback of the outcome of the call.
+     */
+    private void notifyCallback(ServiceCallback<? super T> callback) {
+        T outcome;
+        Throwable failure;
+        synchronized (this) {
+            outcome = value;
+            failure = cause;
+        }
+        if(failure == null) {
+            callback.onSuccess(outcome);
+        }
+        else {
+            callback.onFailure(failure);
+        }
+    }
+
+    /**
+     * Returns the value of a completed future.
+     */
+    private synchronized T getValue() throws ExecutionException {
+        if(cancelled) {
+            throw (CancellationException) cause;
+        }
+        if(cause != null) {
+            throw new ExecutionException(cause);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.api.service;
+
+import org.orbisgis.orbisserver.api.model.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Adapter making a synchronous {@link Service} usable as an {@link AsyncService}. Each asynchronous call runs the
+ * synchronous method on the given executor. As a synchronous service does not push its status changes, the status
+ * listeners are notified of the status given by each execution and each status request.
+ */
+public class SyncServiceAdapter implements AsyncService {
+
+    /** Adapted synchronous service. */
+    private final Service service;
+    /** Executor running the synchronous calls. */
+    private final Executor executor;
+    /** Listeners of the status changes. */
+    private final List<StatusListener> listenerList;
+
+    /**
+     * Main constructor.
+     *
+     * @param service Synchronous service to adapt.
+     * @param executor Executor running the synchronous calls.
+     */
+    public SyncServiceAdapter(Service service, Executor executor) {
+        this.service = service;
+        this.executor = executor;
+        this.listenerList = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Returns the given service as an AsyncService, adapting it if it is only synchronous.
+     *
+     * @param service Service to use asynchronously.
+     * @param executor Executor running the synchronous calls if the service needs to be adapted.
+     *
+     * @return The asynchronous service.
+     */
+    public static AsyncService adapt(Service service, Executor executor) {
+        if(service instanceof AsyncService) {
+            return (AsyncService) service;
+        }
+        return new SyncServiceAdapter(service, executor);
+    }
+
+    /**
+     * Returns the adapted synchronous service.
+     *
+     * @return The adapted service.
+     */
+    public Service getService() {
+        return service;
+    }
+
+    @Override
+    public ServiceFuture<StatusInfo> executeOperationAsync(final ExecuteRequest request) {
+        return notifying(submit(new Callable<StatusInfo>() {
+            @Override
+            public StatusInfo call() {
+                return service.executeOperation(request);
+            }
+        }));
+    }
+
+    @Override
+    public ServiceFuture<StatusInfo> getStatusAsync(final StatusRequest request) {
+        return notifying(submit(new Callable<StatusInfo>() {
+            @Override
+            public StatusInfo call() {
+                return service.getStatus(request);
+            }
+        }));
+    }
+
+    @Override
+    public ServiceFuture<Result> getResultAsync(final StatusRequest request) {
+        return submit(new Callable<Result>() {
+            @Override
+            public Result call() {
+                return service.getResult(request);
+            }
+        });
+    }
+
+    @Override
+    public ServiceFuture<Operation> getOperationAsync(final String id) {
+        return submit(new Callable<Operation>() {
+            @Override
+            public Operation call() {
+                return service.getOperation(id);
+            }
+        });
+    }
+
+    @Override
+    public void addStatusListener(StatusListener listener) {
+        listenerList.add(listener);
+    }
+
+    @Override
+    public void removeStatusListener(StatusListener listener) {
+        listenerList.remove(listener);
+    }
+
+    @Override
+    public void start(Map<String, Object> propertyMap) {
+        service.start(propertyMap);
+    }
+
+    @Override
+    public void shutdown() {
+        service.shutdown();
+    }
+
+    @Override
+    public StatusInfo executeOperation(ExecuteRequest request) {
+        return service.executeOperation(request);
+    }
+
+    @Override
+    public StatusInfo getStatus(StatusRequest request) {
+        return service.getStatus(request);
+    }
+
+    @Override
+    public Result getResult(StatusRequest request) {
+        return service.getResult(request);
+    }
+
+    @Override
+    public List<Operation> getAllOperation() {
+        return service.getAllOperation();
+    }
+
+    @Override
+    public boolean hasOperation(String id) {
+        return service.hasOperation(id);
+    }
+
+    @Override
+    public Operation getOperation(String id) {
+        return service.getOperation(id);
+    }
+
+    /**
+     * Runs a synchronous call on the executor. If the executor rejects it, the call is run by the caller thread.
+     *
+     * @param call Synchronous call.
+     * @param <T> Type of the value given by the call.
+     *
+     * @return The future of the call.
+     */
+    private <T> ServiceFuture<T> submit(final Callable<T> call) {
+        final ServiceFuture<T> future = new ServiceFuture<>();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                if(future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(call.call());
+                } catch (Exception e) {
+                    future.fail(e);
+                }
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+        return future;
+    }
+
+    /**
+     * Notifies the status listeners of the status given by a call.
+     *
+     * @param future Future of the call giving a status.
+     *
+     * @return The given future.
+     */
+    private ServiceFuture<StatusInfo> notifying(ServiceFuture<StatusInfo> future) {
+        return future.addCallback(new ServiceCallback<StatusInfo>() {
+            @Override
+            public void onSuccess(StatusInfo statusInfo) {
+                if(statusInfo != null) {
+                    for(StatusListener listener : listenerList) {
+                        listener.onStatusChanged(statusInfo);
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                //Nothing to notify
+            }
+        });
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load test of the I/O execution modes. Each simulated session does a blocking round trip, like a WPS status request
+ * or the opening of its database, and the session is held if all the round trips end within the latency budget. The
+ * number of sessions is doubled until the budget is exceeded, and the number of sessions held is printed for the
+ * PLATFORM mode, with the pool size of the server, and for the VIRTUAL mode.
+ *
+ * It is only run with the 'loadtest' profile : mvn -P loadtest test
+ */
+public class SessionLoadTest {
+
+    /** Number of threads of the server I/O pool in PLATFORM mode. */
+    private static final int IO_POOL_SIZE = 8;
+    /** Duration in milliseconds of a blocking round trip. */
+    private static final long ROUND_TRIP_MILLIS = 100;
+    /** Maximum time in milliseconds for all the sessions to get their response. */
+    private static final long BUDGET_MILLIS = 1000;
+    /** Maximum number of simulated sessions. */
+    private static final int MAX_SESSIONS = 16384;
+
+    @Test
+    public void concurrentSessions() throws InterruptedException {
+        int platform = maxSessions(IoExecutionMode.PLATFORM);
+        int virtual = maxSessions(IoExecutionMode.VIRTUAL);
+        System.out.println("Concurrent sessions held within "+BUDGET_MILLIS+" ms : "+IoExecutionMode.PLATFORM+" "+
+                platform+", "+IoExecutionMode.VIRTUAL+" "+virtual);
+        assertTrue(platform >= IO_POOL_SIZE);
+        //Without virtual thread support, the VIRTUAL mode falls back to PLATFORM
+        assertTrue(virtual >= platform / 2);
+    }
+
+    /**
+     * Returns the largest number of sessions, doubled at each step, whose round trips all end within the budget.
+     * @param mode Execution mode of the I/O tasks.
+     * @return The number of sessions held.
+     * @throws InterruptedException Exception thrown if the test is interrupted.
+     */
+    private static int maxSessions(IoExecutionMode mode) throws InterruptedException {
+        int held = 0;
+        for(int sessions = IO_POOL_SIZE; sessions <= MAX_SESSIONS; sessions *= 2) {
+            if(!run(mode, sessions)) {
+                break;
+            }
+            held = sessions;
+        }
+        return held;
+    }
+
+    /**
+     * Runs one round trip for each session at the same time.
+     * @param mode Execution mode of the I/O tasks.
+     * @param sessions Number of sessions.
+     * @return True if all the round trips have ended within the budget.
+     * @throws InterruptedException Exception thrown if the test is interrupted.
+     */
+    private static boolean run(IoExecutionMode mode, int sessions) throws InterruptedException {
+        ExecutorService executor = mode.newExecutor("load-" + mode.name().toLowerCase(), IO_POOL_SIZE);
+        final CountDownLatch done = new CountDownLatch(sessions);
+        try {
+            for(int i = 0; i < sessions; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(ROUND_TRIP_MILLIS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        done.countDown();
+                    }
+                });
+            }
+            return done.await(BUDGET_MILLIS, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -40,29 +40,43 @@ package org.orbisgis.orbisserver.baseserver;
 
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Instantiate;
+import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Requires;
+import org.apache.felix.ipojo.annotations.Validate;
 import org.orbisgis.orbisserver.api.BaseServer;
 import org.orbisgis.orbisserver.api.service.ServiceFactory;
 import org.orbisgis.orbisserver.baseserver.model.Session;
+import org.orbisgis.orbisserver.baseserver.model.SessionRegistry;
+import org.orbisgis.orbisserver.baseserver.utils.ConnectionPool;
+import org.orbisgis.orbisserver.baseserver.utils.FairShareScheduler;
+import org.orbisgis.orbisserver.baseserver.utils.IoExecutionMode;
+import org.orbisgis.orbisserver.baseserver.utils.JobStatusTracker;
+import org.orbisgis.orbisserver.baseserver.utils.OperationCatalog;
 import org.orbisgis.orbisserver.baseserver.utils.SessionInitializer;
+import org.orbisgis.orbisserver.baseserver.utils.SpatialIndexer;
+import org.orbisgis.orbisserver.baseserver.utils.TileCache;
+import org.orbisgis.orbisserver.baseserver.utils.UploadWriter;
+import org.orbisgis.orbisserver.baseserver.utils.UserStore;
+import org.orbisgis.orbisserver.baseserver.utils.WarmSessionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wisdom.api.DefaultController;
 import org.wisdom.api.annotations.Controller;
-import org.wisdom.api.concurrent.ManagedExecutorService;
+import org.wisdom.api.configuration.ApplicationConfiguration;
 
 import javax.sql.DataSource;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 /**
  * Main class of the module. This class is the core managing the user auth and the sessions.
@@ -78,28 +92,74 @@ public class BaseServerImpl extends DefaultController implements BaseServer {
     /** Logger of the class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(BaseServerImpl.class);
 
-    /** Cache list of the opened sessions. */
-    private List<Session> openSessionList;
-    /** Cache list of the alive session. */
-    private List<Session> aliveSessionList;
+    /** Number of threads refreshing the status of the running jobs. */
+    private static final int JOB_TRACKER_POOL_SIZE = 2;
+    /** Configuration key of the maximum number of jobs running at the same time on the server. */
+    public static final String JOB_CONCURRENCY_KEY = "orbisserver.jobs.concurrency";
+    /** Configuration key of the execution mode of the I/O bound tasks, 'platform' or 'virtual'. */
+    public static final String IO_MODE_KEY = "orbisserver.io.mode";
+    /** Number of platform threads running the session initialisations when the I/O mode is 'platform'. */
+    private static final int SESSION_INIT_POOL_SIZE = 4;
+    /** Number of platform threads streaming the downloads when the I/O mode is 'platform'. */
+    private static final int IO_POOL_SIZE = 8;
+    /** Configuration key of the number of pre-initialized sessions kept ready. */
+    public static final String WARM_SESSION_POOL_KEY = "orbisserver.session.warmPoolSize";
+    /** Default number of pre-initialized sessions kept ready. */
+    private static final int DEFAULT_WARM_SESSION_POOL_SIZE = 2;
+    /** Configuration key of the maximum number of connections borrowed at the same time from a session database. */
+    public static final String SESSION_DB_POOL_SIZE_KEY = "orbisserver.session.db.poolSize";
+
+    /** Registry of the open and alive sessions. */
+    private SessionRegistry sessionRegistry;
 
     /** List of the service factory registered. */
     private List<ServiceFactory> serviceFactoryList;
+    /** Catalog of the operations of the registered service factories. */
+    private OperationCatalog operationCatalog;
 
-    /** Wisdom executor service, used for the session initialisation. */
-    @Requires(filter = "(name=" + ManagedExecutorService.SYSTEM + ")", proxy = false)
-    ExecutorService executor;
+    /** Executor service used for the session initialisation. */
+    private volatile ExecutorService sessionInitExecutor;
+    /** Executor service used for the streamed downloads. */
+    private volatile ExecutorService ioExecutor;
+    /** Pool of pre-initialized session resources. */
+    private WarmSessionPool warmSessionPool;
+    /** Writer of the uploaded files into the session workspaces. */
+    private UploadWriter uploadWriter;
+    /** Cache of the vector tiles of the session tables. */
+    private TileCache tileCache;
+    /** Builder of the missing spatial indexes of the session tables. */
+    private SpatialIndexer spatialIndexer;
 
     /** Administration database. */
     @Requires DataSource ds;
 
+    /** Access to the users of the administration database. */
+    private UserStore userStore;
+
+    /** Tracker refreshing the status of the running jobs of all the sessions. */
+    private JobStatusTracker jobStatusTracker;
+    /** Scheduler running the jobs of all the sessions. */
+    private volatile FairShareScheduler jobScheduler;
+    /** Scheduler of the result expiration and session inactivity tasks of all the sessions. */
+    private volatile ScheduledThreadPoolExecutor expirationScheduler;
+
+    /** Application configuration. */
+    @Requires
+    ApplicationConfiguration configuration;
+
     /**
      * Main Constructor. It initiate the administration database.
      */
     public BaseServerImpl(){
-        openSessionList = new ArrayList<>();
-        aliveSessionList = new ArrayList<>();
-        serviceFactoryList = new ArrayList<>();
+        sessionRegistry = new SessionRegistry();
+        serviceFactoryList = new CopyOnWriteArrayList<>();
+        operationCatalog = new OperationCatalog();
+        warmSessionPool = new WarmSessionPool(operationCatalog);
+        uploadWriter = new UploadWriter();
+        tileCache = new TileCache(TileCache.DEFAULT_MAX_BYTES);
+        spatialIndexer = new SpatialIndexer();
+        jobStatusTracker = new JobStatusTracker(JOB_TRACKER_POOL_SIZE);
+        userStore = new UserStore(ds, UserStore.DEFAULT_CACHE_SIZE);
         //Read the resource sql script and execute it
         try {
             Statement st = ds.getConnection().createStatement();
@@ -127,14 +187,55 @@ public class BaseServerImpl extends DefaultController implements BaseServer {
         }
     }
 
+    /**
+     * Starts the tracking of the running jobs.
+     */
+    @Validate
+    public void start() {
+        IoExecutionMode ioMode = IoExecutionMode.fromString(configuration.get(IO_MODE_KEY));
+        jobStatusTracker.start(ioMode);
+        sessionInitExecutor = ioMode.newExecutor("session-init", SESSION_INIT_POOL_SIZE);
+        ioExecutor = ioMode.newExecutor("io", IO_POOL_SIZE);
+        int concurrency = configuration.getIntegerWithDefault(JOB_CONCURRENCY_KEY,
+                Runtime.getRuntime().availableProcessors());
+        jobScheduler = new FairShareScheduler(concurrency);
+        expirationScheduler = new ScheduledThreadPoolExecutor(1);
+        expirationScheduler.setRemoveOnCancelPolicy(true);
+        spatialIndexer.start();
+        warmSessionPool.start(
+                configuration.getIntegerWithDefault(WARM_SESSION_POOL_KEY, DEFAULT_WARM_SESSION_POOL_SIZE),
+                configuration.getIntegerWithDefault(SESSION_DB_POOL_SIZE_KEY, ConnectionPool.DEFAULT_MAX_SIZE),
+                sessionInitExecutor);
+        LOGGER.info("Job scheduler started with a concurrency of "+jobScheduler.getGlobalLimit()+", I/O tasks run in "+
+                ioMode+" mode.");
+    }
+
+    /**
+     * Stops the tracking of the running jobs.
+     */
+    @Invalidate
+    public void stop() {
+        jobStatusTracker.shutdown();
+        warmSessionPool.shutdown();
+        sessionInitExecutor.shutdownNow();
+        ioExecutor.shutdownNow();
+        jobScheduler.shutdown();
+        expirationScheduler.shutdownNow();
+        spatialIndexer.shutdown();
+    }
+
     @Override
     public void registerServiceFactory(ServiceFactory serviceFactory){
         serviceFactoryList.add(serviceFactory);
+        warmSessionPool.setServiceFactories(serviceFactoryList);
     }
 
     @Override
     public void unregisterServiceFactory(ServiceFactory serviceFactory) {
-        for(Session session : openSessionList){
+        serviceFactoryList.remove(serviceFactory);
+        warmSessionPool.setServiceFactories(serviceFactoryList);
+        operationCatalog.remove(serviceFactory);
+        for(Session session : sessionRegistry.getSessions()){
             session.shutdownService(serviceFactory.getServiceClass());
         }
     }
@@ -147,154 +248,125 @@ public class BaseServerImpl extends DefaultController implements BaseServer {
      */
     public Session getSession(String username, String password){
         //Check if the combo user/password is valid
-        if(!testUser(username, password)){
+        if(!userStore.isValidUser(username, password)){
             return null;
         }
-        //If the session is already open, return it
-        for(Session s : openSessionList){
-            if(s.getUsername().equals(username)){
-                return s;
-            }
-        }
-        //If the session is already open, return it
-        for(Session s : aliveSessionList){
-            if(s.getUsername().equals(username)){
-                return s;
-            }
+        //If the session is already open or alive, open it and return it
+        Session session = sessionRegistry.findByUsername(username);
+        if(session != null && sessionRegistry.open(session)){
+            return session;
         }
         //Otherwise create a new session and return it
-        Session session = buildSession(username);
-        openSessionList.add(session);
-        return session;
+        return buildSession(username);
     }
 
     /**
-     * Instantiate a session with the user name.
+     * Instantiate a session with the user name and register it. If an other session has been registered for the
+     * same user in the meantime, this one is returned instead.
      * @param username User name.
      * @return An instantiated session.
      */
     private Session buildSession(String username){
         UUID token = UUID.randomUUID();
 
-        //Instantiate the session and initialize it
+        //Instantiate the session, its initialisation is run on first use
         Session session = new Session(username, token, this);
-        SessionInitializer init = new SessionInitializer(
-                session, getSessionOptions(session), token, serviceFactoryList);
-        executor.submit(init);
-
+        session.setInitializer(new SessionInitializer(session, userStore.getSessionOptions(username),
+                warmSessionPool, jobScheduler));
+        //Register the session
+        Session registered = sessionRegistry.register(session);
+        if(registered != session){
+            sessionRegistry.open(registered);
+            return registered;
+        }
         return session;
     }
 
     /**
-     * Gets the properties of a session in the administration database and give it to the session.
-     * @param session Session to set.
+     * Create a session for the given user.
+     * @param username Name of the user.
+     * @return The user session.
      */
-    private Map<String, Object> getSessionOptions(Session session){
-        Map<String, Object> optionMap = new HashMap<>();
-        try {
-            PreparedStatement ps = ds.getConnection().prepareStatement(
-                    "SELECT expirationTime, poolSize FROM session_table WHERE username LIKE ?;");
-            ps.setString(1, session.getUsername());
-            ResultSet rs = ps.executeQuery();
-            rs.first();
-            optionMap.put(Session.PROPERTY_EXPIRATION_TIME_MILLIS, rs.getLong(1));
-            optionMap.put(Session.JOB_POOL_SIZE, rs.getInt(2));
-            rs.close();
-        } catch (SQLException e) {
-            LOGGER.error("Unable to request the database in order to get the session options.\n"+e.getMessage());
+    public Session createSession(String username, String password){
+        if(!userStore.exists(username)) {
+            userStore.addUser(username, password);
         }
-        return optionMap;
+        return getSession(username, password);
     }
 
     /**
-     * Test if the user name and password are correct.
-     * @param username Name of the user.
-     * @param password Password of the user.
-     * @return True if the user is correct, false otherwise.
+     * Updates the password of a user
+     * @param username User name.
+     * @param newPassword New password.
      */
-    private boolean testUser(String username, String password){
-        try {
-            PreparedStatement ps = ds.getConnection().prepareStatement(
-                    "SELECT COUNT(username) FROM session_table WHERE username LIKE ? AND password LIKE ?;");
-            ps.setString(1, username);
-            ps.setString(2, password);
-            ResultSet rs = ps.executeQuery();
-            rs.first();
-            boolean isUser = rs.getInt(1) != 0;
-            rs.close();
-            return isUser;
-        } catch (SQLException e) {
-            LOGGER.error("Unable to request the database in order to test username/password.\n"+e.getLocalizedMessage());
-            for(StackTraceElement el : e.getStackTrace()){
-                LOGGER.error(el.toString());
-            }
+    public void changePassword(String username, String newPassword) {
+        if(userStore.exists(username)) {
+            userStore.changePassword(username, newPassword);
         }
-        return false;
     }
 
     /**
-     * Test if the user name is correct.
-     * @param username Name of the user.
-     * @return True if the user is correct, false otherwise.
+     * Returns the catalog of the operations shared by the sessions.
+     * @return The operation catalog.
      */
-    private boolean testUser(String username){
-        try {
-            PreparedStatement ps = ds.getConnection().prepareStatement(
-                    "SELECT COUNT(username) FROM session_table WHERE username LIKE ?;");
-            ps.setString(1, username);
-            ResultSet rs = ps.executeQuery();
-            rs.first();
-            boolean isUser = rs.getInt(1) != 0;
-            rs.close();
-            return isUser;
-        } catch (SQLException e) {
-            LOGGER.error("Unable to request the database in order to test username.\n"+e.getLocalizedMessage());
-            for(StackTraceElement el : e.getStackTrace()){
-                LOGGER.error(el.toString());
-            }
-        }
-        return false;
+    public OperationCatalog getOperationCatalog() {
+        return operationCatalog;
     }
 
     /**
-     * Create a session for the given user.
-     * @param username Name of the user.
-     * @return The user session.
+     * Returns the tracker of the running jobs.
+     * @return The job status tracker.
      */
-    public Session createSession(String username, String password){
-        if(!testUser(username, password)) {
-            try {
-                PreparedStatement ps = ds.getConnection().prepareStatement(
-                        "INSERT INTO session_table VALUES (?,?);");
-                ps.setString(1, username);
-                ps.setString(2, password);
-                ps.execute();
-            } catch (SQLException e) {
-                LOGGER.error("Unable to add a user.\n" + e.getMessage());
-            }
-        }
-        Session session = getSession(username, password);
-        openSessionList.add(session);
-        return session;
+    public JobStatusTracker getJobStatusTracker() {
+        return jobStatusTracker;
     }
 
     /**
-     * Updates the password of a user
-     * @param username User name.
-     * @param newPassword New password.
+     * Returns the writer of the uploaded files.
+     * @return The upload writer.
      */
-    public void changePassword(String username, String newPassword) {
-        if(testUser(username)) {
-            try {
-                PreparedStatement ps = ds.getConnection().prepareStatement(
-                        "UPDATE user_table SET password = ? WHERE username=?;");
-                ps.setString(1, newPassword);
-                ps.setString(2, username);
-                ps.execute();
-            } catch (SQLException e) {
-                LOGGER.error("Unable to change password.\n" + e.getMessage());
-            }
-        }
+    public UploadWriter getUploadWriter() {
+        return uploadWriter;
+    }
+
+    /**
+     * Returns the cache of the vector tiles of the session tables.
+     * @return The tile cache.
+     */
+    public TileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Returns the builder of the missing spatial indexes of the session tables.
+     * @return The spatial indexer.
+     */
+    public SpatialIndexer getSpatialIndexer() {
+        return spatialIndexer;
+    }
+
+    /**
+     * Returns the executor running the session initialisations.
+     * @return The session initialisation executor.
+     */
+    public ExecutorService getSessionInitExecutor() {
+        return sessionInitExecutor;
+    }
+
+    /**
+     * Returns the executor running the streamed downloads.
+     * @return The I/O executor.
+     */
+    public ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * Returns the scheduler of the result expiration and session inactivity tasks.
+     * @return The expiration scheduler.
+     */
+    public ScheduledExecutorService getExpirationScheduler() {
+        return expirationScheduler;
     }
 
     /**
@@ -302,7 +374,49 @@ public class BaseServerImpl extends DefaultController implements BaseServer {
      * @return The open session list.
      */
     public List<Session> getOpenSessionList() {
-        return openSessionList;
+        return sessionRegistry.getSessions(Session.State.OPEN);
+    }
+
+    /**
+     * Returns the open session with the given job status channel identifier.
+     * @param channelId Identifier of the channel, as given by {@link Session#getChannelId()}.
+     * @return The open session, null if there is no open session with this channel.
+     */
+    public Session findByChannelId(String channelId) {
+        if(channelId == null || channelId.isEmpty()){
+            return null;
+        }
+        for(Session session : sessionRegistry.getSessions(Session.State.OPEN)){
+            if(channelId.equals(session.getChannelId())){
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the open session with the given token.
+     * @param token Token of the session.
+     * @return The open session, null if there is no open session with the given token.
+     */
+    public Session findByToken(UUID token) {
+        return sessionRegistry.findByToken(token);
+    }
+
+    /**
+     * Returns the open session with the given token string, as stored in the client cookie.
+     * @param token String representation of the session token.
+     * @return The open session, null if the token is not valid or if there is no open session with it.
+     */
+    public Session findByToken(String token) {
+        if(token == null || token.isEmpty()){
+            return null;
+        }
+        try {
+            return sessionRegistry.findByToken(UUID.fromString(token));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
     /**
@@ -311,16 +425,11 @@ public class BaseServerImpl extends DefaultController implements BaseServer {
      */
     public void closeSession(String id) {
         //Get the session
-        Session session = null;
-        for(Session s : openSessionList){
-            if(s.getToken().toString().equals(id)){
-                session = s;
-            }
-        }
+        Session session = findByToken(id);
         if(session != null){
-            //If the session is active (some process or result are running), move it to the alive session list
+            //If the session is active (some process or result are running), keep it alive
             if(session.isActive()) {
-                aliveSessionList.add(session);
+                sessionRegistry.markAlive(session);
             }
             //Else (nor more results or process), shutdown the session
             else{
@@ -330,11 +439,11 @@ public class BaseServerImpl extends DefaultController implements BaseServer {
     }
 
     /**
-     * Method called when a session became inactive. If the session is in the alive list, the session should be killed.
+     * Method called when a session became inactive. If the session is alive, the session should be killed.
      * @param session Session which became inactive.
      */
     public void inactiveSession(Session session) {
-        if(!aliveSessionList.contains(session)){
+        if(session.getState() != Session.State.ALIVE){
             return;
         }
         killSession(session);
@@ -345,8 +454,8 @@ public class BaseServerImpl extends DefaultController implements BaseServer {
      * @param session Session to kill.
      */
     public void killSession(Session session){
-        session.shutdown();
-        openSessionList.remove(session);
-        aliveSessionList.remove(session);
+        if(sessionRegistry.expire(session)) {
+            session.shutdown();
+        }
     }
 }
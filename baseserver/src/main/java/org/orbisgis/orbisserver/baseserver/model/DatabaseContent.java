@@ -39,11 +39,16 @@
 package org.orbisgis.orbisserver.baseserver.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represent the DataBase content with its table list.
  * Used to display a view of the DataBase in the client.
+ * A snapshot of the content is immutable and has a version, which changes each time the content changes, so that the
+ * client can only ask for the tables changed since the version it displays.
  *
  * @author Sylvain PALOMINOS
  */
@@ -51,10 +56,23 @@ public class DatabaseContent {
 
     /** List of the tables in the database.*/
     private List<DatabaseTable> tableList;
+    /** Version of the snapshot, 0 if the content is not a snapshot. */
+    private long version;
 
     /** Main constructor */
     public DatabaseContent(){
         this.tableList = new ArrayList<>();
+        this.version = 0;
+    }
+
+    /**
+     * Snapshot constructor.
+     * @param tableList List of the tables in the database, which can not be modified anymore.
+     * @param version Version of the snapshot.
+     */
+    private DatabaseContent(List<DatabaseTable> tableList, long version){
+        this.tableList = Collections.unmodifiableList(new ArrayList<>(tableList));
+        this.version = version;
     }
 
     /**
@@ -72,4 +90,91 @@ public class DatabaseContent {
     public List<DatabaseTable> getTableList(){
         return tableList;
     }
+
+    /**
+     * Returns the table with the given name.
+     * @param name Name of the table.
+     * @return The table, or null if the database has no table with this name.
+     */
+    public DatabaseTable getTable(String name) {
+        for(DatabaseTable table : tableList) {
+            if(table.getName().equals(name)) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the version of the snapshot.
+     * @return The version of the snapshot, 0 if the content is not a snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns an immutable snapshot of the content. If the content is the same as the previous snapshot, the previous
+     * snapshot is returned, otherwise the new snapshot has the next version.
+     * @param previous Previous snapshot, may be null.
+     * @return The snapshot of the content.
+     */
+    public DatabaseContent snapshot(DatabaseContent previous) {
+        if(previous != null && previous.tableList.equals(tableList)) {
+            return previous;
+        }
+        long snapshotVersion = previous == null ? 1 : previous.version + 1;
+        //An unchanged table keeps its version, so that the data cached for it stays valid
+        Map<String, DatabaseTable> previousMap = previous == null ? new HashMap<String, DatabaseTable>() :
+                previous.getTableMap();
+        for(DatabaseTable table : tableList) {
+            DatabaseTable previousTable = previousMap.get(table.getName());
+            table.setVersion(table.equals(previousTable) ? previousTable.getVersion() : snapshotVersion);
+        }
+        return new DatabaseContent(tableList, snapshotVersion);
+    }
+
+    /**
+     * Returns the tables which have been added or changed since the given snapshot.
+     * @param since Previous snapshot.
+     * @return The list of the new and changed tables.
+     */
+    public List<DatabaseTable> getChangedTables(DatabaseContent since) {
+        Map<String, DatabaseTable> previousMap = since.getTableMap();
+        List<DatabaseTable> changedList = new ArrayList<>();
+        for(DatabaseTable table : tableList) {
+            if(!table.equals(previousMap.get(table.getName()))) {
+                changedList.add(table);
+            }
+        }
+        return changedList;
+    }
+
+    /**
+     * Returns the names of the tables which have been removed since the given snapshot.
+     * @param since Previous snapshot.
+     * @return The list of the removed table names.
+     */
+    public List<String> getRemovedTableNames(DatabaseContent since) {
+        Map<String, DatabaseTable> tableMap = getTableMap();
+        List<String> removedList = new ArrayList<>();
+        for(DatabaseTable table : since.tableList) {
+            if(!tableMap.containsKey(table.getName())) {
+                removedList.add(table.getName());
+            }
+        }
+        return removedList;
+    }
+
+    /**
+     * Returns the tables of the content by name.
+     * @return The map of the tables.
+     */
+    private Map<String, DatabaseTable> getTableMap() {
+        Map<String, DatabaseTable> tableMap = new HashMap<>();
+        for(DatabaseTable table : tableList) {
+            tableMap.put(table.getName(), table);
+        }
+        return tableMap;
+    }
 }
@@ -45,10 +45,23 @@ package org.orbisgis.orbisserver.baseserver.model;
  */
 public class DatabaseField {
 
+    /**
+     * State of the spatial index of a geometry column.
+     * NONE : no index and no index requested, PENDING : the index is waiting to be built, BUILDING : the index is being
+     * built, INDEXED : the column has a spatial index, FAILED : the index can not be built.
+     */
+    public enum IndexState {NONE, PENDING, BUILDING, INDEXED, FAILED}
+
     /** Name of the field. */
     private String name;
     /** Type of the field. */
     private String type;
+    /** True if the field is a geometry column. */
+    private boolean geometry;
+    /** SRID of the geometry column, 0 if unknown or if the field is not a geometry. */
+    private int srid;
+    /** State of the spatial index of the geometry column. */
+    private IndexState indexState;
 
     /**
      * Main constructor.
@@ -56,8 +69,22 @@ public class DatabaseField {
      * @param type Type of the field.
      */
     public DatabaseField(String name, String type){
+        this(name, type, false, 0);
+    }
+
+    /**
+     * Constructor.
+     * @param name Name of the field.
+     * @param type Type of the field.
+     * @param geometry True if the field is a geometry column.
+     * @param srid SRID of the geometry column, 0 if unknown.
+     */
+    public DatabaseField(String name, String type, boolean geometry, int srid){
         this.name = name;
         this.type = type;
+        this.geometry = geometry;
+        this.srid = srid;
+        this.indexState = IndexState.NONE;
     }
 
     /**
@@ -67,4 +94,59 @@ public class DatabaseField {
     public String getName(){
         return name;
     }
+
+    /**
+     * Return the type of the field.
+     * @return The type of the field.
+     */
+    public String getType(){
+        return type;
+    }
+
+    /**
+     * Returns true if the field is a geometry column.
+     * @return True if the field is a geometry column, false otherwise.
+     */
+    public boolean isGeometry(){
+        return geometry;
+    }
+
+    /**
+     * Returns the SRID of the geometry column.
+     * @return The SRID of the geometry column, 0 if unknown or if the field is not a geometry.
+     */
+    public int getSrid(){
+        return srid;
+    }
+
+    /**
+     * Sets the state of the spatial index of the geometry column.
+     * @param indexState State of the spatial index.
+     */
+    public void setIndexState(IndexState indexState){
+        this.indexState = indexState;
+    }
+
+    /**
+     * Returns the state of the spatial index of the geometry column.
+     * @return The state of the spatial index, NONE if the field is not a geometry.
+     */
+    public IndexState getIndexState(){
+        return indexState;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof DatabaseField)) {
+            return false;
+        }
+        DatabaseField field = (DatabaseField) obj;
+        return name.equals(field.name) && geometry == field.geometry && srid == field.srid &&
+                indexState == field.indexState && (type == null ? field.type == null : type.equals(field.type));
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
 }
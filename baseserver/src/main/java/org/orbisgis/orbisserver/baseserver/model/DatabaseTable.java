@@ -41,6 +41,7 @@ package org.orbisgis.orbisserver.baseserver.model;
 import org.h2gis.utilities.TableLocation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -50,10 +51,21 @@ import java.util.List;
  */
 public class DatabaseTable {
 
+    /** Type of the base tables, the only ones which can be spatially indexed. */
+    public static final String BASE_TABLE = "TABLE";
+
     /** TableLocation object of the table. */
     private TableLocation tableLocation;
     /** List of fields of the table. */
     private List<DatabaseField> fieldList;
+    /** Estimation of the number of rows of the table, -1 if unknown. */
+    private long rowCountEstimate;
+    /** Estimation of the extent of the table geometries as {minX, minY, maxX, maxY}, null if unknown. */
+    private double[] extent;
+    /** Version of the database content snapshot in which the table has last changed. */
+    private long version;
+    /** Type of the table as given by INFORMATION_SCHEMA.TABLES : TABLE, VIEW, LINKED TABLE or EXTERNAL. */
+    private String tableType;
 
     /**
      * Main constructor.
@@ -62,6 +74,16 @@ public class DatabaseTable {
     public DatabaseTable(TableLocation tableLocation){
         this.tableLocation = tableLocation;
         this.fieldList = new ArrayList();
+        this.rowCountEstimate = -1;
+        this.tableType = BASE_TABLE;
+    }
+
+    /**
+     * Returns the TableLocation of the table.
+     * @return The table location.
+     */
+    public TableLocation getTableLocation() {
+        return tableLocation;
     }
 
     /**
@@ -81,6 +103,43 @@ public class DatabaseTable {
         fieldList.add(new DatabaseField(columnLabel, columnTypeName));
     }
 
+    /**
+     * Adds a geometry field.
+     * @param columnLabel Name of the field.
+     * @param geometryTypeName Geometry type of the field.
+     * @param srid SRID of the field, 0 if unknown.
+     */
+    public void addGeometryField(String columnLabel, String geometryTypeName, int srid) {
+        fieldList.add(new DatabaseField(columnLabel, geometryTypeName, true, srid));
+    }
+
+    /**
+     * Returns the first geometry field of the table.
+     * @return The first geometry field, or null if the table has no geometry.
+     */
+    public DatabaseField getGeometryField() {
+        for(DatabaseField field : fieldList) {
+            if(field.isGeometry()) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the field with the given name.
+     * @param name Name of the field.
+     * @return The field, or null if the table has no field with this name.
+     */
+    public DatabaseField getField(String name) {
+        for(DatabaseField field : fieldList) {
+            if(field.getName().equals(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
     /**
      * Returns the list of the fields.
      * @return The field list.
@@ -88,4 +147,98 @@ public class DatabaseTable {
     public List<DatabaseField> getFieldList(){
         return fieldList;
     }
+
+    /**
+     * Sets the estimation of the number of rows.
+     * @param rowCountEstimate Estimated number of rows, -1 if unknown.
+     */
+    public void setRowCountEstimate(long rowCountEstimate) {
+        this.rowCountEstimate = rowCountEstimate;
+    }
+
+    /**
+     * Returns the estimation of the number of rows.
+     * @return The estimated number of rows, -1 if unknown.
+     */
+    public long getRowCountEstimate() {
+        return rowCountEstimate;
+    }
+
+    /**
+     * Sets the estimation of the extent of the table geometries.
+     * @param extent Estimated extent as {minX, minY, maxX, maxY}, null if unknown.
+     */
+    public void setExtent(double[] extent) {
+        this.extent = extent;
+    }
+
+    /**
+     * Returns the estimation of the extent of the table geometries.
+     * @return The estimated extent as {minX, minY, maxX, maxY}, null if unknown.
+     */
+    public double[] getExtent() {
+        return extent;
+    }
+
+    /**
+     * Sets the type of the table.
+     * @param tableType Type of the table : TABLE, VIEW, LINKED TABLE or EXTERNAL.
+     */
+    public void setTableType(String tableType) {
+        this.tableType = tableType;
+    }
+
+    /**
+     * Returns the type of the table.
+     * @return The type of the table : TABLE, VIEW, LINKED TABLE or EXTERNAL.
+     */
+    public String getTableType() {
+        return tableType;
+    }
+
+    /**
+     * Returns true if the table is a base table, whose geometry columns can be spatially indexed.
+     * @return True if the table is a base table, false for a view, a linked or an external table.
+     */
+    public boolean isBaseTable() {
+        return BASE_TABLE.equals(tableType);
+    }
+
+    /**
+     * Sets the version of the database content snapshot in which the table has last changed.
+     * @param version Version of the snapshot.
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Returns the version of the database content snapshot in which the table has last changed. The version does not
+     * change as long as the structure and the statistics of the table do not change.
+     * @return The version of the table.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Compares the structure and the statistics of two tables, regardless of their version.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof DatabaseTable)) {
+            return false;
+        }
+        DatabaseTable table = (DatabaseTable) obj;
+        return tableLocation.toString().equals(table.tableLocation.toString()) &&
+                (tableType == null ? table.tableType == null : tableType.equals(table.tableType)) &&
+                rowCountEstimate == table.rowCountEstimate &&
+                Arrays.equals(extent, table.extent) &&
+                fieldList.equals(table.fieldList);
+    }
+
+    @Override
+    public int hashCode() {
+        return tableLocation.toString().hashCode();
+    }
 }
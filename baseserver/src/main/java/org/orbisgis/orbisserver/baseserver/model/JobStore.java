@@ -0,0 +1,254 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.model;
+
+import org.orbisgis.orbisserver.api.model.StatusInfo;
+import org.orbisgis.orbisserver.api.service.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread safe store of the jobs of a session, indexed by job identifier. It contains the running jobs and the finished
+ * ones until their results expire.
+ *
+ * The job entries are immutable and replaced atomically, so the state of a job can only move forward :
+ * ACCEPTED -> RUNNING -> SUCCEEDED or FAILED -> EXPIRED.
+ */
+public class JobStore {
+
+    /** State of a job. */
+    public enum JobState {ACCEPTED, RUNNING, SUCCEEDED, FAILED, EXPIRED}
+
+    /** Map of the jobs by identifier. */
+    private final ConcurrentMap<String, Job> jobMap;
+
+    /**
+     * Main constructor.
+     */
+    public JobStore() {
+        jobMap = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Adds a new job to the store.
+     * @param statusInfo First status of the job.
+     * @param service Service running the job.
+     * @return True if the job has been added, false if a job with the same identifier already exists.
+     */
+    public boolean add(StatusInfo statusInfo, Service service) {
+        Job job = new Job(statusInfo.getJobId(), service, stateOf(statusInfo, JobState.ACCEPTED), statusInfo);
+        return jobMap.putIfAbsent(job.getJobId(), job) == null;
+    }
+
+    /**
+     * Returns the job with the given identifier.
+     * @param jobId Identifier of the job.
+     * @return The job, or null if there is no job with this identifier.
+     */
+    public Job get(String jobId) {
+        if(jobId == null) {
+            return null;
+        }
+        return jobMap.get(jobId);
+    }
+
+    /**
+     * Updates the status of a job. The update is rejected if it would move the job state backward, for example a late
+     * RUNNING status received after the SUCCEEDED one.
+     * @param statusInfo New status of the job.
+     * @return The updated job, or null if the job is unknown or if the transition is not allowed.
+     */
+    public Job update(StatusInfo statusInfo) {
+        String jobId = statusInfo.getJobId();
+        while(true) {
+            Job current = jobMap.get(jobId);
+            if(current == null) {
+                return null;
+            }
+            JobState newState = stateOf(statusInfo, current.getState());
+            if(!isAllowed(current.getState(), newState)) {
+                return null;
+            }
+            Job updated = new Job(jobId, current.getService(), newState, statusInfo);
+            if(jobMap.replace(jobId, current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Expires a finished job and removes it from the store.
+     * @param jobId Identifier of the job.
+     * @return The expired job, or null if the job is unknown or not finished.
+     */
+    public Job expire(String jobId) {
+        while(true) {
+            Job current = jobMap.get(jobId);
+            if(current == null || !current.isFinished()) {
+                return null;
+            }
+            if(jobMap.remove(jobId, current)) {
+                return new Job(jobId, current.getService(), JobState.EXPIRED, current.getStatusInfo());
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the status of all the jobs of the store.
+     * @return The list of the job status.
+     */
+    public List<StatusInfo> getStatusInfoList() {
+        List<StatusInfo> list = new ArrayList<>(jobMap.size());
+        for(Job job : jobMap.values()) {
+            list.add(job.getStatusInfo());
+        }
+        return list;
+    }
+
+    /**
+     * Returns true if there is no running job and no available result.
+     * @return True if the store is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return jobMap.isEmpty();
+    }
+
+    /**
+     * Returns the state matching the status of a job.
+     * @param statusInfo Status of the job.
+     * @param defaultState State to use if the status is unknown.
+     * @return The state of the job.
+     */
+    private static JobState stateOf(StatusInfo statusInfo, JobState defaultState) {
+        String status = statusInfo.getStatus();
+        if(status != null) {
+            for(JobState state : JobState.values()) {
+                if(state.name().equalsIgnoreCase(status)) {
+                    return state;
+                }
+            }
+        }
+        return defaultState;
+    }
+
+    /**
+     * Returns true if a job can move from a state to another one.
+     * @param from Current state of the job.
+     * @param to New state of the job.
+     * @return True if the transition is allowed, false otherwise.
+     */
+    private static boolean isAllowed(JobState from, JobState to) {
+        switch(from) {
+            case ACCEPTED:
+            case RUNNING:
+                //Progress updates keep the same state
+                return to.ordinal() >= from.ordinal();
+            case SUCCEEDED:
+            case FAILED:
+                return to == JobState.EXPIRED;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Immutable state of a job.
+     */
+    public static class Job {
+
+        /** Identifier of the job. */
+        private final String jobId;
+        /** Service running the job. */
+        private final Service service;
+        /** State of the job. */
+        private final JobState state;
+        /** Last status of the job. */
+        private final StatusInfo statusInfo;
+
+        private Job(String jobId, Service service, JobState state, StatusInfo statusInfo) {
+            this.jobId = jobId;
+            this.service = service;
+            this.state = state;
+            this.statusInfo = statusInfo;
+        }
+
+        /**
+         * Returns the identifier of the job.
+         * @return The job identifier.
+         */
+        public String getJobId() {
+            return jobId;
+        }
+
+        /**
+         * Returns the service running the job.
+         * @return The job service.
+         */
+        public Service getService() {
+            return service;
+        }
+
+        /**
+         * Returns the state of the job.
+         * @return The job state.
+         */
+        public JobState getState() {
+            return state;
+        }
+
+        /**
+         * Returns the last status of the job.
+         * @return The job status.
+         */
+        public StatusInfo getStatusInfo() {
+            return statusInfo;
+        }
+
+        /**
+         * Returns true if the job has succeeded or failed.
+         * @return True if the job is finished, false otherwise.
+         */
+        public boolean isFinished() {
+            return state == JobState.SUCCEEDED || state == JobState.FAILED;
+        }
+    }
+}
@@ -38,29 +38,43 @@
  */
 package org.orbisgis.orbisserver.baseserver.model;
 
-import org.apache.commons.io.filefilter.NameFileFilter;
-import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.SFSUtilities;
 import org.h2gis.utilities.TableLocation;
 import org.orbisgis.orbisserver.api.model.*;
+import org.orbisgis.orbisserver.api.service.AsyncService;
 import org.orbisgis.orbisserver.api.service.Service;
+import org.orbisgis.orbisserver.api.service.ServiceCallback;
 import org.orbisgis.orbisserver.api.service.ServiceFactory;
+import org.orbisgis.orbisserver.api.service.ServiceFuture;
+import org.orbisgis.orbisserver.api.service.StatusListener;
+import org.orbisgis.orbisserver.api.service.SyncServiceAdapter;
 import org.orbisgis.orbisserver.baseserver.BaseServerImpl;
+import org.orbisgis.orbisserver.baseserver.utils.ArchiveCache;
+import org.orbisgis.orbisserver.baseserver.utils.ConnectionPool;
+import org.orbisgis.orbisserver.baseserver.utils.OperationCatalog;
+import org.orbisgis.orbisserver.baseserver.utils.SpatialIndexer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.io.*;
-import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Session of the server. A session contains a list of Services, a DataSource and a workspace.
@@ -75,52 +89,220 @@ public class Session {
     public static final String PROPERTY_EXPIRATION_TIME_MILLIS = "PROPERTY_EXPIRATION_TIME_MILLIS";
     public static final String JOB_POOL_SIZE = "JOB_POOL_SIZE";
     public static final String SERVICE_LIST = "SERVICE_LIST";
+    public static final String CONNECTION_POOL = "CONNECTION_POOL";
 
-    private static final int BASE_POOL_SIZE = 5;
+    /** Query of the columns of all the user tables with their row count estimation and their geometry type. */
+    private static final String DATABASE_COLUMNS_QUERY =
+            "SELECT C.TABLE_SCHEMA, C.TABLE_NAME, C.COLUMN_NAME, C.TYPE_NAME, T.TABLE_TYPE, T.ROW_COUNT_ESTIMATE, " +
+            "G.F_GEOMETRY_COLUMN, G.GEOMETRY_TYPE, G.SRID, " +
+            "EXISTS(SELECT 1 FROM INFORMATION_SCHEMA.INDEXES I WHERE I.TABLE_SCHEMA = C.TABLE_SCHEMA " +
+            "AND I.TABLE_NAME = C.TABLE_NAME AND I.COLUMN_NAME = C.COLUMN_NAME " +
+            "AND I.INDEX_TYPE_NAME = 'SPATIAL INDEX') SPATIAL_INDEX " +
+            "FROM INFORMATION_SCHEMA.COLUMNS C " +
+            "JOIN INFORMATION_SCHEMA.TABLES T ON T.TABLE_SCHEMA = C.TABLE_SCHEMA AND T.TABLE_NAME = C.TABLE_NAME " +
+            "LEFT JOIN GEOMETRY_COLUMNS G ON G.F_TABLE_SCHEMA = C.TABLE_SCHEMA AND G.F_TABLE_NAME = C.TABLE_NAME " +
+            "AND G.F_GEOMETRY_COLUMN = C.COLUMN_NAME " +
+            "WHERE T.TABLE_TYPE IN ('TABLE', 'LINKED TABLE', 'VIEW', 'EXTERNAL') " +
+            "ORDER BY C.TABLE_SCHEMA, C.TABLE_NAME, C.ORDINAL_POSITION";
+    /** Query of the extent of a geometry column estimated from its spatial index. */
+    private static final String ESTIMATED_EXTENT_QUERY =
+            "SELECT ST_XMin(ST_EstimatedExtent(?, ?)), ST_YMin(ST_EstimatedExtent(?, ?)), " +
+            "ST_XMax(ST_EstimatedExtent(?, ?)), ST_YMax(ST_EstimatedExtent(?, ?))";
+
+    /** Number of previous database content snapshots kept to compute the changes asked by the client. */
+    private static final int CATALOG_HISTORY_SIZE = 8;
+
+    /** Maximum time in milliseconds to wait for the spatial indexes of the tables given to a process. */
+    private static final long INDEX_TIMEOUT_MILLIS = 30000;
+
+    /** Delay in milliseconds before the expiration of a finished job which result gives no expiration date. */
+    private static final long DEFAULT_RESULT_EXPIRATION_MILLIS = 3600000;
+
+    /** Maximum time in milliseconds to wait for the session initialisation. */
+    public static final long READY_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * Lifecycle state of a session.
+     * OPEN : the user is logged in, ALIVE : the user is logged out but jobs are running or results are available,
+     * EXPIRED : the session is shutdown.
+     */
+    public enum State {OPEN, ALIVE, EXPIRED}
 
     /** Token associated to the session. It is used for the identification of the web client requests. */
     private UUID token;
+    /** Opaque identifier of the job status channel of the session, which unlike the token can appear in an URL. */
+    private String channelId;
     /** DataSource associated to the session. This data source is used for the differents services associated. */
     private DataSource ds;
+    /** Connection pool of the session database, closed on the session shutdown. */
+    private ConnectionPool connectionPool;
     /** Executor services dedicated to the session. */
     private ExecutorService executorService;
     /** Workspace folder. */
     private File workspaceFolder;
+    /** Cache of the result archives, stored in the workspace folder. */
+    private volatile ArchiveCache archiveCache;
     /** Username associated to the session. */
     private String username;
     /** List of services instance for the Session. */
     private List<Service> serviceList;
-    /** List of StatusInfo. This list is used as a cache saving all the process executed and waiting for the data
-     * retrieving.*/
-    private List<StatusInfo> statusInfoList;
-    /** Map linking the job id with the service executing it. */
-    private Map<String, Service> jobIdServiceMap;
-    /** Map with the finished job. */
-    private Map<String, StatusInfo> finishedJobMap;
+    /** Store of the running and finished jobs, waiting for the data retrieving. */
+    private JobStore jobStore;
     /** Time before expiration of the session. If equals to -1, there is no expiration. */
     private long expirationTimeMillis;
-    /** ScheduledThreadPoolExecutor for the jobs results expiration and the session inactivity. */
-    private ScheduledThreadPoolExecutor resultExpirationExecutor;
+    /** Pending jobs results expiration and session inactivity tasks, run by the server expiration scheduler. */
+    private Queue<ScheduledFuture<?>> scheduledTaskQueue;
     /** Instance of the BaseServerImpl. */
     private BaseServerImpl baseServerImpl;
     /** Indicates if the session is active or not. */
-    private boolean isActive;
+    private volatile boolean isActive;
+    /** Lifecycle state of the session, managed by the SessionRegistry. */
+    private AtomicReference<State> state;
+    /** Initialisation of the services, the database and the workspace of the session, done once on first use. */
+    private FutureTask<Session> readyTask;
+    /** Future completed by the initialisation task, used to chain the work waiting for the session without blocking. */
+    private ServiceFuture<Session> readyFuture;
+    /** Asynchronous view of each service of the session, notifying the session of the status pushed by the service. */
+    private Map<Service, AsyncService> asyncServiceMap;
+    /** Listener of the status pushed by the services. */
+    private StatusListener statusListener;
+    /** True once the initialisation has been started. */
+    private AtomicBoolean initStarted;
+    /** Last snapshot of the database content, null if it has never been read. */
+    private volatile DatabaseContent catalog;
+    /** Number of invalidations of the database content, read before loading a snapshot. */
+    private AtomicLong catalogInvalidation;
+    /** Invalidation count of the last snapshot, the snapshot is stale if it differs from catalogInvalidation. */
+    private volatile long catalogStamp;
+    /** Last snapshots of the database content by version, guarded by itself. */
+    private Map<Long, DatabaseContent> catalogHistory;
+    /** Version of the data of the tables, increased each time the rows of the tables may have changed. */
+    private AtomicLong dataVersion;
 
     /**
      * Main constructor.
      */
     public Session(String username, UUID token, BaseServerImpl baseServerImpl){
         this.token = token;
+        this.channelId = UUID.randomUUID().toString();
         this.username = username;
         isActive = false;
-        jobIdServiceMap = new HashMap<>();
-        finishedJobMap = new HashMap<>();
-        statusInfoList = new ArrayList<>();
+        state = new AtomicReference<>(State.OPEN);
+        jobStore = new JobStore();
+        scheduledTaskQueue = new ConcurrentLinkedQueue<>();
+        initStarted = new AtomicBoolean(false);
+        catalogInvalidation = new AtomicLong(0);
+        dataVersion = new AtomicLong(0);
+        catalogHistory = new LinkedHashMap<Long, DatabaseContent>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, DatabaseContent> eldest) {
+                return size() > CATALOG_HISTORY_SIZE;
+            }
+        };
         expirationTimeMillis = -1;
         this.serviceList = new ArrayList<>();
+        this.asyncServiceMap = new IdentityHashMap<>();
+        this.statusListener = new StatusListener() {
+            @Override
+            public void onStatusChanged(StatusInfo statusInfo) {
+                onPushedStatus(statusInfo);
+            }
+        };
         this.baseServerImpl = baseServerImpl;
     }
 
+    /**
+     * Sets the task initializing the services, the database and the workspace of the session. The task is run on the
+     * first use of the session.
+     * @param initializer Initialisation task, which calls {@link #setProperties(Map)}.
+     */
+    public void setInitializer(Callable<Session> initializer){
+        this.readyFuture = new ServiceFuture<>();
+        this.readyTask = new FutureTask<Session>(initializer) {
+            @Override
+            protected void done() {
+                if(isCancelled()){
+                    readyFuture.cancel(false);
+                    return;
+                }
+                try {
+                    readyFuture.complete(get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    readyFuture.fail(e);
+                } catch (ExecutionException e) {
+                    readyFuture.fail(e.getCause());
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the future of the session initialisation, starting it if needed. Once done, the services, the database
+     * and the workspace of the session are available.
+     * @return The future of the initialized session.
+     */
+    public Future<Session> getReadyFuture(){
+        startInitialisation();
+        return readyTask;
+    }
+
+    /**
+     * Returns true if the session initialisation is done.
+     * @return True if the session is ready, false otherwise.
+     */
+    public boolean isReady(){
+        return readyTask == null || readyTask.isDone();
+    }
+
+    /**
+     * Starts the session initialisation if needed and waits for it.
+     * @return True if the session is initialized, false if the initialisation failed or timed out.
+     */
+    public boolean awaitReady(){
+        if(readyTask == null){
+            return true;
+        }
+        try {
+            getReadyFuture().get(READY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.error("Unable to initialize the session.\n"+e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            LOGGER.error("The session initialisation is too long.\n"+e.getMessage());
+        } catch (CancellationException e) {
+            LOGGER.error("The session has been closed before its initialisation.");
+        }
+        return false;
+    }
+
+    /**
+     * Starts the session initialisation if needed and returns its future, without waiting for it.
+     * @return The future of the initialized session.
+     */
+    private ServiceFuture<Session> whenReady(){
+        if(readyTask == null){
+            return ServiceFuture.completed(this);
+        }
+        startInitialisation();
+        return readyFuture;
+    }
+
+    /**
+     * Starts the session initialisation on the server executor if not already started.
+     */
+    private void startInitialisation(){
+        if(readyTask != null && initStarted.compareAndSet(false, true)){
+            try {
+                baseServerImpl.getSessionInitExecutor().execute(readyTask);
+            } catch (RejectedExecutionException e) {
+                readyTask.run();
+            }
+        }
+    }
+
     /**
      * Sets the properties of the Session.
      * @param propertyMap Map containing the properties of the session.
@@ -137,19 +319,18 @@ public class Session {
             this.ds = (DataSource) propertyMap.get(ServiceFactory.DATA_SOURCE_PROP);
         }
 
+        if(propertyMap.containsKey(CONNECTION_POOL)) {
+            this.connectionPool = (ConnectionPool) propertyMap.get(CONNECTION_POOL);
+        }
+
         if(propertyMap.containsKey(ServiceFactory.EXECUTOR_SERVICE_PROP)) {
             this.executorService = (ExecutorService) propertyMap.get(ServiceFactory.EXECUTOR_SERVICE_PROP);
         }
 
         if(propertyMap.containsKey(ServiceFactory.WORKSPACE_FOLDER_PROP)) {
             this.workspaceFolder = (File) propertyMap.get(ServiceFactory.WORKSPACE_FOLDER_PROP);
-        }
-
-        if(propertyMap.containsKey(JOB_POOL_SIZE)) {
-            this.resultExpirationExecutor = new ScheduledThreadPoolExecutor((int) propertyMap.get(JOB_POOL_SIZE));
-        }
-        else{
-            this.resultExpirationExecutor = new ScheduledThreadPoolExecutor(BASE_POOL_SIZE);
+            this.archiveCache = new ArchiveCache(new File(workspaceFolder, "archives"), workspaceFolder,
+                    baseServerImpl.getIoExecutor());
         }
 
         if(propertyMap.containsKey(ServiceFactory.DATA_SOURCE_PROP)) {
@@ -159,6 +340,15 @@ public class Session {
             this.serviceList = new ArrayList<>();
             LOGGER.info("No services available on starting the session.");
         }
+        for(AsyncService asyncService : asyncServiceMap.values()){
+            asyncService.removeStatusListener(statusListener);
+        }
+        asyncServiceMap.clear();
+        for(Service service : serviceList){
+            AsyncService asyncService = SyncServiceAdapter.adapt(service, baseServerImpl.getIoExecutor());
+            asyncService.addStatusListener(statusListener);
+            asyncServiceMap.put(service, asyncService);
+        }
     }
 
     /**
@@ -166,14 +356,25 @@ public class Session {
      * @return The session DataSource.
      */
     public DataSource getDataSource(){
+        awaitReady();
         return ds;
     }
 
+    /**
+     * Returns the connection pool of the session database, which gives its usage metrics.
+     * @return The session connection pool, null if the database is not pooled.
+     */
+    public ConnectionPool getConnectionPool(){
+        awaitReady();
+        return connectionPool;
+    }
+
     /**
      * Returns the ExecutorService of the session.
      * @return The session ExecutorService.
      */
     public ExecutorService getExecutorService(){
+        awaitReady();
         return executorService;
     }
 
@@ -182,6 +383,7 @@ public class Session {
      * @return The session workspace folder.
      */
     public File getWorkspaceFolder(){
+        awaitReady();
         return workspaceFolder;
     }
 
@@ -209,16 +411,65 @@ public class Session {
         return isActive;
     }
 
+    /**
+     * Returns the lifecycle state of the session.
+     * @return The session state.
+     */
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Sets the lifecycle state of the session.
+     * @param state New state of the session.
+     */
+    void setState(State state) {
+        this.state.set(state);
+    }
+
+    /**
+     * Atomically sets the state of the session if its current state is the expected one.
+     * @param expected Expected current state.
+     * @param newState New state of the session.
+     * @return True if the state has been changed, false otherwise.
+     */
+    boolean compareAndSetState(State expected, State newState) {
+        return state.compareAndSet(expected, newState);
+    }
+
+    /**
+     * Atomically sets the state of the session and returns the previous one.
+     * @param newState New state of the session.
+     * @return The previous state.
+     */
+    State getAndSetState(State newState) {
+        return state.getAndSet(newState);
+    }
+
     /**
      * Returns the list of operations available in ths session.
      * @return The available operation list.
      */
     public List<Operation> getOperationList(){
-        List<Operation> operationList = new ArrayList<>();
-        for(Service service : serviceList) {
-            operationList.addAll(service.getAllOperation());
+        if(!awaitReady() || serviceList.isEmpty()){
+            return new ArrayList<>();
         }
-        return operationList;
+        return new ArrayList<>(baseServerImpl.getOperationCatalog().getOperations());
+    }
+
+    /**
+     * Returns a page of the operations of the given category available in this session and matching the query.
+     * @param category Category of the operations.
+     * @param query Words to search in the title, the abstract and the keywords of the operations.
+     * @param offset Position of the first operation of the page in the results.
+     * @param limit Maximum number of operations in the page.
+     * @return The page of the matching operations, the best ranked first.
+     */
+    public List<Operation> searchOperations(OperationCatalog.Category category, String query, int offset, int limit){
+        if(!awaitReady() || serviceList.isEmpty()){
+            return new ArrayList<>();
+        }
+        return baseServerImpl.getOperationCatalog().search(category, query, offset, limit);
     }
 
     /**
@@ -227,6 +478,9 @@ public class Session {
      * @return The operation with the given identifier.
      */
     public Operation getOperation(String id) {
+        if(!awaitReady()){
+            return null;
+        }
         Service serv = null;
         for(Service service : serviceList){
             if(service.hasOperation(id)){
@@ -240,13 +494,82 @@ public class Session {
     }
 
     /**
-     * Execute the operation corresponding to the given identifier, using the given input data Map.
+     * Execute the operation corresponding to the given identifier, using the given input data Map. The execution is
+     * chained on the session initialisation and on the spatial indexing of the input tables with callbacks, and the
+     * service is called through its asynchronous interface, so no thread is blocked while waiting for them.
      * @param id Identifier of the operation to execute.
      * @param inputData Input data Map to use on the execution.
+     * @return The future of the status of the started job, which fails if the job can not be started.
      */
-    public void executeOperation(String id, Map<String, String> inputData) {
-        isActive = true;
+    public ServiceFuture<StatusInfo> executeOperation(final String id, final Map<String, String> inputData) {
+        final ServiceFuture<StatusInfo> future = new ServiceFuture<>();
+        if(!isReady()){
+            schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if(future.fail(new TimeoutException("The session initialisation is too long."))){
+                        LOGGER.error("Unable to execute the operation '"+id+"', the session initialisation is " +
+                                "too long.");
+                    }
+                }
+            }, READY_TIMEOUT_MILLIS);
+        }
+        whenReady().addCallback(new ServiceCallback<Session>() {
+            @Override
+            public void onSuccess(Session session) {
+                dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            prepareOperation(id, inputData, future);
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Unable to execute the operation '"+id+"'.\n"+e.getMessage());
+                            future.fail(e);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                LOGGER.error("Unable to initialize the session.\n"+cause.getMessage());
+                future.fail(cause);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Runs a task on the I/O executor of the server, or on the caller thread if the executor is stopping.
+     * @param task Task to run.
+     */
+    private void dispatch(Runnable task){
+        try {
+            baseServerImpl.getIoExecutor().execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * Prepares the inputs of an operation, then starts its execution once the input tables are spatially indexed.
+     * @param id Identifier of the operation to execute.
+     * @param inputData Input data Map to use on the execution.
+     * @param future Future completed with the status of the started job.
+     */
+    private void prepareOperation(final String id, Map<String, String> inputData,
+                                  final ServiceFuture<StatusInfo> future) {
+        //The call has already failed, on the initialisation timeout
+        if(future.isDone()){
+            return;
+        }
         Operation operation = getOperation(id);
+        if(operation == null){
+            LOGGER.error("Unable to find the operation '"+id+"'.");
+            future.fail(new IllegalArgumentException("Unable to find the operation '"+id+"'."));
+            return;
+        }
+        isActive = true;
         Map<String, String> tmpMap = new HashMap<>();
         for(Input input : operation.getInputList()){
             if(input.getName().equalsIgnoreCase("RawData")){
@@ -258,19 +581,98 @@ public class Session {
             }
         }
         inputData.putAll(tmpMap);
-        ExecuteRequest executeRequest = new ExecuteRequest(id, inputData);
         Service serv = null;
         for(Service service : serviceList){
             if(service.hasOperation(id)){
                 serv = service;
             }
         }
-        if(serv != null) {
-            StatusInfo statusInfo = serv.executeOperation(executeRequest);
-            statusInfo.setProcessID(id);
-            statusInfo.setProcessTitle(getTitle(id));
-            statusInfoList.add(statusInfo);
-            jobIdServiceMap.put(statusInfo.getJobId(), serv);
+        if(serv == null) {
+            future.fail(new IllegalArgumentException("No service offers the operation '"+id+"'."));
+            return;
+        }
+        //The tables given to the process are indexed before its execution
+        List<String> tableNames = new ArrayList<>();
+        for(Input input : operation.getInputList()){
+            String value = inputData.get(input.getId());
+            if(input.getName().equalsIgnoreCase("JDBCTable") && value != null && !value.isEmpty()){
+                tableNames.add(value);
+            }
+        }
+        final Service jobService = serv;
+        final ExecuteRequest executeRequest = new ExecuteRequest(id, inputData);
+        whenSpatialIndexed(tableNames).addCallback(new ServiceCallback<Void>() {
+            @Override
+            public void onSuccess(Void value) {
+                startOperation(id, jobService, executeRequest, future);
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                startOperation(id, jobService, executeRequest, future);
+            }
+        });
+    }
+
+    /**
+     * Starts the execution of an operation by its service, then tracks the job.
+     * @param id Identifier of the operation to execute.
+     * @param jobService Service offering the operation.
+     * @param executeRequest Request of the execution.
+     * @param future Future completed with the status of the started job.
+     */
+    private void startOperation(final String id, final Service jobService, ExecuteRequest executeRequest,
+                                final ServiceFuture<StatusInfo> future) {
+        if(future.isDone()){
+            return;
+        }
+        AsyncService asyncService = asyncServiceMap.get(jobService);
+        if(asyncService == null){
+            asyncService = SyncServiceAdapter.adapt(jobService, baseServerImpl.getIoExecutor());
+        }
+        asyncService.executeOperationAsync(executeRequest)
+                .addCallback(new ServiceCallback<StatusInfo>() {
+                    @Override
+                    public void onSuccess(StatusInfo statusInfo) {
+                        if(statusInfo == null){
+                            onFailure(new IllegalStateException("The service gave no status."));
+                            return;
+                        }
+                        statusInfo.setProcessID(id);
+                        statusInfo.setProcessTitle(getTitle(id));
+                        jobStore.add(statusInfo, jobService);
+                        baseServerImpl.getJobStatusTracker().track(Session.this, statusInfo);
+                        future.complete(statusInfo);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable cause) {
+                        LOGGER.error("Unable to execute the operation '"+id+"'.\n"+cause.getMessage());
+                        future.fail(cause);
+                    }
+                });
+    }
+
+    /**
+     * Handles a status pushed by a service. The intermediate status of a known job is stored and sent to the clients.
+     * The final status is left to the {@link org.orbisgis.orbisserver.baseserver.utils.JobStatusTracker}, which also
+     * retrieves the result of the job.
+     * @param statusInfo Status pushed by the service.
+     */
+    private void onPushedStatus(StatusInfo statusInfo){
+        if(statusInfo == null || statusInfo.getJobId() == null || statusInfo.hasResult() ||
+                "SUCCEEDED".equalsIgnoreCase(statusInfo.getStatus()) ||
+                "FAILED".equalsIgnoreCase(statusInfo.getStatus())){
+            return;
+        }
+        JobStore.Job job = jobStore.get(statusInfo.getJobId());
+        if(job == null || job.isFinished()){
+            return;
+        }
+        statusInfo.setProcessID(job.getStatusInfo().getProcessID());
+        statusInfo.setProcessTitle(job.getStatusInfo().getProcessTitle());
+        if(jobStore.update(statusInfo) != null){
+            baseServerImpl.getJobStatusTracker().publish(this, statusInfo);
         }
     }
 
@@ -293,76 +695,70 @@ public class Session {
      * @return The cached StatusInfo list.
      */
     public List<StatusInfo> getAllStatusInfo(){
-        List<StatusInfo> list = new ArrayList<>();
-        list.addAll(statusInfoList);
-        for(Map.Entry<String, StatusInfo> entry : finishedJobMap.entrySet()){
-            list.add(entry.getValue());
-        }
-        return list;
+        return jobStore.getStatusInfoList();
     }
 
     /**
-     * Return the list of all the StatusInfo with the next poll date is reached and which needs to be refreshed.
-     * @return The list of Status info to refresh.
+     * Returns the service running the job with the given identifier.
+     * @param jobId Identifier of the job.
+     * @return The service running the job, or null if the job is not running.
      */
-    public List<StatusInfo> getAllStatusInfoToRefresh() {
-        List<StatusInfo> allStatusInfoToRefresh = new ArrayList<>();
-        long timeMillisNow = System.currentTimeMillis();
-        for(StatusInfo statusInfo : statusInfoList){
-            long comparison = -1;
-            if(statusInfo.getNextPoll() != null) {
-                long timeMillisPoll = statusInfo.getNextPoll().toGregorianCalendar().getTime().getTime();
-                comparison = timeMillisPoll - timeMillisNow;
-            }
-            if(comparison < 0) {
-                allStatusInfoToRefresh.add(statusInfo);
-            }
+    public Service getJobService(String jobId) {
+        JobStore.Job job = jobStore.get(jobId);
+        if(job == null || job.isFinished()){
+            return null;
         }
-        return allStatusInfoToRefresh;
+        return job.getService();
     }
 
     /**
-     * Refresh the status of the job with the given identifier.
+     * Refresh the status of the given job. If the service does not answer, the previous status is kept.
+     * @param statusInfo Last status of the job to refresh.
+     * @return The refreshed status of the job, or null if the job is not known by the session anymore.
      */
-    public long refreshStatus(StatusInfo statusInfo) {
+    public StatusInfo refreshStatus(StatusInfo statusInfo) {
         long timeMillisNow = System.currentTimeMillis();
-        long minRefresh = Long.MAX_VALUE;
         String jobId = statusInfo.getJobId();
-        Service service = jobIdServiceMap.get(jobId);
-        StatusRequest statusRequest = new StatusRequest(jobId);
-
-        StatusInfo statusInfoToRemove = null;
-        for(StatusInfo info : statusInfoList){
-            if(info.getJobId().equalsIgnoreCase(jobId)){
-                statusInfoToRemove = info;
-            }
+        Service service = getJobService(jobId);
+        if(service == null){
+            return null;
         }
-        statusInfoList.remove(statusInfoToRemove);
+        StatusRequest statusRequest = new StatusRequest(jobId);
 
         StatusInfo info = service.getStatus(statusRequest);
-        if(info != null){
-            statusRequest.setProcessId(statusInfo.getProcessID());
-            info.setProcessID(statusInfo.getProcessID());
-            info.setProcessTitle(statusInfo.getProcessTitle());
-            info.setNextRefreshMillis(-1);
-            if (info.getNextPoll() != null) {
-                long timeMillisPoll = info.getNextPoll().toGregorianCalendar().getTime().getTime();
-                info.setNextRefreshMillis(timeMillisPoll - timeMillisNow);
-            }
-            if(info.getStatus().equalsIgnoreCase("SUCCEEDED") || info.getStatus().equalsIgnoreCase("FAILED")){
-                info.setResult(service.getResult(statusRequest));
-                //Schedule the expiration of the result
-                resultExpirationExecutor.schedule(new ResultExpirationTask(jobId, this),
-                        info.getResult().getExpirationDate().toGregorianCalendar().getTimeInMillis()-timeMillisNow,
-                        TimeUnit.MILLISECONDS);
-                jobIdServiceMap.remove(jobId);
-                finishedJobMap.put(jobId, info);
-            }
-            else{
-                statusInfoList.add(info);
-            }
+        if(info == null){
+            return statusInfo;
         }
-        return minRefresh;
+        statusRequest.setProcessId(statusInfo.getProcessID());
+        info.setProcessID(statusInfo.getProcessID());
+        info.setProcessTitle(statusInfo.getProcessTitle());
+        info.setNextRefreshMillis(-1);
+        if (info.getNextPoll() != null) {
+            long timeMillisPoll = info.getNextPoll().toGregorianCalendar().getTime().getTime();
+            info.setNextRefreshMillis(timeMillisPoll - timeMillisNow);
+        }
+        if("SUCCEEDED".equalsIgnoreCase(info.getStatus()) || "FAILED".equalsIgnoreCase(info.getStatus())){
+            //A failed job may have no result
+            info.setResult(service.getResult(statusRequest));
+        }
+        //The expiration delay is computed before the update, so nothing can fail once the job is marked finished
+        long expirationDelayMillis = DEFAULT_RESULT_EXPIRATION_MILLIS;
+        if(info.getResult() != null && info.getResult().getExpirationDate() != null){
+            expirationDelayMillis = Math.max(0,
+                    info.getResult().getExpirationDate().toGregorianCalendar().getTimeInMillis() - timeMillisNow);
+        }
+        JobStore.Job job = jobStore.update(info);
+        //The job has been finished or expired in the meantime
+        if(job == null){
+            return null;
+        }
+        if(job.isFinished()){
+            //An import or a process may have changed the database
+            invalidateTableData();
+            //Schedule the expiration of the result
+            schedule(new ResultExpirationTask(jobId, this), expirationDelayMillis);
+        }
+        return info;
     }
 
     /**
@@ -374,145 +770,326 @@ public class Session {
     }
 
     /**
-     * Returns the DatabaseContent object which contains the representation of the Database.
-     * @return The DatabaseContent object.
+     * Returns the identifier of the job status channel of the session.
+     * @return The channel identifier.
+     */
+    public String getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * Returns the snapshot of the DatabaseContent object which contains the representation of the Database.
+     * The snapshot is cached and only read again from the database once invalidated by
+     * {@link #invalidateDatabaseContent()}. If the database can not be read, the previous snapshot is kept and the
+     * content is read again on the next call.
+     * @return The DatabaseContent snapshot.
      */
     public DatabaseContent getDatabaseContent(){
-        DatabaseContent dbContent = new DatabaseContent();
-        try(Connection connection = ds.getConnection()) {
-            for(String tableName : JDBCUtilities.getTableNames(connection.getMetaData(), null, null, null, new String[]{"TABLE","LINKED TABLE","VIEW","EXTERNAL","UIodfsghjmodfhjgodujhfg"})){
-                DatabaseTable dbTable = new DatabaseTable(TableLocation.parse(tableName));
-                //Get the list of the columns of a table
-                ResultSet rs1 = connection.createStatement().executeQuery(String.format("select * from %s limit 1",
-                        dbTable.getName()));
-                ResultSetMetaData metaData = rs1.getMetaData();
-                //If the column isn't a geometry, add it to the map
-                for(int i=1; i<=metaData.getColumnCount(); i++){
-                    if(!metaData.getColumnTypeName(i).equalsIgnoreCase("GEOMETRY")){
-                        dbTable.addField(metaData.getColumnLabel(i), metaData.getColumnTypeName(i));
-                    }
+        DatabaseContent current = catalog;
+        if(current != null && catalogStamp == catalogInvalidation.get()){
+            return current;
+        }
+        if(!awaitReady()){
+            return new DatabaseContent();
+        }
+        synchronized (catalogHistory) {
+            current = catalog;
+            //The invalidation count is read before the loading, so an invalidation during it is not missed
+            long stamp = catalogInvalidation.get();
+            if(current != null && catalogStamp == stamp){
+                return current;
+            }
+            DatabaseContent loaded;
+            try {
+                loaded = loadDatabaseContent();
+            } catch (SQLException e) {
+                //A transient failure must not publish an empty content, which would remove all the tables
+                LOGGER.error("Unable to get the database information.\nCause : "+e.getMessage());
+                return current == null ? new DatabaseContent() : current;
+            }
+            requestSpatialIndexes(loaded);
+            DatabaseContent snapshot = loaded.snapshot(current);
+            catalogHistory.put(snapshot.getVersion(), snapshot);
+            catalog = snapshot;
+            catalogStamp = stamp;
+            return snapshot;
+        }
+    }
+
+    /**
+     * Requests the building of the missing spatial indexes of the geometry columns and sets the index state of the
+     * columns.
+     * @param dbContent Database content read from the database.
+     */
+    private void requestSpatialIndexes(DatabaseContent dbContent){
+        SpatialIndexer spatialIndexer = baseServerImpl.getSpatialIndexer();
+        for(DatabaseTable dbTable : dbContent.getTableList()){
+            //A view, a linked or an external table can not be spatially indexed
+            if(!dbTable.isBaseTable()){
+                continue;
+            }
+            for(DatabaseField dbField : dbTable.getFieldList()){
+                if(dbField.isGeometry() && dbField.getIndexState() != DatabaseField.IndexState.INDEXED){
+                    spatialIndexer.request(this, dbTable, dbField);
+                    dbField.setIndexState(spatialIndexer.getState(this, dbTable, dbField));
                 }
-                //Once the non geometric columns are get, do the same with the geometric one.
-                Statement statement = connection.createStatement();
-                String query = String.format("SELECT * FROM GEOMETRY_COLUMNS WHERE F_TABLE_NAME LIKE '%s';",
-                        TableLocation.parse(dbTable.getName()).getTable());
-                ResultSet rs = statement.executeQuery(query);
-                while (rs.next()) {
-                    dbTable.addField(rs.getString(4), SFSUtilities.getGeometryTypeNameFromCode(rs.getInt(6)));
+            }
+        }
+    }
+
+    /**
+     * Requests the spatial indexes of the geometry columns of the given tables. The returned future is completed once
+     * all the indexes are built or failed, or once the index timeout is reached. A table which is not found or an
+     * index which is not built in time is ignored.
+     * @param tableNames Names of the tables.
+     * @return The future completed when the process can be started.
+     */
+    private ServiceFuture<Void> whenSpatialIndexed(final List<String> tableNames){
+        if(tableNames.isEmpty()){
+            return ServiceFuture.completed(null);
+        }
+        DatabaseContent dbContent = getDatabaseContent();
+        List<ServiceFuture<DatabaseField.IndexState>> indexFutureList = new ArrayList<>();
+        for(String tableName : tableNames){
+            DatabaseTable dbTable = dbContent.getTable(TableLocation.parse(tableName).getTable());
+            if(dbTable == null || !dbTable.isBaseTable()){
+                continue;
+            }
+            for(DatabaseField dbField : dbTable.getFieldList()){
+                if(dbField.isGeometry() && dbField.getIndexState() != DatabaseField.IndexState.INDEXED){
+                    indexFutureList.add(baseServerImpl.getSpatialIndexer().request(this, dbTable, dbField));
                 }
-                dbContent.addTable(dbTable);
             }
-        } catch (SQLException e) {
-            LOGGER.error("Unable to get the database information.\nCause : "+e.getMessage());
         }
-        return dbContent;
+        if(indexFutureList.isEmpty()){
+            return ServiceFuture.completed(null);
+        }
+        final ServiceFuture<Void> indexed = new ServiceFuture<>();
+        final AtomicInteger pending = new AtomicInteger(indexFutureList.size());
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                if(indexed.complete(null)){
+                    LOGGER.warn("The spatial indexes of the tables "+tableNames+" are not built in time, the " +
+                            "process runs without them.");
+                }
+            }
+        }, INDEX_TIMEOUT_MILLIS);
+        for(ServiceFuture<DatabaseField.IndexState> indexFuture : indexFutureList){
+            indexFuture.addCallback(new ServiceCallback<DatabaseField.IndexState>() {
+                @Override
+                public void onSuccess(DatabaseField.IndexState state) {
+                    if(pending.decrementAndGet() == 0){
+                        indexed.complete(null);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    LOGGER.warn("A spatial index of the tables "+tableNames+" is not available, the process runs " +
+                            "without it.\n"+cause.getMessage());
+                    onSuccess(null);
+                }
+            });
+        }
+        return indexed;
     }
 
     /**
-     * Generate an archive with the result of the job available on the server.
-     * @param jobId Id of the job which has generated the results.
-     * @return File object of the archive containing the results. If an error appends in the archive creation, returns null.
-     */
-    public File getResultAchive(String jobId){
-        File jobFolder = new File(workspaceFolder, jobId);
-        for(StatusInfo statusInfo : getAllStatusInfo()){
-            if(statusInfo.getJobId().equalsIgnoreCase(jobId)){
-                //Once the good StatusInfo in found, for each output store its data in the archive
-                for(Output out : statusInfo.getResult().getOutputList()){
-                    //In the case of plain data, write it into a file
-                    if(out.getData() != null){
-                        try {
-                            for(Object content : out.getData().getContent()) {
-                                File outFile;
-                                //If a file with the output name already exists, adds a number to it
-                                if(jobFolder.list(new NameFileFilter(out.getTitle()))!= null){
-                                    int diff=1;
-                                    while(jobFolder.list(new NameFileFilter(out.getTitle()+diff)) != null){
-                                        diff++;
-                                    }
-                                    outFile = new File(jobFolder, out.getTitle().replaceAll(File.separator, "")+diff);
-                                }
-                                else {
-                                    outFile = new File(jobFolder, out.getTitle().replaceAll(File.separator, ""));
-                                }
-                                //Create the file and write data inside
-                                if (jobFolder.mkdirs() || outFile.createNewFile()) {
-                                    try (FileWriter fileWriter = new FileWriter(outFile)) {
-                                        try (PrintWriter out1 = new PrintWriter(fileWriter)) {
-                                            out1.append(content.toString());
-                                        }
-                                    }
-                                } else {
-                                    LOGGER.error("Unable to create the output as a file.");
-                                }
-                            }
-                        } catch (IOException e) {
-                            LOGGER.error("Unable to write the output as a file.\n"+e.getMessage());
+     * Returns a previous snapshot of the database content.
+     * @param version Version of the snapshot.
+     * @return The snapshot, or null if the version is not known anymore.
+     */
+    public DatabaseContent getDatabaseContent(long version){
+        synchronized (catalogHistory) {
+            return catalogHistory.get(version);
+        }
+    }
+
+    /**
+     * Marks the cached database content as stale, so that it is read again on the next access. It should be called
+     * each time a table may have been created, modified or removed.
+     */
+    public void invalidateDatabaseContent(){
+        catalogInvalidation.incrementAndGet();
+    }
+
+    /**
+     * Marks the rows of all the tables as changed. The version of the table metadata does not change on an in place
+     * modification of the rows, so the data version is increased and the cached tiles of the session are evicted.
+     * The database content is also invalidated. It should be called each time a job or an upload may have modified
+     * the database.
+     */
+    public void invalidateTableData(){
+        dataVersion.incrementAndGet();
+        baseServerImpl.getTileCache().evictSession(token.toString());
+        invalidateDatabaseContent();
+    }
+
+    /**
+     * Returns the version of the data of the tables, which changes each time the rows of the tables may have changed.
+     * @return The data version.
+     */
+    public long getDataVersion(){
+        return dataVersion.get();
+    }
+
+    /**
+     * Reads the DatabaseContent object which contains the representation of the Database.
+     * The columns of all the tables are read in one query and the row counts come from the table statistics, so no
+     * table is scanned.
+     * @return The DatabaseContent object.
+     * @throws SQLException Exception thrown if the tables can not be read.
+     */
+    private DatabaseContent loadDatabaseContent() throws SQLException {
+        DatabaseContent dbContent = new DatabaseContent();
+        try(Connection connection = ds.getConnection()) {
+            List<DatabaseTable> geometryTableList = new ArrayList<>();
+            List<String> geometryColumnList = new ArrayList<>();
+            try(Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery(DATABASE_COLUMNS_QUERY)) {
+                DatabaseTable dbTable = null;
+                while (rs.next()) {
+                    String schema = rs.getString("TABLE_SCHEMA");
+                    String table = rs.getString("TABLE_NAME");
+                    //The columns are ordered by table, so a new table starts when the name changes
+                    if(dbTable == null || !table.equals(dbTable.getTableLocation().getTable()) ||
+                            !schema.equals(dbTable.getTableLocation().getSchema())) {
+                        dbTable = new DatabaseTable(new TableLocation(schema, table));
+                        dbTable.setRowCountEstimate(rs.getLong("ROW_COUNT_ESTIMATE"));
+                        dbTable.setTableType(rs.getString("TABLE_TYPE"));
+                        dbContent.addTable(dbTable);
+                    }
+                    String column = rs.getString("COLUMN_NAME");
+                    if(rs.getString("F_GEOMETRY_COLUMN") != null) {
+                        dbTable.addGeometryField(column,
+                                SFSUtilities.getGeometryTypeNameFromCode(rs.getInt("GEOMETRY_TYPE")),
+                                rs.getInt("SRID"));
+                        if(rs.getBoolean("SPATIAL_INDEX")) {
+                            dbTable.getField(column).setIndexState(DatabaseField.IndexState.INDEXED);
+                        }
+                        if(!geometryTableList.contains(dbTable)) {
+                            geometryTableList.add(dbTable);
+                            geometryColumnList.add(column);
                         }
                     }
-                    //If the result is a reference, copy if to the archive folder
-                    else if(out.getReference() != null){
-                        try {
-                            URL url = new URL(out.getReference());
-                            ReadableByteChannel readableByteChannel = Channels.newChannel(url.openStream());
-                            FileOutputStream fos = new FileOutputStream(out.getTitle());
-                            fos.getChannel().transferFrom(readableByteChannel, 0, Long.MAX_VALUE);
-                        } catch (IOException e) {
-                            LOGGER.error("Unable to download the result.\n"+e.getMessage());
+                    else {
+                        dbTable.addField(column, rs.getString("TYPE_NAME"));
+                    }
+                }
+            }
+            //The extent is estimated from the spatial index of the first geometry column of each table
+            try(PreparedStatement ps = connection.prepareStatement(ESTIMATED_EXTENT_QUERY)) {
+                for(int i = 0; i < geometryTableList.size(); i++) {
+                    DatabaseTable dbTable = geometryTableList.get(i);
+                    for(int j = 1; j <= 8; j += 2) {
+                        ps.setString(j, dbTable.getTableLocation().toString());
+                        ps.setString(j + 1, geometryColumnList.get(i));
+                    }
+                    try(ResultSet rs = ps.executeQuery()) {
+                        if(rs.next() && rs.getObject(1) != null) {
+                            dbTable.setExtent(new double[]{rs.getDouble(1), rs.getDouble(2), rs.getDouble(3),
+                                    rs.getDouble(4)});
                         }
+                    } catch (SQLException e) {
+                        //No estimation for a table without spatial index
                     }
                 }
+            } catch (SQLException e) {
+                LOGGER.warn("Unable to estimate the table extents.\nCause : "+e.getMessage());
             }
         }
-        try {
-            //Create a zip file with the archive folder
-            File zipFile = new File(workspaceFolder, "Result.zip");
-            FileOutputStream fos = new FileOutputStream(zipFile);
-            ZipOutputStream zos = new ZipOutputStream(fos);
-            for(File f : jobFolder.listFiles()){
-                FileInputStream fis = new FileInputStream(f);
-                ZipEntry zipEntry = new ZipEntry(f.getName());
-                zos.putNextEntry(zipEntry);
-
-                byte[] bytes = new byte[1024];
-                int length;
-                while ((length = fis.read(bytes)) >= 0) {
-                    zos.write(bytes, 0, length);
-                }
+        return dbContent;
+    }
 
-                zos.closeEntry();
-                fis.close();
-            }
-            zos.close();
-            fos.close();
-            return zipFile;
-        } catch (IOException e) {
-            LOGGER.error("Unable to zip the result folder.\n"+e.getMessage());
+    /**
+     * Returns the result of the given job if it is available on the server.
+     * @param jobId Id of the job which has generated the results.
+     * @return The result of the job, or null if the job is unknown or has no result.
+     */
+    public Result getJobResult(String jobId){
+        awaitReady();
+        JobStore.Job job = jobStore.get(jobId);
+        if(job != null && job.getStatusInfo().hasResult()){
+            return job.getStatusInfo().getResult();
         }
         return null;
     }
 
+    /**
+     * Returns the archive of the result of the given job. The archive is built on the first call and then served from
+     * the cache of the session until the job result expires.
+     * @param jobId Id of the job which has generated the results.
+     * @return File object of the archive containing the results, or null if the job has no result or if an error
+     * appends in the archive creation.
+     */
+    public File getResultArchive(String jobId){
+        Result result = getJobResult(jobId);
+        if(result == null || archiveCache == null){
+            return null;
+        }
+        try {
+            return archiveCache.get(jobId, result);
+        } catch (IOException e) {
+            LOGGER.error("Unable to create the result archive.\n"+e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * If there is no more running job and no result in the cache list, schedule the session inactivity
      */
     private void scheduleInactivity() {
-        if(statusInfoList.isEmpty() && finishedJobMap.isEmpty()){
-            resultExpirationExecutor.schedule(new InactiveSessionTask(this), expirationTimeMillis, TimeUnit.MILLISECONDS);
+        if(jobStore.isEmpty()){
+            schedule(new InactiveSessionTask(this), expirationTimeMillis);
         }
     }
 
+    /**
+     * Schedules a task of the session on the server expiration scheduler.
+     * @param task Task to run.
+     * @param delayMillis Delay in milliseconds before running the task.
+     */
+    private void schedule(Runnable task, long delayMillis) {
+        Iterator<ScheduledFuture<?>> it = scheduledTaskQueue.iterator();
+        while(it.hasNext()){
+            if(it.next().isDone()){
+                it.remove();
+            }
+        }
+        scheduledTaskQueue.add(
+                baseServerImpl.getExpirationScheduler().schedule(task, delayMillis, TimeUnit.MILLISECONDS));
+    }
+
     /**
      * Shutdown the session of free resources.
      */
     public void shutdown(){
-        try {
-            ds.getConnection().close();
-        } catch (SQLException ignored) {}
-        executorService.shutdownNow();
-        for(Service service : serviceList){
-            service.shutdown();
+        //If the initialisation has not been started, prevent it, otherwise wait for it to free its resources
+        baseServerImpl.getSpatialIndexer().evictSession(this);
+        if(initStarted.compareAndSet(false, true)){
+            if(readyTask != null){
+                readyTask.cancel(false);
+            }
         }
-        resultExpirationExecutor.purge();
+        else if(awaitReady()){
+            executorService.shutdownNow();
+            for(AsyncService asyncService : asyncServiceMap.values()){
+                asyncService.removeStatusListener(statusListener);
+            }
+            for(Service service : serviceList){
+                service.shutdown();
+            }
+            //Close all the connections and the database once the services are stopped
+            if(connectionPool != null){
+                connectionPool.close();
+            }
+        }
+        for(ScheduledFuture<?> future : scheduledTaskQueue){
+            future.cancel(false);
+        }
+        scheduledTaskQueue.clear();
+        baseServerImpl.getTileCache().evictSession(token.toString());
         isActive = false;
     }
 
@@ -549,7 +1126,10 @@ public class Session {
         @Override
         public void run() {
             //Removes the job from the finished map
-            finishedJobMap.remove(jobId);
+            jobStore.expire(jobId);
+            if(archiveCache != null) {
+                archiveCache.evict(jobId);
+            }
             session.scheduleInactivity();
         }
     }
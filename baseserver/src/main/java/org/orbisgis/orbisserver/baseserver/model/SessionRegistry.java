@@ -0,0 +1,168 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the sessions of the server. The sessions are indexed by their token and by their username, so the
+ * lookups done on each client request does not need to walk the whole session list.
+ * The registry is also in charge of the lifecycle of the session : OPEN -> ALIVE -> EXPIRED.
+ */
+public class SessionRegistry {
+
+    /** Map of the sessions with their token as key. */
+    private ConcurrentMap<UUID, Session> tokenMap;
+    /** Map of the sessions with their username as key. */
+    private ConcurrentMap<String, Session> usernameMap;
+
+    /**
+     * Main constructor.
+     */
+    public SessionRegistry(){
+        tokenMap = new ConcurrentHashMap<>();
+        usernameMap = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Registers the given session as open. If a session is already registered for the same user, it is returned
+     * and the given one is discarded.
+     * @param session Session to register.
+     * @return The session registered for the user.
+     */
+    public Session register(Session session){
+        Session registered = usernameMap.putIfAbsent(session.getUsername(), session);
+        if(registered != null){
+            return registered;
+        }
+        session.setState(Session.State.OPEN);
+        tokenMap.put(session.getToken(), session);
+        return session;
+    }
+
+    /**
+     * Returns the open session with the given token.
+     * @param token Token of the session.
+     * @return The open session with the given token, null if there is no open session with this token.
+     */
+    public Session findByToken(UUID token){
+        if(token == null){
+            return null;
+        }
+        Session session = tokenMap.get(token);
+        if(session == null || session.getState() != Session.State.OPEN){
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Returns the session of the user with the given name, if it is not expired.
+     * @param username Name of the user.
+     * @return The session of the user, null if the user has no session.
+     */
+    public Session findByUsername(String username){
+        if(username == null){
+            return null;
+        }
+        Session session = usernameMap.get(username);
+        if(session == null || session.getState() == Session.State.EXPIRED){
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Opens again a session, for example when the user logs in while its session is still alive.
+     * @param session Session to open.
+     * @return True if the session has been opened, false if it is already expired.
+     */
+    public boolean open(Session session){
+        return session.compareAndSetState(Session.State.ALIVE, Session.State.OPEN) ||
+                session.getState() == Session.State.OPEN;
+    }
+
+    /**
+     * Marks a session as alive : the user is logged out but some jobs are still running or results are available.
+     * @param session Session to mark as alive.
+     * @return True if the session was open and is now alive, false otherwise.
+     */
+    public boolean markAlive(Session session){
+        return session.compareAndSetState(Session.State.OPEN, Session.State.ALIVE);
+    }
+
+    /**
+     * Removes the session from the registry and marks it as expired.
+     * @param session Session to remove.
+     * @return True if the session was not already expired, false otherwise.
+     */
+    public boolean expire(Session session){
+        Session.State previous = session.getAndSetState(Session.State.EXPIRED);
+        tokenMap.remove(session.getToken(), session);
+        usernameMap.remove(session.getUsername(), session);
+        return previous != Session.State.EXPIRED;
+    }
+
+    /**
+     * Returns a snapshot of all the sessions which are not expired.
+     * @return The list of the registered sessions.
+     */
+    public List<Session> getSessions(){
+        return new ArrayList<>(tokenMap.values());
+    }
+
+    /**
+     * Returns a snapshot of the sessions in the given state.
+     * @param state State of the sessions to get.
+     * @return The list of the sessions in the given state.
+     */
+    public List<Session> getSessions(Session.State state){
+        List<Session> list = new ArrayList<>();
+        for(Session session : tokenMap.values()){
+            if(session.getState() == state){
+                list.add(session);
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.orbisgis.orbisserver.api.model.Output;
+import org.orbisgis.orbisserver.api.model.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Cache of the result archives of a session. Each archive is built once into the cache folder and named after the job
+ * id and a hash of the result outputs, which is used as the entity tag of the archive. A result with different outputs
+ * gives a different archive.
+ */
+public class ArchiveCache {
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveCache.class);
+
+    /** Extension of the archive files. */
+    private static final String EXTENSION = ".zip";
+
+    /** Folder containing the cached archives. */
+    private final File folder;
+    /** Workspace of the session, the only folder from which the local result files are archived. */
+    private final File workspaceFolder;
+    /** Executor fetching the remote references of the results. */
+    private final ExecutorService fetchExecutor;
+    /** Archives being built, by file name, so that concurrent downloads of the same job build it only once. */
+    private final ConcurrentMap<String, FutureTask<File>> pendingMap;
+
+    /**
+     * Main constructor.
+     * @param folder Folder containing the cached archives.
+     * @param workspaceFolder Workspace of the session, the only folder from which the local result files are archived.
+     * @param fetchExecutor Executor fetching the remote references of the results.
+     */
+    public ArchiveCache(File folder, File workspaceFolder, ExecutorService fetchExecutor) {
+        this.folder = folder;
+        this.workspaceFolder = workspaceFolder;
+        this.fetchExecutor = fetchExecutor;
+        this.pendingMap = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the archive of the given job result, building it if it is not already cached.
+     * @param jobId Id of the job which has generated the result.
+     * @param result Result of the job.
+     * @return The archive file.
+     * @throws IOException Exception thrown if the archive can not be built.
+     */
+    public File get(String jobId, final Result result) throws IOException {
+        final File archive = new File(folder, jobId + "-" + hash(result) + EXTENSION);
+        if(archive.isFile()) {
+            return archive;
+        }
+        FutureTask<File> task = new FutureTask<>(new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+                build(result, archive);
+                return archive;
+            }
+        });
+        FutureTask<File> pending = pendingMap.putIfAbsent(archive.getName(), task);
+        if(pending == null) {
+            pending = task;
+            try {
+                task.run();
+            } finally {
+                pendingMap.remove(archive.getName(), task);
+            }
+        }
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the archive.", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Removes the cached archives of the given job.
+     * @param jobId Id of the job.
+     */
+    public void evict(String jobId) {
+        File[] files = folder.listFiles();
+        if(files == null) {
+            return;
+        }
+        for(File file : files) {
+            if(file.getName().startsWith(jobId + "-") && !file.delete()) {
+                LOGGER.warn("Unable to delete the cached archive '"+file.getName()+"'.");
+            }
+        }
+    }
+
+    /**
+     * Returns the entity tag of a cached archive, which is the hash of the result outputs.
+     * @param archive Archive returned by {@link #get(String, Result)}.
+     * @return The entity tag of the archive.
+     */
+    public static String getETag(File archive) {
+        String name = archive.getName();
+        return "\"" + name.substring(name.lastIndexOf('-') + 1, name.length() - EXTENSION.length()) + "\"";
+    }
+
+    /**
+     * Writes the archive into a temporary file and moves it into the cache, so that a partially written archive is
+     * never served.
+     * @param result Result of the job.
+     * @param archive Destination of the archive.
+     * @throws IOException Exception thrown if the archive can not be built.
+     */
+    private void build(Result result, File archive) throws IOException {
+        if(archive.isFile()) {
+            return;
+        }
+        if(!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Unable to create the archive folder '"+folder+"'.");
+        }
+        File temp = File.createTempFile(archive.getName(), ".tmp", folder);
+        try {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                ResultArchive.write(result, out, fetchExecutor, folder, workspaceFolder);
+            }
+            Files.move(temp.toPath(), archive.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Computes the hash of the outputs of a result.
+     * @param result Result of the job.
+     * @return The hexadecimal SHA-256 hash of the outputs.
+     */
+    private static String hash(Result result) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for(Output output : result.getOutputList()) {
+            update(digest, output.getId());
+            update(digest, output.getTitle());
+            update(digest, output.getReference());
+            if(output.getData() != null) {
+                for(Object content : output.getData().getContent()) {
+                    update(digest, content == null ? null : content.toString());
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for(byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Adds a value to the digest, followed by a separator so that consecutive values can not be confused.
+     * @param digest Digest to update.
+     * @param value Value to add, may be null.
+     */
+    private static void update(MessageDigest digest, String value) {
+        if(value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+}
@@ -0,0 +1,583 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight JDBC connection pool on top of the DataSource of a session database.
+ *
+ * At most maxSize connections are borrowed at the same time, the others wait up to the borrow timeout. The idle
+ * connections are closed after the idle timeout, and the connections borrowed for longer than the leak threshold are
+ * reported with the stack trace of their borrower. Closing the pool closes all its connections and shuts the
+ * database down, so the database file is released.
+ *
+ * A returned connection is reused only if it is back in the state of a new connection : the statements left open by
+ * the borrower are closed and its transaction is rolled back. A connection whose session state has changed (schema,
+ * read only, isolation level, session variables or local temporary tables) is closed instead of being reused.
+ *
+ * Each running job of the session holds a connection, and the previews, the tiles and the catalog reads need a few
+ * more. So the pool size must be at least the job quota of the user plus {@link #HEADROOM}, which is ensured with
+ * {@link #ensureMaxSize(int)} once the quota of the session is known.
+ */
+public class ConnectionPool implements DataSource {
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /** Number of connections kept for the requests of the session besides its running jobs. */
+    public static final int HEADROOM = 3;
+    /** Default maximum number of connections borrowed at the same time. */
+    public static final int DEFAULT_MAX_SIZE = FairShareScheduler.DEFAULT_USER_QUOTA + HEADROOM;
+    /** Time in milliseconds after which an idle connection is closed. */
+    private static final long IDLE_TIMEOUT_MILLIS = 60000;
+    /** Time in milliseconds after which a borrowed connection is reported as leaked. */
+    private static final long LEAK_THRESHOLD_MILLIS = 300000;
+    /** Maximum time in milliseconds to wait for a connection. */
+    private static final long BORROW_TIMEOUT_MILLIS = 30000;
+    /** Period in milliseconds of the idle eviction and leak detection. */
+    private static final long SWEEP_PERIOD_MILLIS = 30000;
+    /** Query listing the session state of an H2 connection : schema, search path, variables and temporary tables. */
+    private static final String SESSION_STATE_QUERY = "SELECT SQL FROM INFORMATION_SCHEMA.SESSION_STATE ORDER BY KEY";
+    /** Number of statements tracked by a borrowed connection before the closed ones are removed. */
+    private static final int STATEMENT_PRUNE_SIZE = 64;
+
+    /** Scheduler running the sweep of all the pools. */
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "connection-pool-sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /** DataSource creating the physical connections. */
+    private final DataSource dataSource;
+    /** Maximum number of connections borrowed at the same time. */
+    private volatile int maxSize;
+    /** Permits of the connections which can be borrowed. */
+    private final Semaphore permits;
+    /** Idle connections, the most recently used first. */
+    private final ConcurrentLinkedDeque<IdleConnection> idleDeque;
+    /** Borrowed connections. */
+    private final Set<PooledConnection> borrowedSet;
+    /** Periodic sweep of the pool. */
+    private final ScheduledFuture<?> sweep;
+    /** True once the pool is closed. */
+    private volatile boolean closed;
+    /** Session state of a new physical connection, null until the first connection is created. */
+    private volatile String initialState;
+
+    /** Number of physical connections created. */
+    private final AtomicLong createdCount = new AtomicLong();
+    /** Number of borrowed connections. */
+    private final AtomicLong borrowCount = new AtomicLong();
+    /** Total time in milliseconds spent waiting for a connection. */
+    private final AtomicLong waitTimeMillis = new AtomicLong();
+    /** Number of borrows which timed out. */
+    private final AtomicLong timeoutCount = new AtomicLong();
+    /** Number of idle connections closed by the eviction. */
+    private final AtomicLong evictedCount = new AtomicLong();
+    /** Number of connections reported as leaked. */
+    private final AtomicLong leakCount = new AtomicLong();
+    /** Number of returned connections closed because their session state has changed. */
+    private final AtomicLong discardedCount = new AtomicLong();
+
+    /**
+     * Main constructor.
+     * @param dataSource DataSource creating the physical connections.
+     * @param maxSize Maximum number of connections borrowed at the same time.
+     */
+    public ConnectionPool(DataSource dataSource, int maxSize) {
+        this.dataSource = dataSource;
+        this.maxSize = Math.max(1, maxSize);
+        this.permits = new Semaphore(this.maxSize, true);
+        this.idleDeque = new ConcurrentLinkedDeque<>();
+        this.borrowedSet = Collections.newSetFromMap(new ConcurrentHashMap<PooledConnection, Boolean>());
+        //The sweep only keeps a weak reference, so a pool never closed can still be garbage collected
+        final WeakReference<ConnectionPool> poolRef = new WeakReference<>(this);
+        this.sweep = SWEEPER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                ConnectionPool pool = poolRef.get();
+                //Throwing stops the periodic sweep
+                if(pool == null) {
+                    throw new IllegalStateException("Connection pool garbage collected.");
+                }
+                pool.sweep();
+            }
+        }, SWEEP_PERIOD_MILLIS, SWEEP_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if(closed) {
+            throw new SQLException("The connection pool is closed.");
+        }
+        long start = System.currentTimeMillis();
+        try {
+            if(!permits.tryAcquire(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("No connection available after "+BORROW_TIMEOUT_MILLIS+" ms, "+maxSize+
+                        " connections are borrowed.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection.", e);
+        }
+        waitTimeMillis.addAndGet(System.currentTimeMillis() - start);
+        try {
+            Connection physical = null;
+            IdleConnection idle = idleDeque.pollFirst();
+            while(idle != null && physical == null) {
+                if(idle.connection.isClosed()) {
+                    idle = idleDeque.pollFirst();
+                }
+                else {
+                    physical = idle.connection;
+                }
+            }
+            if(physical == null) {
+                physical = dataSource.getConnection();
+                createdCount.incrementAndGet();
+                if(initialState == null) {
+                    initialState = sessionState(physical);
+                }
+            }
+            PooledConnection pooled = new PooledConnection(physical);
+            borrowedSet.add(pooled);
+            borrowCount.incrementAndGet();
+            return pooled.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    /**
+     * Gives back a borrowed connection to the pool. The statements left open are closed and the transaction is rolled
+     * back. The connection is closed if its session state is not the one of a new connection.
+     * @param pooled Borrowed connection.
+     */
+    private void giveBack(PooledConnection pooled) {
+        if(!borrowedSet.remove(pooled)) {
+            return;
+        }
+        Connection physical = pooled.physical;
+        try {
+            if(closed || physical.isClosed()) {
+                physical.close();
+            }
+            else {
+                pooled.closeStatements();
+                if(!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                if(sessionState(physical).equals(initialState)) {
+                    idleDeque.offerFirst(new IdleConnection(physical));
+                }
+                else {
+                    discardedCount.incrementAndGet();
+                    physical.close();
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Unable to give back the connection to the pool.\n"+e.getMessage());
+            closeQuietly(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes the idle connections unused since the idle timeout and reports the leaked connections.
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        Iterator<IdleConnection> it = idleDeque.descendingIterator();
+        while(it.hasNext()) {
+            IdleConnection idle = it.next();
+            if(now - idle.lastUsed > IDLE_TIMEOUT_MILLIS && idleDeque.removeFirstOccurrence(idle)) {
+                closeQuietly(idle.connection);
+                evictedCount.incrementAndGet();
+            }
+        }
+        for(PooledConnection pooled : borrowedSet) {
+            if(!pooled.leakReported && now - pooled.borrowTime > LEAK_THRESHOLD_MILLIS) {
+                pooled.leakReported = true;
+                leakCount.incrementAndGet();
+                LOGGER.warn("Connection borrowed for more than "+LEAK_THRESHOLD_MILLIS+" ms, it may be leaked.",
+                        pooled.borrowTrace);
+            }
+        }
+    }
+
+    /**
+     * Closes all the connections of the pool and shuts the database down. The pool can not be used anymore.
+     */
+    public void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        sweep.cancel(false);
+        IdleConnection idle = idleDeque.pollFirst();
+        while(idle != null) {
+            closeQuietly(idle.connection);
+            idle = idleDeque.pollFirst();
+        }
+        for(PooledConnection pooled : borrowedSet) {
+            closeQuietly(pooled.physical);
+        }
+        borrowedSet.clear();
+        //Shutdown the database to release its file
+        try(Connection connection = dataSource.getConnection();
+            Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        } catch (SQLException e) {
+            LOGGER.error("Unable to shutdown the database.\n"+e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the session state of a physical connection, which does not depend on the data of the database.
+     * @param connection Physical connection.
+     * @return The session state of the connection.
+     * @throws SQLException Exception thrown if the state can not be read.
+     */
+    private static String sessionState(Connection connection) throws SQLException {
+        StringBuilder state = new StringBuilder();
+        state.append(connection.isReadOnly()).append(';').append(connection.getTransactionIsolation());
+        try(Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery(SESSION_STATE_QUERY)) {
+            while(rs.next()) {
+                state.append(';').append(rs.getString(1));
+            }
+        }
+        return state.toString();
+    }
+
+    /**
+     * Closes a physical connection, ignoring the errors.
+     * @param connection Connection to close.
+     */
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {}
+    }
+
+    /**
+     * Raises the maximum number of connections borrowed at the same time to the given size. A smaller size is
+     * ignored.
+     * @param size Minimum maximum size of the pool.
+     */
+    public synchronized void ensureMaxSize(int size) {
+        if(size > maxSize) {
+            permits.release(size - maxSize);
+            maxSize = size;
+        }
+    }
+
+    /**
+     * Returns the maximum number of connections borrowed at the same time.
+     * @return The pool maximum size.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of borrowed connections.
+     * @return The number of active connections.
+     */
+    public int getActiveCount() {
+        return borrowedSet.size();
+    }
+
+    /**
+     * Returns the number of idle connections.
+     * @return The number of idle connections.
+     */
+    public int getIdleCount() {
+        return idleDeque.size();
+    }
+
+    /**
+     * Returns the number of physical connections created.
+     * @return The number of created connections.
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * Returns the number of borrowed connections since the creation of the pool.
+     * @return The number of borrows.
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * Returns the total time in milliseconds spent waiting for a connection.
+     * @return The total wait time.
+     */
+    public long getWaitTimeMillis() {
+        return waitTimeMillis.get();
+    }
+
+    /**
+     * Returns the number of borrows which timed out.
+     * @return The number of timeouts.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Returns the number of idle connections closed by the eviction.
+     * @return The number of evicted connections.
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * Returns the number of connections reported as leaked.
+     * @return The number of leaks.
+     */
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /**
+     * Returns the number of returned connections closed because their session state has changed.
+     * @return The number of discarded connections.
+     */
+    public long getDiscardedCount() {
+        return discardedCount.get();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if(iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return dataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || dataSource.isWrapperFor(iface);
+    }
+
+    /**
+     * Idle physical connection.
+     */
+    private static class IdleConnection {
+
+        /** Physical connection. */
+        private final Connection connection;
+        /** Time of the last use. */
+        private final long lastUsed;
+
+        public IdleConnection(Connection connection) {
+            this.connection = connection;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Borrowed connection. The user gets a proxy which gives the physical connection back to the pool on close.
+     */
+    private class PooledConnection implements InvocationHandler {
+
+        /** Physical connection. */
+        private final Connection physical;
+        /** Proxy given to the user. */
+        private final Connection proxy;
+        /** Time of the borrow. */
+        private final long borrowTime;
+        /** Stack trace of the borrower, used to report the leaks. */
+        private final Throwable borrowTrace;
+        /** True once the proxy is closed. */
+        private volatile boolean proxyClosed;
+        /** True once the leak has been reported. */
+        private volatile boolean leakReported;
+        /** Statements created through the proxy, closed when the connection is given back. */
+        private final List<Statement> statementList = new ArrayList<>();
+
+        public PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.borrowTime = System.currentTimeMillis();
+            this.borrowTrace = new Throwable("Connection borrowed here");
+            this.proxy = (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if(!proxyClosed) {
+                        proxyClosed = true;
+                        giveBack(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return proxyClosed || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled "+physical.toString();
+                default:
+                    if(proxyClosed) {
+                        throw new SQLException("The connection is closed.");
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    //createStatement, prepareStatement and prepareCall
+                    if(result instanceof Statement) {
+                        track((Statement) result);
+                    }
+                    return result;
+            }
+        }
+
+        /**
+         * Tracks a statement created through the proxy. The statements already closed are removed once the list is
+         * large, so a long borrow creating many statements does not grow the list forever.
+         * @param statement Statement to track.
+         */
+        private synchronized void track(Statement statement) throws SQLException {
+            if(statementList.size() >= STATEMENT_PRUNE_SIZE) {
+                Iterator<Statement> it = statementList.iterator();
+                while(it.hasNext()) {
+                    if(it.next().isClosed()) {
+                        it.remove();
+                    }
+                }
+            }
+            statementList.add(statement);
+        }
+
+        /**
+         * Closes the statements left open by the borrower, which also closes their result sets.
+         */
+        private synchronized void closeStatements() {
+            for(Statement statement : statementList) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    LOGGER.warn("Unable to close a statement left open.\n"+e.getMessage());
+                }
+            }
+            statementList.clear();
+        }
+    }
+}
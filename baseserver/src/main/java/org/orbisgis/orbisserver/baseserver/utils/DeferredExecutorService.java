@@ -0,0 +1,116 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExecutorService forwarding the tasks to a delegate which is bound later. It allows to start the services of a
+ * session before knowing the user which will use it, as the executor given to the services can not be changed once
+ * started.
+ */
+public class DeferredExecutorService extends AbstractExecutorService {
+
+    /** ExecutorService running the tasks, null until bound. */
+    private volatile ExecutorService delegate;
+    /** True if the executor has been shutdown before being bound. */
+    private volatile boolean isShutdown;
+
+    /**
+     * Binds the ExecutorService which will run the tasks.
+     * @param delegate ExecutorService running the tasks.
+     */
+    public void bind(ExecutorService delegate) {
+        this.delegate = delegate;
+        if(isShutdown) {
+            delegate.shutdown();
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        ExecutorService executor = delegate;
+        if(executor == null) {
+            throw new RejectedExecutionException("The executor is not bound yet.");
+        }
+        executor.execute(command);
+    }
+
+    @Override
+    public void shutdown() {
+        isShutdown = true;
+        ExecutorService executor = delegate;
+        if(executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        isShutdown = true;
+        ExecutorService executor = delegate;
+        if(executor != null) {
+            return executor.shutdownNow();
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        ExecutorService executor = delegate;
+        return executor == null ? isShutdown : executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        ExecutorService executor = delegate;
+        return executor == null ? isShutdown : executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        ExecutorService executor = delegate;
+        return executor == null ? isShutdown : executor.awaitTermination(timeout, unit);
+    }
+}
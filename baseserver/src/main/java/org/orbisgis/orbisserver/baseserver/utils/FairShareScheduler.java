@@ -0,0 +1,336 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Server wide scheduler of the jobs of all the sessions. At most globalLimit jobs run at the same time, and each user
+ * can run at most its own quota of jobs. The users waiting for a slot are served in round robin, so a user submitting
+ * many jobs does not delay the jobs of the other users.
+ *
+ * Each user sees the scheduler through its own ExecutorService, obtained with {@link #forUser(String, int)}, which can
+ * be shutdown without affecting the other users.
+ */
+public class FairShareScheduler {
+
+    /** Default number of jobs a user can run at the same time. */
+    public static final int DEFAULT_USER_QUOTA = 5;
+
+    /** Maximum number of jobs running at the same time. */
+    private final int globalLimit;
+    /** Threads running the jobs. Idle threads are released after a while. */
+    private final ThreadPoolExecutor workers;
+    /** Lock guarding the user queues and the counters. */
+    private final ReentrantLock lock;
+    /** Users with waiting jobs, in round robin order. */
+    private final Queue<UserExecutor> readyQueue;
+    /** Number of jobs currently running. */
+    private int running;
+
+    /**
+     * Main constructor.
+     * @param globalLimit Maximum number of jobs running at the same time.
+     */
+    public FairShareScheduler(int globalLimit) {
+        this.globalLimit = Math.max(1, globalLimit);
+        this.lock = new ReentrantLock();
+        this.readyQueue = new ArrayDeque<>();
+        final AtomicInteger count = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(this.globalLimit, this.globalLimit, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "job-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns a new ExecutorService running the jobs of a user through this scheduler.
+     * @param username Name of the user.
+     * @param quota Maximum number of jobs of the user running at the same time.
+     * @return The user ExecutorService.
+     */
+    public ExecutorService forUser(String username, int quota) {
+        return new UserExecutor(username, quota);
+    }
+
+    /**
+     * Returns the maximum number of jobs running at the same time.
+     * @return The global concurrency limit.
+     */
+    public int getGlobalLimit() {
+        return globalLimit;
+    }
+
+    /**
+     * Returns the number of jobs currently running.
+     * @return The number of running jobs.
+     */
+    public int getRunningCount() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Shutdown the scheduler and interrupt the running jobs.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Starts the waiting jobs while there are free slots. Must be called with the lock held.
+     */
+    private void dispatch() {
+        while(running < globalLimit && !readyQueue.isEmpty()) {
+            UserExecutor user = readyQueue.poll();
+            user.ready = false;
+            if(user.taskQueue.isEmpty() || user.running >= user.quota) {
+                continue;
+            }
+            final Runnable task = user.taskQueue.poll();
+            user.running++;
+            running++;
+            //Put the user back at the end of the round if it still has jobs to run
+            user.enqueueIfReady();
+            final UserExecutor owner = user;
+            try {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        owner.run(task);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                user.running--;
+                running--;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * ExecutorService view of the scheduler for one user.
+     */
+    private class UserExecutor extends AbstractExecutorService {
+
+        /** Name of the user. */
+        private final String username;
+        /** Maximum number of jobs of the user running at the same time. */
+        private final int quota;
+        /** Jobs waiting for a slot. */
+        private final Queue<Runnable> taskQueue;
+        /** Threads running the jobs of the user. */
+        private final Set<Thread> threadSet;
+        /** Signaled when the last job ends after a shutdown. */
+        private final Condition terminated;
+        /** Number of jobs of the user currently running. */
+        private int running;
+        /** True if the user is in the ready queue. */
+        private boolean ready;
+        /** True if the executor has been shutdown. */
+        private boolean isShutdown;
+
+        public UserExecutor(String username, int quota) {
+            this.username = username;
+            this.quota = Math.max(1, quota);
+            this.taskQueue = new ArrayDeque<>();
+            this.threadSet = new HashSet<>();
+            this.terminated = lock.newCondition();
+        }
+
+        /**
+         * Adds the user at the end of the ready queue if it has waiting jobs and a free slot. Must be called with the
+         * lock held.
+         */
+        private void enqueueIfReady() {
+            if(!ready && !taskQueue.isEmpty() && running < quota) {
+                ready = true;
+                readyQueue.add(this);
+            }
+        }
+
+        /**
+         * Runs a job of the user on the current thread and releases its slot.
+         * @param task Job to run.
+         */
+        private void run(Runnable task) {
+            Thread thread = Thread.currentThread();
+            lock.lock();
+            try {
+                threadSet.add(thread);
+            } finally {
+                lock.unlock();
+            }
+            try {
+                task.run();
+            } finally {
+                lock.lock();
+                try {
+                    threadSet.remove(thread);
+                    running--;
+                    FairShareScheduler.this.running--;
+                    if(isShutdown) {
+                        taskQueue.clear();
+                    }
+                    enqueueIfReady();
+                    if(isTerminated()) {
+                        terminated.signalAll();
+                    }
+                    dispatch();
+                } finally {
+                    lock.unlock();
+                }
+                //Clear the interruption of a shutdownNow so the worker can run the next job
+                Thread.interrupted();
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if(command == null) {
+                throw new NullPointerException();
+            }
+            lock.lock();
+            try {
+                if(isShutdown) {
+                    throw new RejectedExecutionException("The executor of the user '"+username+"' is shutdown.");
+                }
+                taskQueue.add(command);
+                enqueueIfReady();
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            lock.lock();
+            try {
+                isShutdown = true;
+                if(isTerminated()) {
+                    terminated.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            lock.lock();
+            try {
+                isShutdown = true;
+                List<Runnable> waiting = new ArrayList<>(taskQueue);
+                taskQueue.clear();
+                for(Thread thread : threadSet) {
+                    thread.interrupt();
+                }
+                if(isTerminated()) {
+                    terminated.signalAll();
+                }
+                return waiting;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isShutdown() {
+            lock.lock();
+            try {
+                return isShutdown;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            lock.lock();
+            try {
+                return isShutdown && running == 0 && taskQueue.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lock();
+            try {
+                while(!isTerminated()) {
+                    if(nanos <= 0) {
+                        return false;
+                    }
+                    nanos = terminated.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
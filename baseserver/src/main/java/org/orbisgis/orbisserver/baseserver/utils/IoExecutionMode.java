@@ -0,0 +1,122 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Execution mode of the I/O bound tasks of the server : session bootstrap, database setup and status or result
+ * round trips with the services. The CPU bound jobs are not concerned, they always run on the FairShareScheduler.
+ *
+ * PLATFORM runs the tasks on a bounded pool of platform threads. VIRTUAL runs each task on its own virtual thread when
+ * the JVM supports them (Java 21 or later), and falls back to PLATFORM otherwise.
+ */
+public enum IoExecutionMode {
+    PLATFORM, VIRTUAL;
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(IoExecutionMode.class);
+
+    /**
+     * Returns the mode with the given name, ignoring the case.
+     * @param name Name of the mode.
+     * @return The mode, PLATFORM if the name is null or unknown.
+     */
+    public static IoExecutionMode fromString(String name) {
+        if(name != null) {
+            for(IoExecutionMode mode : values()) {
+                if(mode.name().equalsIgnoreCase(name.trim())) {
+                    return mode;
+                }
+            }
+            LOGGER.warn("Unknown I/O execution mode '"+name+"', "+PLATFORM+" is used.");
+        }
+        return PLATFORM;
+    }
+
+    /**
+     * Creates a new ExecutorService for the I/O bound tasks.
+     * @param name Base name of the threads.
+     * @param poolSize Number of threads of the pool in PLATFORM mode. Ignored in VIRTUAL mode.
+     * @return The ExecutorService.
+     */
+    public ExecutorService newExecutor(final String name, int poolSize) {
+        if(this == VIRTUAL) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if(virtual != null) {
+                return virtual;
+            }
+            LOGGER.warn("Virtual threads are not supported by this JVM, platform threads are used for '"+name+"'.");
+        }
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Creates an ExecutorService starting a new virtual thread for each task. The method is called by reflection so
+     * the server can still be built and run on the JVMs without virtual threads.
+     * @return The ExecutorService, or null if the virtual threads are not supported.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            LOGGER.error("Unable to create the virtual thread executor.\n"+e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.orbisgis.orbisserver.api.model.StatusInfo;
+import org.orbisgis.orbisserver.api.service.Service;
+import org.orbisgis.orbisserver.baseserver.model.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side tracker of the running jobs. Each job is refreshed when the next poll date given by its service is
+ * reached, and the changes of its status are notified to the registered listeners.
+ *
+ * The running jobs are kept in a queue ordered by their refresh deadline, computed once in epoch milliseconds. A
+ * single dispatcher thread waits for the first deadline, takes all the jobs which are due, groups them by service and
+ * hands each group to a worker as one batch.
+ */
+public class JobStatusTracker {
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobStatusTracker.class);
+
+    /** Delay in milliseconds used when the service does not give a next poll date. */
+    public static final long DEFAULT_POLL_MILLIS = 1000;
+
+    /** Number of threads used to refresh the jobs in PLATFORM mode. */
+    private int poolSize;
+    /** Running jobs ordered by refresh deadline. */
+    private DelayQueue<TrackedJob> queue;
+    /** Thread taking the due jobs from the queue. */
+    private Thread dispatcher;
+    /** Workers refreshing the batches of due jobs. */
+    private volatile ExecutorService workers;
+    /** Listeners notified on the job status changes. */
+    private List<Listener> listenerList;
+
+    /**
+     * Listener of the job status changes.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the status of a job of the session has changed.
+         * @param session Session which run the job.
+         * @param statusInfo New status of the job.
+         */
+        void onStatusChanged(Session session, StatusInfo statusInfo);
+
+        /**
+         * Called when a job of the session can not be started.
+         * @param session Session which tried to run the job.
+         * @param processId Identifier of the process of the job.
+         * @param message Cause of the failure.
+         */
+        void onStartFailed(Session session, String processId, String message);
+    }
+
+    /**
+     * Main constructor.
+     * @param poolSize Number of threads used to refresh the jobs in PLATFORM mode.
+     */
+    public JobStatusTracker(int poolSize) {
+        this.poolSize = poolSize;
+        queue = new DelayQueue<>();
+        listenerList = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Starts the dispatcher and the workers refreshing the jobs if they are not already running. The jobs tracked
+     * before a previous shutdown are refreshed again.
+     * @param ioMode Execution mode of the workers, which mainly wait for the services answers.
+     */
+    public synchronized void start(IoExecutionMode ioMode) {
+        if(dispatcher != null && dispatcher.isAlive()) {
+            return;
+        }
+        workers = ioMode.newExecutor("job-status-tracker", poolSize);
+        dispatcher = new Thread(new Dispatcher(), "job-status-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Adds a listener notified of the job status changes.
+     * @param listener Listener to add.
+     */
+    public void addListener(Listener listener) {
+        listenerList.add(listener);
+    }
+
+    /**
+     * Removes a listener of the job status changes.
+     * @param listener Listener to remove.
+     */
+    public void removeListener(Listener listener) {
+        listenerList.remove(listener);
+    }
+
+    /**
+     * Starts the tracking of a job of the given session. The job is tracked until it is finished or until the session
+     * expires.
+     * @param session Session which run the job.
+     * @param statusInfo First status of the job.
+     */
+    public void track(Session session, StatusInfo statusInfo) {
+        fireStatusChanged(session, statusInfo);
+        schedule(session, statusInfo);
+    }
+
+    /**
+     * Notifies the listeners of a status of a tracked job pushed by its service, without waiting for the next refresh.
+     * @param session Session which run the job.
+     * @param statusInfo New status of the job.
+     */
+    public void publish(Session session, StatusInfo statusInfo) {
+        fireStatusChanged(session, statusInfo);
+    }
+
+    /**
+     * Notifies the listeners that a job of the session can not be started.
+     * @param session Session which tried to run the job.
+     * @param processId Identifier of the process of the job.
+     * @param cause Cause of the failure.
+     */
+    public void startFailed(Session session, String processId, Throwable cause) {
+        String message = cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getMessage();
+        for(Listener listener : listenerList) {
+            try {
+                listener.onStartFailed(session, processId, message);
+            } catch (RuntimeException e) {
+                LOGGER.error("Unable to notify the job start failure.\n"+e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of jobs waiting for their next refresh.
+     * @return The depth of the refresh queue.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Queues the next refresh of the job according to its next poll date.
+     * @param session Session which run the job.
+     * @param statusInfo Last status of the job.
+     */
+    private void schedule(Session session, StatusInfo statusInfo) {
+        long now = System.currentTimeMillis();
+        long deadline = now + DEFAULT_POLL_MILLIS;
+        if(statusInfo.getNextPoll() != null) {
+            long pollMillis = statusInfo.getNextPoll().toGregorianCalendar().getTimeInMillis();
+            if(pollMillis > now) {
+                deadline = pollMillis;
+            }
+        }
+        queue.put(new TrackedJob(session, statusInfo, deadline));
+    }
+
+    /**
+     * Notifies the listeners of the new status of a job.
+     * @param session Session which run the job.
+     * @param statusInfo New status of the job.
+     */
+    private void fireStatusChanged(Session session, StatusInfo statusInfo) {
+        for(Listener listener : listenerList) {
+            try {
+                listener.onStatusChanged(session, statusInfo);
+            } catch (RuntimeException e) {
+                LOGGER.error("Unable to notify the job status change.\n"+e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns true if the two status are different for the client : status, percent completed or result availability.
+     * @param oldInfo Previous status of the job.
+     * @param newInfo New status of the job.
+     * @return True if the status has changed, false otherwise.
+     */
+    private static boolean hasChanged(StatusInfo oldInfo, StatusInfo newInfo) {
+        if(oldInfo.hasResult() != newInfo.hasResult()) {
+            return true;
+        }
+        if(oldInfo.getStatus() == null ? newInfo.getStatus() != null :
+                !oldInfo.getStatus().equalsIgnoreCase(newInfo.getStatus())) {
+            return true;
+        }
+        return oldInfo.getPercentCompleted() == null ? newInfo.getPercentCompleted() != null :
+                !oldInfo.getPercentCompleted().equals(newInfo.getPercentCompleted());
+    }
+
+    /**
+     * Returns true if the job is finished, i.e. succeeded or failed.
+     * @param statusInfo Status of the job.
+     * @return True if the job is finished, false otherwise.
+     */
+    private static boolean isFinished(StatusInfo statusInfo) {
+        return statusInfo.hasResult() || "SUCCEEDED".equalsIgnoreCase(statusInfo.getStatus()) ||
+                "FAILED".equalsIgnoreCase(statusInfo.getStatus());
+    }
+
+    /**
+     * Refreshes one job and queues its next refresh if it is not finished.
+     * @param job Job to refresh.
+     */
+    private void refresh(TrackedJob job) {
+        if(job.session.getState() == Session.State.EXPIRED) {
+            return;
+        }
+        StatusInfo refreshed;
+        try {
+            refreshed = job.session.refreshStatus(job.statusInfo);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to refresh the status of the job '"+job.statusInfo.getJobId()+"'.\n"+e.getMessage());
+            schedule(job.session, job.statusInfo);
+            return;
+        }
+        //The job is not known by the session anymore
+        if(refreshed == null) {
+            return;
+        }
+        if(hasChanged(job.statusInfo, refreshed)) {
+            fireStatusChanged(job.session, refreshed);
+        }
+        if(!isFinished(refreshed)) {
+            schedule(job.session, refreshed);
+        }
+    }
+
+    /**
+     * Shutdown the tracker. The tracked jobs are not refreshed anymore until the tracker is started again.
+     */
+    public synchronized void shutdown() {
+        if(dispatcher != null) {
+            dispatcher.interrupt();
+            dispatcher = null;
+        }
+        if(workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Job waiting in the queue for its refresh deadline.
+     */
+    private static class TrackedJob implements Delayed {
+
+        /** Session which run the job. */
+        private final Session session;
+        /** Last status of the job. */
+        private final StatusInfo statusInfo;
+        /** Refresh deadline in epoch milliseconds. */
+        private final long deadline;
+
+        public TrackedJob(Session session, StatusInfo statusInfo, long deadline) {
+            this.session = session;
+            this.statusInfo = statusInfo;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if(other instanceof TrackedJob) {
+                return Long.compare(deadline, ((TrackedJob) other).deadline);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Loop taking the due jobs from the queue and sending them to the workers, one batch per service.
+     */
+    private class Dispatcher implements Runnable {
+
+        @Override
+        public void run() {
+            List<TrackedJob> dueList = new ArrayList<>();
+            while(!Thread.currentThread().isInterrupted()) {
+                try {
+                    dueList.add(queue.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                queue.drainTo(dueList);
+                //Group the due jobs by service, so each service is called once per batch
+                Map<Service, List<TrackedJob>> batchMap = new IdentityHashMap<>();
+                for(TrackedJob job : dueList) {
+                    Service service = job.session.getJobService(job.statusInfo.getJobId());
+                    //The job is not known by the session anymore
+                    if(service == null) {
+                        continue;
+                    }
+                    List<TrackedJob> batch = batchMap.get(service);
+                    if(batch == null) {
+                        batch = new ArrayList<>();
+                        batchMap.put(service, batch);
+                    }
+                    batch.add(job);
+                }
+                dueList.clear();
+                for(final List<TrackedJob> batch : batchMap.values()) {
+                    try {
+                        workers.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                for(TrackedJob job : batch) {
+                                    refresh(job);
+                                }
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        //The tracker is stopping, keep the jobs for the next start
+                        queue.addAll(batch);
+                    }
+                }
+            }
+        }
+    }
+}
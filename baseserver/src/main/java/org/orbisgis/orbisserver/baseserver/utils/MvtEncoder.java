@@ -0,0 +1,390 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encoder of a single layer Mapbox Vector Tile (version 2 of the specification). The geometries are expected in tile
+ * coordinates, from 0 to {@link #EXTENT} with the y axis pointing down. The protocol buffer messages are written by
+ * hand as the tile only uses a few of them.
+ */
+public class MvtEncoder {
+
+    /** Extent of the tile in tile coordinates. */
+    public static final int EXTENT = 4096;
+
+    /** Wire types of the protocol buffer fields. */
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+
+    /** Geometry types of the features. */
+    private static final int POINT = 1;
+    private static final int LINESTRING = 2;
+    private static final int POLYGON = 3;
+
+    /** Geometry commands. */
+    private static final int MOVE_TO = 1;
+    private static final int LINE_TO = 2;
+    private static final int CLOSE_PATH = 7;
+
+    /** Name of the layer. */
+    private final String layerName;
+    /** Encoded features of the layer. */
+    private final ByteArrayOutputStream features;
+    /** Property keys with their index. */
+    private final Map<String, Integer> keyMap;
+    /** Property values with their index. */
+    private final Map<Object, Integer> valueMap;
+    /** Number of encoded features. */
+    private int featureCount;
+
+    /**
+     * Main constructor.
+     * @param layerName Name of the layer.
+     */
+    public MvtEncoder(String layerName) {
+        this.layerName = layerName;
+        this.features = new ByteArrayOutputStream();
+        this.keyMap = new LinkedHashMap<>();
+        this.valueMap = new LinkedHashMap<>();
+        this.featureCount = 0;
+    }
+
+    /**
+     * Adds a feature to the layer. Features without any geometry left after the rounding to the tile grid are skipped.
+     * @param id Id of the feature.
+     * @param geometry Geometry in tile coordinates.
+     * @param properties Properties of the feature, the null values are skipped.
+     */
+    public void addFeature(long id, Geometry geometry, Map<String, Object> properties) {
+        List<Integer> commands = new ArrayList<>();
+        int type = encodeGeometry(geometry, commands);
+        if(type == 0 || commands.isEmpty()) {
+            return;
+        }
+        List<Integer> tags = new ArrayList<>();
+        for(Map.Entry<String, Object> property : properties.entrySet()) {
+            if(property.getValue() == null) {
+                continue;
+            }
+            tags.add(indexOf(keyMap, property.getKey()));
+            tags.add(indexOf(valueMap, normalize(property.getValue())));
+        }
+        ByteArrayOutputStream feature = new ByteArrayOutputStream();
+        writeTag(feature, 1, VARINT);
+        writeVarint(feature, id);
+        writePacked(feature, 2, tags);
+        writeTag(feature, 3, VARINT);
+        writeVarint(feature, type);
+        writePacked(feature, 4, commands);
+        writeMessage(features, 2, feature);
+        featureCount++;
+    }
+
+    /**
+     * Returns the number of encoded features.
+     * @return The number of features.
+     */
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * Returns the encoded tile. A tile without feature is empty.
+     * @return The encoded tile.
+     */
+    public byte[] encode() {
+        if(featureCount == 0) {
+            return new byte[0];
+        }
+        ByteArrayOutputStream layer = new ByteArrayOutputStream();
+        writeTag(layer, 15, VARINT);
+        writeVarint(layer, 2);
+        writeString(layer, 1, layerName);
+        byte[] featureBytes = features.toByteArray();
+        layer.write(featureBytes, 0, featureBytes.length);
+        for(String key : keyMap.keySet()) {
+            writeString(layer, 3, key);
+        }
+        for(Object value : valueMap.keySet()) {
+            ByteArrayOutputStream encodedValue = new ByteArrayOutputStream();
+            if(value instanceof String) {
+                writeString(encodedValue, 1, (String) value);
+            }
+            else if(value instanceof Double) {
+                writeTag(encodedValue, 3, FIXED64);
+                long bits = Double.doubleToLongBits((Double) value);
+                for(int i = 0; i < 8; i++) {
+                    encodedValue.write((int) (bits >>> (8 * i)) & 0xFF);
+                }
+            }
+            else if(value instanceof Long) {
+                writeTag(encodedValue, 6, VARINT);
+                writeVarint(encodedValue, zigZag((Long) value));
+            }
+            else {
+                writeTag(encodedValue, 7, VARINT);
+                writeVarint(encodedValue, (Boolean) value ? 1 : 0);
+            }
+            writeMessage(layer, 4, encodedValue);
+        }
+        writeTag(layer, 5, VARINT);
+        writeVarint(layer, EXTENT);
+        ByteArrayOutputStream tile = new ByteArrayOutputStream();
+        writeMessage(tile, 3, layer);
+        return tile.toByteArray();
+    }
+
+    /**
+     * Encodes the geometry commands.
+     * @param geometry Geometry in tile coordinates.
+     * @param commands List receiving the commands and their parameters.
+     * @return The geometry type of the feature, 0 if the geometry can not be encoded.
+     */
+    private static int encodeGeometry(Geometry geometry, List<Integer> commands) {
+        int[] cursor = new int[2];
+        int type = 0;
+        //The points of a feature are encoded with a single MoveTo command
+        List<Coordinate> pointList = new ArrayList<>();
+        for(int i = 0; i < geometry.getNumGeometries(); i++) {
+            Geometry part = geometry.getGeometryN(i);
+            int partType;
+            if(part instanceof Point) {
+                partType = POINT;
+            }
+            else if(part instanceof LineString) {
+                partType = LINESTRING;
+            }
+            else if(part instanceof Polygon) {
+                partType = POLYGON;
+            }
+            else {
+                //Nested collections are not supported by the vector tiles
+                continue;
+            }
+            //A feature only contains one type of geometry, the first one found
+            if(type != 0 && partType != type) {
+                continue;
+            }
+            type = partType;
+            switch (partType) {
+                case POINT:
+                    if(!part.isEmpty()) {
+                        pointList.add(part.getCoordinate());
+                    }
+                    break;
+                case LINESTRING:
+                    encodeLine(part.getCoordinates(), false, commands, cursor);
+                    break;
+                default:
+                    Polygon polygon = (Polygon) part;
+                    //In tile coordinates, the exterior ring is clockwise and the interior rings counter clockwise
+                    encodeRing(polygon.getExteriorRing().getCoordinates(), true, commands, cursor);
+                    for(int j = 0; j < polygon.getNumInteriorRing(); j++) {
+                        encodeRing(polygon.getInteriorRingN(j).getCoordinates(), false, commands, cursor);
+                    }
+            }
+        }
+        if(!pointList.isEmpty()) {
+            encodePoints(pointList, commands, cursor);
+        }
+        return type;
+    }
+
+    /**
+     * Encodes points with a single MoveTo command.
+     */
+    private static void encodePoints(List<Coordinate> coordinates, List<Integer> commands, int[] cursor) {
+        commands.add(command(MOVE_TO, coordinates.size()));
+        for(Coordinate coordinate : coordinates) {
+            addPoint(coordinate, commands, cursor);
+        }
+    }
+
+    /**
+     * Encodes a polygon ring, reversing it if its orientation is not the expected one.
+     */
+    private static void encodeRing(Coordinate[] coordinates, boolean exterior, List<Integer> commands, int[] cursor) {
+        if(coordinates.length < 4) {
+            return;
+        }
+        //With the y axis pointing down, a clockwise ring is seen as counter clockwise by the usual algorithms
+        if(CGAlgorithms.isCCW(coordinates) != exterior) {
+            Coordinate[] reversed = new Coordinate[coordinates.length];
+            for(int i = 0; i < coordinates.length; i++) {
+                reversed[i] = coordinates[coordinates.length - 1 - i];
+            }
+            coordinates = reversed;
+        }
+        encodeLine(coordinates, true, commands, cursor);
+    }
+
+    /**
+     * Encodes a line or a ring. The points which are the same as the previous one once rounded are skipped.
+     */
+    private static void encodeLine(Coordinate[] coordinates, boolean ring, List<Integer> commands, int[] cursor) {
+        //A ring is closed by a ClosePath command instead of its last point
+        int length = ring ? coordinates.length - 1 : coordinates.length;
+        List<int[]> points = new ArrayList<>(length);
+        for(int i = 0; i < length; i++) {
+            int[] point = {round(coordinates[i].x), round(coordinates[i].y)};
+            int[] last = points.isEmpty() ? null : points.get(points.size() - 1);
+            if(last == null || last[0] != point[0] || last[1] != point[1]) {
+                points.add(point);
+            }
+        }
+        if(points.size() < (ring ? 3 : 2)) {
+            return;
+        }
+        commands.add(command(MOVE_TO, 1));
+        addPoint(points.get(0), commands, cursor);
+        commands.add(command(LINE_TO, points.size() - 1));
+        for(int i = 1; i < points.size(); i++) {
+            addPoint(points.get(i), commands, cursor);
+        }
+        if(ring) {
+            commands.add(command(CLOSE_PATH, 1));
+        }
+    }
+
+    private static void addPoint(Coordinate coordinate, List<Integer> commands, int[] cursor) {
+        addPoint(new int[]{round(coordinate.x), round(coordinate.y)}, commands, cursor);
+    }
+
+    /**
+     * Adds the parameters of a point, relative to the cursor, and moves the cursor.
+     */
+    private static void addPoint(int[] point, List<Integer> commands, int[] cursor) {
+        commands.add((int) zigZag(point[0] - cursor[0]));
+        commands.add((int) zigZag(point[1] - cursor[1]));
+        cursor[0] = point[0];
+        cursor[1] = point[1];
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static int round(double value) {
+        return (int) Math.round(value);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Converts a property value into one of the types supported by the tile values.
+     */
+    private static Object normalize(Object value) {
+        if(value instanceof Boolean || value instanceof String) {
+            return value;
+        }
+        if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if(value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value.toString();
+    }
+
+    /**
+     * Returns the index of a key or a value, adding it if needed.
+     */
+    private static <T> int indexOf(Map<T, Integer> map, T item) {
+        Integer index = map.get(item);
+        if(index == null) {
+            index = map.size();
+            map.put(item, index);
+        }
+        return index;
+    }
+
+    private static void writeTag(ByteArrayOutputStream out, int field, int wireType) {
+        writeVarint(out, (field << 3) | wireType);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, int field, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeTag(out, field, LENGTH_DELIMITED);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeMessage(ByteArrayOutputStream out, int field, ByteArrayOutputStream message) {
+        writeTag(out, field, LENGTH_DELIMITED);
+        writeVarint(out, message.size());
+        byte[] bytes = message.toByteArray();
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writePacked(ByteArrayOutputStream out, int field, List<Integer> values) {
+        if(values.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        for(int value : values) {
+            writeVarint(packed, value & 0xFFFFFFFFL);
+        }
+        writeMessage(out, field, packed);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.orbisgis.orbisserver.api.model.Operation;
+import org.orbisgis.orbisserver.api.service.ObservableService;
+import org.orbisgis.orbisserver.api.service.Service;
+import org.orbisgis.orbisserver.api.service.ServiceFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Catalog of the operations offered by the registered ServiceFactory, shared read only by all the sessions.
+ * The operation list of a ServiceFactory is requested from the first service it creates, instead of on each
+ * client request, and requested again when an {@link ObservableService} reports that its operations have changed.
+ * The operations are also partitioned by their keywords into the Import, Export and Process lists.
+ */
+public class OperationCatalog {
+
+    /** Keyword of the import operations. */
+    public static final String IMPORT_KEYWORD = "Import";
+    /** Keyword of the export operations. */
+    public static final String EXPORT_KEYWORD = "Export";
+
+    /** Categories of the operations, matching the partitions of the catalog. */
+    public enum Category {ALL, IMPORT, EXPORT, PROCESS}
+
+    /** Operation list of each ServiceFactory. */
+    private ConcurrentMap<ServiceFactory, List<Operation>> factoryOperationMap;
+    /** Read only partitions of all the operations, rebuilt on each catalog modification. */
+    private volatile Partitions partitions;
+
+    /**
+     * Main constructor.
+     */
+    public OperationCatalog(){
+        factoryOperationMap = new ConcurrentHashMap<>();
+        partitions = new Partitions(Collections.<List<Operation>>emptyList());
+    }
+
+    /**
+     * Registers the operations of the given service if the catalog does not already contain the ones of its factory.
+     * @param factory ServiceFactory which has created the service.
+     * @param service Service offering the operations.
+     */
+    public void register(ServiceFactory factory, Service service){
+        if(!factoryOperationMap.containsKey(factory)){
+            synchronized (this) {
+                if(!factoryOperationMap.containsKey(factory)) {
+                    refresh(factory, service);
+                }
+            }
+        }
+    }
+
+    /**
+     * Requests again the operations of the given service and replaces the ones of its factory.
+     * @param factory ServiceFactory which has created the service.
+     * @param service Service offering the operations.
+     */
+    public synchronized void refresh(ServiceFactory factory, Service service){
+        List<Operation> operationList = service.getAllOperation();
+        if(operationList == null){
+            operationList = new ArrayList<>();
+        }
+        factoryOperationMap.put(factory, Collections.unmodifiableList(new ArrayList<>(operationList)));
+        partitions = new Partitions(factoryOperationMap.values());
+    }
+
+    /**
+     * Removes the operations of the given factory.
+     * @param factory ServiceFactory to remove.
+     */
+    public synchronized void remove(ServiceFactory factory){
+        if(factoryOperationMap.remove(factory) != null) {
+            partitions = new Partitions(factoryOperationMap.values());
+        }
+    }
+
+    /**
+     * Returns all the operations.
+     * @return Read only list of the operations.
+     */
+    public List<Operation> getOperations(){
+        return partitions.all;
+    }
+
+    /**
+     * Returns a page of the operations of the given category matching the query, the best ranked first.
+     * @param category Category of the operations.
+     * @param query Words to search in the title, the abstract and the keywords of the operations.
+     * @param offset Position of the first operation of the page in the results.
+     * @param limit Maximum number of operations in the page, negative for no limit.
+     * @return The page of the matching operations.
+     */
+    public List<Operation> search(Category category, String query, int offset, int limit){
+        return partitions.getIndex(category).search(query, offset, limit);
+    }
+
+    /**
+     * Read only partitions of the operation lists.
+     */
+    private static class Partitions {
+        private final List<Operation> all;
+        private final Map<Category, OperationIndex> indexMap;
+
+        private Partitions(Iterable<List<Operation>> operationLists){
+            List<Operation> all = new ArrayList<>();
+            List<Operation> imports = new ArrayList<>();
+            List<Operation> exports = new ArrayList<>();
+            List<Operation> processes = new ArrayList<>();
+            for(List<Operation> operationList : operationLists) {
+                for (Operation op : operationList) {
+                    all.add(op);
+                    boolean isImport = op.getKeyWord().contains(IMPORT_KEYWORD);
+                    boolean isExport = op.getKeyWord().contains(EXPORT_KEYWORD);
+                    if (isImport) {
+                        imports.add(op);
+                    }
+                    if (isExport) {
+                        exports.add(op);
+                    }
+                    if (!isImport && !isExport) {
+                        processes.add(op);
+                    }
+                }
+            }
+            this.all = Collections.unmodifiableList(all);
+            this.indexMap = new EnumMap<>(Category.class);
+            indexMap.put(Category.ALL, new OperationIndex(all));
+            indexMap.put(Category.IMPORT, new OperationIndex(imports));
+            indexMap.put(Category.EXPORT, new OperationIndex(exports));
+            indexMap.put(Category.PROCESS, new OperationIndex(processes));
+        }
+
+        private OperationIndex getIndex(Category category){
+            return indexMap.get(category);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.orbisgis.orbisserver.api.model.Operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Read only inverted index over the title, the abstract and the keywords of a list of operations.
+ * The query words are matched against the indexed words by prefix, an operation should match all the query words.
+ * The results are ranked by the field in which the words are found (title, then keywords, then abstract) and by
+ * exact word matches.
+ */
+public class OperationIndex {
+
+    /** Pattern splitting the texts into words. */
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    /** Weight of a word found in the title. */
+    private static final int TITLE_WEIGHT = 8;
+    /** Weight of a word found in the keywords. */
+    private static final int KEYWORD_WEIGHT = 4;
+    /** Weight of a word found in the abstract. */
+    private static final int ABSTRACT_WEIGHT = 1;
+
+    /** Indexed operations, in their original order. */
+    private final List<Operation> operationList;
+    /** Indexed words with the weight of the word for each operation (by its position in the list). */
+    private final NavigableMap<String, Map<Integer, Integer>> postingMap;
+
+    /**
+     * Main constructor.
+     * @param operationList Operations to index.
+     */
+    public OperationIndex(List<Operation> operationList){
+        this.operationList = Collections.unmodifiableList(new ArrayList<>(operationList));
+        this.postingMap = new TreeMap<>();
+        for(int i = 0; i < this.operationList.size(); i++){
+            Operation op = this.operationList.get(i);
+            index(i, op.getTitle(), TITLE_WEIGHT);
+            for(String keyword : op.getKeyWord()){
+                index(i, keyword, KEYWORD_WEIGHT);
+            }
+            index(i, op.getAbstr(), ABSTRACT_WEIGHT);
+        }
+    }
+
+    /**
+     * Adds the words of a text to the index.
+     * @param position Position of the operation in the list.
+     * @param text Text to index.
+     * @param weight Weight of the text words.
+     */
+    private void index(int position, String text, int weight){
+        for(String word : tokenize(text)){
+            Map<Integer, Integer> postings = postingMap.get(word);
+            if(postings == null){
+                postings = new HashMap<>();
+                postingMap.put(word, postings);
+            }
+            Integer current = postings.get(position);
+            postings.put(position, current == null ? weight : Math.max(current, weight));
+        }
+    }
+
+    /**
+     * Returns a page of the operations matching the query, the best ranked first. If the query is empty, all the
+     * operations are returned in their original order.
+     * @param query Words to search.
+     * @param offset Position of the first operation of the page in the results.
+     * @param limit Maximum number of operations in the page, negative for no limit.
+     * @return The page of the matching operations.
+     */
+    public List<Operation> search(String query, int offset, int limit){
+        List<Integer> positions = match(query);
+        int from = Math.max(0, Math.min(offset, positions.size()));
+        int to = limit < 0 ? positions.size() : (int) Math.min((long) from + limit, positions.size());
+        List<Operation> page = new ArrayList<>(to - from);
+        for(Integer position : positions.subList(from, to)){
+            page.add(operationList.get(position));
+        }
+        return page;
+    }
+
+    /**
+     * Returns the positions of the operations matching the query, the best ranked first.
+     * @param query Words to search.
+     * @return The ranked positions of the matching operations.
+     */
+    private List<Integer> match(String query){
+        List<String> words = tokenize(query);
+        List<Integer> positions = new ArrayList<>();
+        if(words.isEmpty()){
+            for(int i = 0; i < operationList.size(); i++){
+                positions.add(i);
+            }
+            return positions;
+        }
+        final Map<Integer, Integer> scoreMap = new HashMap<>();
+        boolean first = true;
+        for(String word : words){
+            Map<Integer, Integer> wordScoreMap = new HashMap<>();
+            //All the indexed words starting with the query word
+            for(Map.Entry<String, Map<Integer, Integer>> entry :
+                    postingMap.subMap(word, true, word + Character.MAX_VALUE, false).entrySet()){
+                boolean exact = entry.getKey().length() == word.length();
+                for(Map.Entry<Integer, Integer> posting : entry.getValue().entrySet()){
+                    int score = exact ? posting.getValue() * 2 : posting.getValue();
+                    Integer current = wordScoreMap.get(posting.getKey());
+                    if(current == null || current < score){
+                        wordScoreMap.put(posting.getKey(), score);
+                    }
+                }
+            }
+            //Keeps only the operations matching all the words
+            if(first){
+                scoreMap.putAll(wordScoreMap);
+                first = false;
+            }
+            else{
+                scoreMap.keySet().retainAll(wordScoreMap.keySet());
+                for(Map.Entry<Integer, Integer> entry : scoreMap.entrySet()){
+                    entry.setValue(entry.getValue() + wordScoreMap.get(entry.getKey()));
+                }
+            }
+            if(scoreMap.isEmpty()){
+                return positions;
+            }
+        }
+        positions.addAll(scoreMap.keySet());
+        Collections.sort(positions, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer p1, Integer p2) {
+                int diff = scoreMap.get(p2) - scoreMap.get(p1);
+                return diff != 0 ? diff : p1 - p2;
+            }
+        });
+        return positions;
+    }
+
+    /**
+     * Splits a text into lower case words.
+     * @param text Text to split.
+     * @return The list of words.
+     */
+    private static List<String> tokenize(String text){
+        List<String> words = new ArrayList<>();
+        if(text == null){
+            return words;
+        }
+        for(String word : WORD_SEPARATOR.split(text.toLowerCase(Locale.ROOT))){
+            if(!word.isEmpty()){
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.orbisgis.orbisserver.api.model.Output;
+import org.orbisgis.orbisserver.api.model.Result;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the outputs of a job result as a ZIP archive into a stream. The literal outputs are written directly into
+ * their entry. The remote reference outputs are fetched concurrently, with a bounded parallelism and a timeout per
+ * reference, into spool files which are then copied into their entry in the order of the outputs. The spool files
+ * keep the memory used by an archive bounded whatever the size of the references, as the ZIP stream can only write
+ * one entry at a time while the other fetches are running.
+ *
+ * The local 'file:' references are copied from their file channel without being fetched, only if they are located
+ * in the session workspace. The other 'file:' references are rejected.
+ *
+ * An output which can not be written, whether its fetch fails or times out or its local file is rejected or can not
+ * be read, fails the whole archive : an archive with missing entries must never be cached as the complete result.
+ */
+public final class ResultArchive {
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultArchive.class);
+
+    /** Size of the buffer used to copy the reference outputs. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** Maximum number of references fetched at the same time for an archive. */
+    private static final int MAX_PARALLEL_FETCHES = 4;
+    /** Timeout in milliseconds of the connection to a reference. */
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+    /** Timeout in milliseconds between two reads of a reference. */
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+    /** Maximum time in milliseconds to fetch a whole reference. */
+    private static final long FETCH_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private ResultArchive() {
+    }
+
+    /**
+     * Writes the outputs of the result as a ZIP archive. The stream is not closed.
+     * @param result Result of the job.
+     * @param out Stream where the archive is written.
+     * @param executor Executor fetching the remote references.
+     * @param spoolFolder Folder where the remote references are fetched before being written into the archive.
+     * @param workspaceFolder Workspace of the session, the only folder from which the local files can be served.
+     * @throws IOException Exception thrown if the archive can not be written or if an output is not available.
+     */
+    public static void write(Result result, OutputStream out, ExecutorService executor, File spoolFolder,
+                             File workspaceFolder) throws IOException {
+        List<Output> outputList = result.getOutputList();
+        //Fetches of the remote references, by output index, started in advance within the parallelism limit
+        List<Future<File>> fetchList = new ArrayList<>(Collections.<Future<File>>nCopies(outputList.size(), null));
+        int nextFetch = startFetches(outputList, fetchList, 0, executor, spoolFolder);
+
+        ZipOutputStream zos = new ZipOutputStream(out);
+        WritableByteChannel zipChannel = Channels.newChannel(zos);
+        Set<String> entryNames = new HashSet<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        Path workspace = workspaceFolder.toPath().toRealPath();
+        try {
+            for(int i = 0; i < outputList.size(); i++) {
+                Output output = outputList.get(i);
+                //In the case of plain data, write it into an entry
+                if(output.getData() != null) {
+                    for(Object content : output.getData().getContent()) {
+                        zos.putNextEntry(new ZipEntry(uniqueName(output.getTitle(), entryNames)));
+                        zos.write(content.toString().getBytes(StandardCharsets.UTF_8));
+                        zos.closeEntry();
+                    }
+                }
+                //If the result is a local file of the workspace, copy it from its channel
+                else if(isLocalReference(output)) {
+                    Path path = getLocalPath(output, workspace);
+                    if(path == null) {
+                        LOGGER.error("The result '"+output.getReference()+"' is not in the session workspace.");
+                        throw new IOException("The result '"+output.getReference()+"' is not available.");
+                    }
+                    FileChannel channel;
+                    try {
+                        channel = FileChannel.open(path, StandardOpenOption.READ);
+                    } catch (IOException e) {
+                        LOGGER.error("Unable to read the result '"+output.getReference()+"'.\n"+e.getMessage());
+                        throw e;
+                    }
+                    //Once the entry is started, a read failure fails the archive instead of truncating the entry
+                    try {
+                        zos.putNextEntry(new ZipEntry(uniqueName(output.getTitle(), entryNames)));
+                        long position = 0;
+                        long size = channel.size();
+                        while(position < size) {
+                            position += channel.transferTo(position, size - position, zipChannel);
+                        }
+                        zos.closeEntry();
+                    } finally {
+                        channel.close();
+                    }
+                }
+                //If the result is a remote reference, wait for its fetch and copy it
+                else if(fetchList.get(i) != null) {
+                    File spool = awaitFetch(output, fetchList.get(i));
+                    nextFetch = startFetches(outputList, fetchList, nextFetch, executor, spoolFolder);
+                    try (InputStream in = Files.newInputStream(spool.toPath())) {
+                        zos.putNextEntry(new ZipEntry(uniqueName(output.getTitle(), entryNames)));
+                        int length;
+                        while((length = in.read(buffer)) >= 0) {
+                            zos.write(buffer, 0, length);
+                        }
+                        zos.closeEntry();
+                    } finally {
+                        Files.deleteIfExists(spool.toPath());
+                    }
+                }
+            }
+            zos.finish();
+            zos.flush();
+        } finally {
+            //On failure, cancels the pending fetches and removes their spool files
+            for(Future<File> fetch : fetchList) {
+                if(fetch != null && !fetch.cancel(true) && fetch.isDone()) {
+                    try {
+                        Files.deleteIfExists(fetch.get().toPath());
+                    } catch (InterruptedException | ExecutionException | CancellationException e) {
+                        //The fetch has failed, so there is no spool file
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the fetches of the next remote references while the number of running fetches is under the limit.
+     * @param outputList Outputs of the result.
+     * @param fetchList Fetches by output index.
+     * @param nextFetch Index of the next output to check.
+     * @param executor Executor fetching the remote references.
+     * @param spoolFolder Folder where the remote references are fetched.
+     * @return The index of the next output to check.
+     */
+    private static int startFetches(List<Output> outputList, List<Future<File>> fetchList, int nextFetch,
+                                    ExecutorService executor, File spoolFolder) {
+        int running = 0;
+        for(Future<File> fetch : fetchList) {
+            if(fetch != null && !fetch.isDone()) {
+                running++;
+            }
+        }
+        while(nextFetch < outputList.size() && running < MAX_PARALLEL_FETCHES) {
+            Output output = outputList.get(nextFetch);
+            if(output.getData() == null && output.getReference() != null && !isLocalReference(output)) {
+                FutureTask<File> fetch = new FutureTask<>(new FetchTask(output.getReference(), spoolFolder));
+                try {
+                    executor.execute(fetch);
+                } catch (RejectedExecutionException e) {
+                    fetch.run();
+                }
+                fetchList.set(nextFetch, fetch);
+                running++;
+            }
+            nextFetch++;
+        }
+        return nextFetch;
+    }
+
+    /**
+     * Waits for the fetch of a remote reference.
+     * @param output Output referencing the fetched file.
+     * @param fetch Fetch of the reference.
+     * @return The spool file containing the reference.
+     * @throws IOException Exception thrown if the fetch failed or timed out, or if the thread is interrupted.
+     */
+    private static File awaitFetch(Output output, Future<File> fetch) throws IOException {
+        try {
+            return fetch.get(FETCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching the result '"+output.getReference()+"'.", e);
+        } catch (ExecutionException e) {
+            LOGGER.error("Unable to download the result '"+output.getReference()+"'.\n"+e.getCause().getMessage());
+            throw new IOException("Unable to download the result '"+output.getReference()+"'.", e.getCause());
+        } catch (TimeoutException e) {
+            fetch.cancel(true);
+            LOGGER.error("Timeout while downloading the result '"+output.getReference()+"'.");
+            throw new IOException("Timeout while downloading the result '"+output.getReference()+"'.", e);
+        }
+    }
+
+    /**
+     * Returns true if the output references a local file with a 'file:' URL.
+     * @param output Output to check.
+     * @return True if the output is a local file reference.
+     */
+    private static boolean isLocalReference(Output output) {
+        String reference = output.getReference();
+        return output.getData() == null && reference != null && reference.regionMatches(true, 0, "file:", 0, 5);
+    }
+
+    /**
+     * Returns the real path of the local file referenced by the output if it is located in the workspace.
+     * @param output Output referencing a local file.
+     * @param workspace Real path of the session workspace.
+     * @return The real path of the referenced file, or null if the file does not exist or is outside the workspace.
+     */
+    private static Path getLocalPath(Output output, Path workspace) {
+        try {
+            Path path = Paths.get(new URI(output.getReference())).toRealPath();
+            return path.startsWith(workspace) ? path : null;
+        } catch (URISyntaxException | IllegalArgumentException | IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns an entry name based on the output title and not already used in the archive.
+     * @param title Title of the output.
+     * @param entryNames Entry names already used in the archive.
+     * @return The entry name.
+     */
+    private static String uniqueName(String title, Set<String> entryNames) {
+        String name = title == null || title.isEmpty() ? "output" : title.replace(File.separatorChar, '_').replace('/', '_');
+        String unique = name;
+        int diff = 1;
+        while(!entryNames.add(unique)) {
+            unique = name + diff;
+            diff++;
+        }
+        return unique;
+    }
+
+    /**
+     * Task downloading a remote reference into a spool file.
+     */
+    private static class FetchTask implements Callable<File> {
+
+        /** URL of the reference. */
+        private final String reference;
+        /** Folder where the spool file is created. */
+        private final File spoolFolder;
+
+        FetchTask(String reference, File spoolFolder) {
+            this.reference = reference;
+            this.spoolFolder = spoolFolder;
+        }
+
+        @Override
+        public File call() throws IOException {
+            URLConnection connection = new URL(reference).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            File spool = File.createTempFile("fetch", ".part", spoolFolder);
+            boolean done = false;
+            try (InputStream in = connection.getInputStream();
+                 FileOutputStream fos = new FileOutputStream(spool)) {
+                fos.getChannel().transferFrom(Channels.newChannel(in), 0, Long.MAX_VALUE);
+                //A cancelled fetch does not keep its spool file
+                done = !Thread.currentThread().isInterrupted();
+            } finally {
+                if(!done) {
+                    Files.deleteIfExists(spool.toPath());
+                }
+            }
+            if(!done) {
+                throw new IOException("Fetch of '"+reference+"' cancelled.");
+            }
+            return spool;
+        }
+    }
+}
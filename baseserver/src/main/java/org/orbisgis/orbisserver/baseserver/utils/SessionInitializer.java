@@ -1,30 +1,21 @@
 package org.orbisgis.orbisserver.baseserver.utils;
 
-import org.h2gis.functions.factory.H2GISDBFactory;
-import org.h2gis.utilities.SFSUtilities;
-import org.orbisgis.orbisserver.api.service.Service;
-import org.orbisgis.orbisserver.api.service.ServiceFactory;
 import org.orbisgis.orbisserver.baseserver.model.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.sql.DataSource;
-import java.io.File;
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
- * Class implementing the Runnable interface, used to start a session in an other thread and avoid server freeze.
+ * Class implementing the Callable interface, used to start a session in an other thread and avoid server freeze.
+ * The session resources are taken from the WarmSessionPool when available.
  *
  * @author Sylvain PALOMINOS
  */
 
-public class SessionInitializer implements Runnable {
+public class SessionInitializer implements Callable<Session> {
 
     /** Logger of the class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(SessionInitializer.class);
@@ -32,51 +23,42 @@ public class SessionInitializer implements Runnable {
     private Session session;
     /** Map of properties to use. */
     private Map<String, Object> propertyMap;
-    /** Unique token of the session. */
-    private UUID token;
-    /** List of the ServiceFactory tu use. */
-    private List<ServiceFactory> serviceFactoryList;
+    /** Pool of pre-initialized session resources. */
+    private WarmSessionPool warmSessionPool;
+    /** Server wide scheduler running the jobs of the sessions. */
+    private FairShareScheduler jobScheduler;
 
-    public SessionInitializer(Session session, Map<String, Object> propertyMap, UUID token,
-                              List<ServiceFactory> serviceFactoryList){
+    public SessionInitializer(Session session, Map<String, Object> propertyMap, WarmSessionPool warmSessionPool,
+                              FairShareScheduler jobScheduler){
         this.session = session;
         this.propertyMap = propertyMap;
-        this.token = token;
-        this.serviceFactoryList = serviceFactoryList;
+        this.warmSessionPool = warmSessionPool;
+        this.jobScheduler = jobScheduler;
     }
 
     @Override
-    public void run() {
-        //Creates the session workspace
-        File workspaceFolder = new File("workspace", token.toString());
-        workspaceFolder.mkdirs();
-        propertyMap.put(ServiceFactory.WORKSPACE_FOLDER_PROP, workspaceFolder);
-
-        //Creates the session ExecutorService
-        ExecutorService executorService = Executors.newFixedThreadPool(3);
-        propertyMap.put(ServiceFactory.EXECUTOR_SERVICE_PROP, executorService);
-
-        //Creates the session DataSource
-        DataSource dataSource = null;
-        String dataBaseLocation = new File(workspaceFolder, "h2_db.mv.db").getAbsolutePath();
-        try {
-            dataSource = SFSUtilities.wrapSpatialDataSource(H2GISDBFactory.createDataSource(dataBaseLocation, true));
-        } catch (SQLException e) {
-            LOGGER.error("Unable to create the database : \n"+e.getMessage());
+    public Session call() {
+        //Takes pre-initialized resources if available, otherwise builds them
+        WarmSessionPool.Resources resources = warmSessionPool.poll();
+        if(resources == null) {
+            LOGGER.info("No pre-initialized session available, building one.");
+            resources = warmSessionPool.build();
         }
-        LOGGER.info("Session database started.");
-        propertyMap.put(ServiceFactory.DATA_SOURCE_PROP, dataSource);
 
-
-        //Sets the session with the options
-        List<Service> serviceList = new ArrayList<>();
-        for(ServiceFactory factory : serviceFactoryList) {
-            Service service = factory.createService(propertyMap);
-            serviceList.add(service);
-            LOGGER.info("Service "+service.getClass().getSimpleName()+" started.");
+        //Binds the resources to the session view of the server job scheduler, limited by the user quota
+        int quota = FairShareScheduler.DEFAULT_USER_QUOTA;
+        if(propertyMap.containsKey(Session.JOB_POOL_SIZE)) {
+            quota = (int) propertyMap.get(Session.JOB_POOL_SIZE);
+        }
+        ExecutorService executorService = jobScheduler.forUser(session.getUsername(), quota);
+        propertyMap.putAll(resources.bind(executorService));
+        //Each running job holds a connection, the other requests of the session use the headroom
+        ConnectionPool connectionPool = (ConnectionPool) propertyMap.get(Session.CONNECTION_POOL);
+        if(connectionPool != null) {
+            connectionPool.ensureMaxSize(quota + ConnectionPool.HEADROOM);
         }
-        propertyMap.put(Session.SERVICE_LIST, serviceList);
 
         session.setProperties(propertyMap);
+        return session;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,324 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.h2gis.utilities.TableLocation;
+import org.orbisgis.orbisserver.api.service.ServiceFuture;
+import org.orbisgis.orbisserver.baseserver.model.DatabaseField;
+import org.orbisgis.orbisserver.baseserver.model.DatabaseField.IndexState;
+import org.orbisgis.orbisserver.baseserver.model.DatabaseTable;
+import org.orbisgis.orbisserver.baseserver.model.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Builds in background the missing spatial indexes of the geometry columns of the session databases. The indexes are
+ * built one at a time on a low priority thread, so they do not compete with the running jobs. Once an index is built
+ * or has failed, the database content of the session is invalidated so that the new state is shown.
+ *
+ * A built index is then read from the database, so its task is forgotten and a re-imported table is indexed again.
+ * A failed task is kept to show its state and is only retried once the table has changed.
+ */
+public class SpatialIndexer {
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpatialIndexer.class);
+
+    /** Index tasks by session token, table and column. A failed task is kept until its table changes. */
+    private final ConcurrentMap<String, IndexTask> taskMap;
+    /** Executor building the indexes. */
+    private volatile ExecutorService executor;
+
+    /** Main constructor. */
+    public SpatialIndexer() {
+        this.taskMap = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Starts the low priority thread building the indexes.
+     */
+    public void start() {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "spatial-indexer");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Stops the building of the indexes.
+     */
+    public void shutdown() {
+        if(executor != null) {
+            executor.shutdownNow();
+        }
+        taskMap.clear();
+    }
+
+    /**
+     * Requests the spatial index of a geometry column. If the index is already requested, the pending request is
+     * returned.
+     * @param session Session owning the table.
+     * @param table Table of the column.
+     * @param field Geometry column to index.
+     * @return The future of the index building, giving the final state of the index.
+     */
+    public ServiceFuture<IndexState> request(final Session session, final DatabaseTable table,
+                                             final DatabaseField field) {
+        String key = key(session, table, field);
+        String signature = signature(table, field);
+        IndexTask task = taskMap.get(key);
+        if(task != null) {
+            //A failed index is retried once the table has changed
+            if(!task.isFailed() || task.signature.equals(signature)) {
+                return task.result;
+            }
+            taskMap.remove(key, task);
+        }
+        task = new IndexTask(session, key, signature, new Callable<IndexState>() {
+            @Override
+            public IndexState call() throws SQLException {
+                try(Connection connection = session.getDataSource().getConnection()) {
+                    //The index may have been built since the database content was read
+                    if(!hasSpatialIndex(connection, table, field)) {
+                        try (Statement statement = connection.createStatement()) {
+                            statement.execute("CREATE SPATIAL INDEX ON " + table.getTableLocation() +
+                                    "(" + TableLocation.quoteIdentifier(field.getName()) + ")");
+                        }
+                    }
+                } catch (SQLException e) {
+                    LOGGER.error("Unable to create the spatial index on "+table.getTableLocation()+"("+
+                            field.getName()+").\n"+e.getMessage());
+                    throw e;
+                }
+                LOGGER.info("Spatial index created on "+table.getTableLocation()+"("+field.getName()+").");
+                return IndexState.INDEXED;
+            }
+        });
+        IndexTask previous = taskMap.putIfAbsent(key, task);
+        if(previous != null) {
+            return previous.result;
+        }
+        ExecutorService current = executor;
+        try {
+            if(current == null) {
+                throw new RejectedExecutionException("The spatial indexer is not started.");
+            }
+            current.execute(task);
+        } catch (RejectedExecutionException e) {
+            taskMap.remove(key, task);
+            task.cancel(false);
+        }
+        return task.result;
+    }
+
+    /**
+     * Returns the state of the index request of a geometry column.
+     * @param session Session owning the table.
+     * @param table Table of the column.
+     * @param field Geometry column.
+     * @return The state of the request, NONE if the index has not been requested.
+     */
+    public IndexState getState(Session session, DatabaseTable table, DatabaseField field) {
+        IndexTask task = taskMap.get(key(session, table, field));
+        if(task == null) {
+            return IndexState.NONE;
+        }
+        if(!task.isDone()) {
+            return task.started ? IndexState.BUILDING : IndexState.PENDING;
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return IndexState.PENDING;
+        } catch (ExecutionException e) {
+            return IndexState.FAILED;
+        } catch (CancellationException e) {
+            return IndexState.NONE;
+        }
+    }
+
+    /**
+     * Cancels the pending index requests of a session and forgets its indexes.
+     * @param session Session to forget.
+     */
+    public void evictSession(Session session) {
+        String prefix = session.getToken() + "/";
+        Iterator<Map.Entry<String, IndexTask>> iterator = taskMap.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<String, IndexTask> entry = iterator.next();
+            if(entry.getKey().startsWith(prefix)) {
+                entry.getValue().cancel(false);
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String key(Session session, DatabaseTable table, DatabaseField field) {
+        return session.getToken() + "/" + table.getTableLocation() + "/" + field.getName();
+    }
+
+    /**
+     * Returns a signature of the table content used to detect that a table has changed since an index has failed.
+     * @param table Table of the column.
+     * @param field Geometry column.
+     * @return The signature of the table.
+     */
+    private static String signature(DatabaseTable table, DatabaseField field) {
+        return table.getRowCountEstimate() + "/" + Arrays.toString(table.getExtent()) + "/" + field.getType() + "/" +
+                field.getSrid();
+    }
+
+    /**
+     * Checks in the database if a geometry column already has a spatial index.
+     * @param connection Connection to the session database.
+     * @param table Table of the column.
+     * @param field Geometry column.
+     * @return True if the column has a spatial index.
+     * @throws SQLException Exception thrown if the database can not be read.
+     */
+    private static boolean hasSpatialIndex(Connection connection, DatabaseTable table, DatabaseField field)
+            throws SQLException {
+        try(PreparedStatement ps = connection.prepareStatement("SELECT 1 FROM INFORMATION_SCHEMA.INDEXES " +
+                "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND COLUMN_NAME = ? " +
+                "AND INDEX_TYPE_NAME = 'SPATIAL INDEX'")) {
+            String schema = table.getTableLocation().getSchema();
+            ps.setString(1, schema == null || schema.isEmpty() ? "PUBLIC" : schema);
+            ps.setString(2, table.getTableLocation().getTable());
+            ps.setString(3, field.getName());
+            try(ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Index building task, knowing if it has been started. Once done, the database content of the session is
+     * invalidated, and a successful task is forgotten as the index state is then read from the database.
+     */
+    private class IndexTask extends FutureTask<IndexState> {
+
+        /** True once the task is running. */
+        private volatile boolean started;
+        /** Session owning the table. */
+        private final Session session;
+        /** Key of the task in the task map. */
+        private final String key;
+        /** Signature of the table when the index has been requested. */
+        private final String signature;
+        /** Future of the index state, completed once the task is done, so the callers can wait without blocking. */
+        private final ServiceFuture<IndexState> result = new ServiceFuture<>();
+
+        IndexTask(Session session, String key, String signature, Callable<IndexState> callable) {
+            super(callable);
+            this.session = session;
+            this.key = key;
+            this.signature = signature;
+        }
+
+        @Override
+        protected void done() {
+            if(isCancelled()) {
+                result.cancel(false);
+                return;
+            }
+            try {
+                IndexState state = get();
+                taskMap.remove(key, this);
+                session.invalidateDatabaseContent();
+                result.complete(state);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.fail(e);
+            } catch (ExecutionException e) {
+                session.invalidateDatabaseContent();
+                result.fail(e.getCause());
+            }
+        }
+
+        /**
+         * Returns true if the index building has failed.
+         * @return True if the task has failed.
+         */
+        boolean isFailed() {
+            if(!isDone() || isCancelled()) {
+                return false;
+            }
+            try {
+                get();
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                return true;
+            }
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            super.run();
+        }
+    }
+}
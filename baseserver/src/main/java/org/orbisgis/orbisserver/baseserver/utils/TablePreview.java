@@ -0,0 +1,324 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.h2gis.utilities.TableLocation;
+import org.orbisgis.orbisserver.baseserver.model.DatabaseField;
+import org.orbisgis.orbisserver.baseserver.model.DatabaseTable;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a page of the rows of a table as a GeoJSON feature collection. The rows are read with a keyset pagination on
+ * the H2 _ROWID_ pseudo column, so a page costs the same whatever its position, and can be filtered by a bounding box
+ * with the '&&' operator which uses the spatial index of the geometry column. Each row is written to the stream as
+ * soon as it is read.
+ *
+ * The query is executed by {@link #open(DataSource)} before anything is written, so a table which can not be read,
+ * like a view or a linked table without _ROWID_, or a lock timeout, is reported before the response is started.
+ */
+public class TablePreview {
+
+    /** Factory of the JSON generators. */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    /** Maximum number of rows of a page. */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /** Table to read. */
+    private final DatabaseTable table;
+    /** Non geometric columns written as feature properties. */
+    private final List<DatabaseField> propertyList;
+    /** Geometry column written as feature geometry, null if the table has none or if it is not requested. */
+    private final DatabaseField geometryField;
+    /** Bounding box filter as {minX, minY, maxX, maxY}, null for no filter. */
+    private double[] bbox;
+    /** Row id after which the page starts. */
+    private long afterRowId;
+    /** Maximum number of rows of the page. */
+    private int pageSize;
+
+    /**
+     * Main constructor. The column names are checked against the table fields, so they can safely be used in the
+     * query.
+     * @param table Table to read.
+     * @param columnNames Names of the columns to write, all the columns if null or empty.
+     * @throws IllegalArgumentException Exception thrown if a column does not belong to the table.
+     */
+    public TablePreview(DatabaseTable table, List<String> columnNames) {
+        this.table = table;
+        this.propertyList = new ArrayList<>();
+        DatabaseField geometry = null;
+        List<DatabaseField> fieldList = new ArrayList<>();
+        if(columnNames == null || columnNames.isEmpty()) {
+            fieldList.addAll(table.getFieldList());
+        }
+        else {
+            for(String name : columnNames) {
+                DatabaseField field = table.getField(name);
+                if(field == null) {
+                    throw new IllegalArgumentException("Unknown column '"+name+"'.");
+                }
+                fieldList.add(field);
+            }
+        }
+        for(DatabaseField field : fieldList) {
+            if(field.isGeometry()) {
+                if(geometry == null) {
+                    geometry = field;
+                }
+            }
+            else {
+                propertyList.add(field);
+            }
+        }
+        this.geometryField = geometry;
+        this.afterRowId = 0;
+        this.pageSize = MAX_PAGE_SIZE;
+    }
+
+    /**
+     * Sets the bounding box filter. It is only applied if a geometry column is written.
+     * @param bbox Bounding box as {minX, minY, maxX, maxY}, null for no filter.
+     */
+    public void setBbox(double[] bbox) {
+        this.bbox = bbox;
+    }
+
+    /**
+     * Sets the row id after which the page starts, which is the 'next' value of the previous page.
+     * @param afterRowId Row id after which the page starts.
+     */
+    public void setAfterRowId(long afterRowId) {
+        this.afterRowId = afterRowId;
+    }
+
+    /**
+     * Sets the maximum number of rows of the page, bounded by {@link #MAX_PAGE_SIZE}.
+     * @param pageSize Maximum number of rows.
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Reads the page and writes it into the stream. The stream is not closed.
+     * @param ds DataSource of the table.
+     * @param out Stream where the features are written.
+     * @throws SQLException Exception thrown if the table can not be read.
+     * @throws IOException Exception thrown if the features can not be written.
+     */
+    public void write(DataSource ds, OutputStream out) throws SQLException, IOException {
+        write(open(ds), out);
+    }
+
+    /**
+     * Executes the query of the page. The returned page must be given to {@link #write(Page, OutputStream)} or
+     * closed.
+     * @param ds DataSource of the table.
+     * @return The page, ready to be written.
+     * @throws SQLException Exception thrown if the table can not be read.
+     */
+    public Page open(DataSource ds) throws SQLException {
+        Connection connection = ds.getConnection();
+        PreparedStatement ps = null;
+        try {
+            ps = connection.prepareStatement(buildQuery());
+            int index = 1;
+            ps.setLong(index++, afterRowId);
+            if(bbox != null && geometryField != null) {
+                for(double coordinate : bbox) {
+                    ps.setDouble(index++, coordinate);
+                }
+            }
+            ps.setInt(index, pageSize);
+            ps.setFetchSize(Math.min(pageSize, 100));
+            return new Page(connection, ps, ps.executeQuery());
+        } catch (SQLException e) {
+            if(ps != null) {
+                ps.close();
+            }
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes an opened page into the stream and closes the page. The stream is not closed.
+     * @param page Page returned by {@link #open(DataSource)}.
+     * @param out Stream where the features are written.
+     * @throws SQLException Exception thrown if the table can not be read.
+     * @throws IOException Exception thrown if the features can not be written.
+     */
+    public void write(Page page, OutputStream out) throws SQLException, IOException {
+        long lastRowId = -1;
+        int count = 0;
+        try(Page p = page) {
+            ResultSet rs = p.resultSet;
+            JsonGenerator gen = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+            gen.writeStartObject();
+            gen.writeStringField("type", "FeatureCollection");
+            gen.writeArrayFieldStart("features");
+            while(rs.next()) {
+                lastRowId = rs.getLong(1);
+                count++;
+                gen.writeStartObject();
+                gen.writeStringField("type", "Feature");
+                gen.writeNumberField("id", lastRowId);
+                gen.writeFieldName("geometry");
+                String geometry = geometryField == null ? null : rs.getString(propertyList.size() + 2);
+                if(geometry == null) {
+                    gen.writeNull();
+                }
+                else {
+                    gen.writeRawValue(geometry);
+                }
+                gen.writeObjectFieldStart("properties");
+                for(int i = 0; i < propertyList.size(); i++) {
+                    gen.writeFieldName(propertyList.get(i).getName());
+                    writeValue(gen, rs.getObject(i + 2));
+                }
+                gen.writeEndObject();
+                gen.writeEndObject();
+                //Sends each few rows to the client as soon as they are read
+                if(count % 100 == 0) {
+                    gen.flush();
+                }
+            }
+            gen.writeEndArray();
+            //The client asks for the next page with the last row id, there is no next page if this one is not full
+            if(count == pageSize) {
+                gen.writeNumberField("next", lastRowId);
+            }
+            else {
+                gen.writeNullField("next");
+            }
+            gen.writeEndObject();
+            gen.flush();
+        }
+    }
+
+    /**
+     * Builds the query of the page.
+     * @return The query of the page.
+     */
+    private String buildQuery() {
+        StringBuilder sb = new StringBuilder("SELECT _ROWID_");
+        for(DatabaseField field : propertyList) {
+            sb.append(", ").append(TableLocation.quoteIdentifier(field.getName()));
+        }
+        if(geometryField != null) {
+            sb.append(", ST_AsGeoJSON(").append(TableLocation.quoteIdentifier(geometryField.getName())).append(")");
+        }
+        sb.append(" FROM ").append(table.getTableLocation()).append(" WHERE _ROWID_ > ?");
+        if(bbox != null && geometryField != null) {
+            sb.append(" AND ").append(TableLocation.quoteIdentifier(geometryField.getName()))
+                    .append(" && ST_MakeEnvelope(?, ?, ?, ?)");
+        }
+        sb.append(" ORDER BY _ROWID_ LIMIT ?");
+        return sb.toString();
+    }
+
+    /**
+     * Writes a column value as a JSON value.
+     * @param gen JSON generator.
+     * @param value Value of the column.
+     * @throws IOException Exception thrown if the value can not be written.
+     */
+    private static void writeValue(JsonGenerator gen, Object value) throws IOException {
+        if(value == null) {
+            gen.writeNull();
+        }
+        else if(value instanceof Boolean) {
+            gen.writeBoolean((Boolean) value);
+        }
+        else if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            gen.writeNumber(((Number) value).longValue());
+        }
+        else if(value instanceof Float || value instanceof Double) {
+            gen.writeNumber(((Number) value).doubleValue());
+        }
+        else if(value instanceof BigDecimal) {
+            gen.writeNumber((BigDecimal) value);
+        }
+        else {
+            gen.writeString(value.toString());
+        }
+    }
+
+    /**
+     * Page of a table whose query has been executed, holding its connection until it is written or closed.
+     */
+    public static final class Page implements AutoCloseable {
+
+        /** Connection to the database. */
+        private final Connection connection;
+        /** Statement of the page query. */
+        private final PreparedStatement statement;
+        /** Rows of the page. */
+        private final ResultSet resultSet;
+
+        private Page(Connection connection, PreparedStatement statement, ResultSet resultSet) {
+            this.connection = connection;
+            this.statement = statement;
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                resultSet.close();
+                statement.close();
+            } finally {
+                connection.close();
+            }
+        }
+    }
+}
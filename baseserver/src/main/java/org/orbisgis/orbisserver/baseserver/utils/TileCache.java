@@ -0,0 +1,163 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of the encoded vector tiles, bounded by the total size of the tiles. The key of a tile
+ * contains the data version of its session and the version of its table, so a tile of a changed table is never served
+ * and is evicted with time.
+ */
+public class TileCache {
+
+    /** Default maximum size in bytes of the cached tiles. */
+    public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+    /** Cached tiles by key, in access order. */
+    private final LinkedHashMap<String, byte[]> tileMap;
+    /** Maximum size in bytes of the cached tiles. */
+    private final long maxBytes;
+    /** Size in bytes of the cached tiles. */
+    private long bytes;
+    /** Number of tiles found in the cache. */
+    private long hitCount;
+    /** Number of tiles not found in the cache. */
+    private long missCount;
+
+    /**
+     * Main constructor.
+     * @param maxBytes Maximum size in bytes of the cached tiles.
+     */
+    public TileCache(long maxBytes) {
+        this.tileMap = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Builds the key of a tile.
+     * @param session Token of the session owning the table.
+     * @param dataVersion Data version of the session.
+     * @param table Name of the table.
+     * @param version Version of the table.
+     * @param z Zoom level of the tile.
+     * @param x Column of the tile.
+     * @param y Row of the tile.
+     * @return The key of the tile.
+     */
+    public static String key(String session, long dataVersion, String table, long version, int z, int x, int y) {
+        return session + "/" + dataVersion + "/" + table + "@" + version + "/" + z + "/" + x + "/" + y;
+    }
+
+    /**
+     * Returns a cached tile.
+     * @param key Key of the tile.
+     * @return The encoded tile, or null if it is not cached.
+     */
+    public synchronized byte[] get(String key) {
+        byte[] tile = tileMap.get(key);
+        if(tile == null) {
+            missCount++;
+        }
+        else {
+            hitCount++;
+        }
+        return tile;
+    }
+
+    /**
+     * Adds a tile to the cache, evicting the least recently used ones if the cache is full.
+     * @param key Key of the tile.
+     * @param tile Encoded tile.
+     */
+    public synchronized void put(String key, byte[] tile) {
+        if(tile.length > maxBytes) {
+            return;
+        }
+        byte[] old = tileMap.put(key, tile);
+        bytes += tile.length - (old == null ? 0 : old.length);
+        Iterator<Map.Entry<String, byte[]>> iterator = tileMap.entrySet().iterator();
+        while(bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, byte[]> eldest = iterator.next();
+            bytes -= eldest.getValue().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes all the tiles of a session.
+     * @param session Token of the session.
+     */
+    public synchronized void evictSession(String session) {
+        Iterator<Map.Entry<String, byte[]>> iterator = tileMap.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<String, byte[]> entry = iterator.next();
+            if(entry.getKey().startsWith(session + "/")) {
+                bytes -= entry.getValue().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the size in bytes of the cached tiles.
+     * @return The size of the cache.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of tiles found in the cache.
+     * @return The number of hits.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of tiles not found in the cache.
+     * @return The number of misses.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the uploaded files into the session workspaces through NIO FileChannel transfers.
+ *
+ * A file can be uploaded at once, or in chunks described by a content range. The chunks are written into a '.part'
+ * file which is renamed once the last byte is received, so an interrupted upload can be resumed from the received
+ * size. A chunk is streamed into the '.part' file at its position, its MD5 checksum being computed during the
+ * transfer. The upload throughput is measured over all the uploads.
+ */
+public class UploadWriter {
+
+    /** Extension of the files being uploaded. */
+    public static final String PART_EXTENSION = ".part";
+    /** Maximum size in bytes of a chunk. */
+    public static final long MAX_CHUNK_BYTES = 16 * 1024 * 1024;
+
+    /** Result of a chunk write. */
+    public enum Status {
+        /** The chunk has been written, other chunks are expected. */
+        INCOMPLETE,
+        /** The chunk has been written and the file is complete. */
+        COMPLETE,
+        /** The chunk does not follow the received bytes. */
+        BAD_RANGE,
+        /** The chunk does not match its checksum. */
+        BAD_CHECKSUM
+    }
+
+    /** Locks of the files being uploaded. */
+    private final ConcurrentMap<String, Object> lockMap = new ConcurrentHashMap<>();
+
+    /** Number of bytes written. */
+    private final AtomicLong byteCount = new AtomicLong();
+    /** Number of chunks or files written. */
+    private final AtomicLong chunkCount = new AtomicLong();
+    /** Time in nanoseconds spent writing. */
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    /**
+     * Returns the file of the workspace with the given name. The path part of the name is ignored so the file can not
+     * be written outside of the workspace.
+     * @param workspaceFolder Workspace folder of the session.
+     * @param name Name of the uploaded file.
+     * @return The file, or null if the name is not valid.
+     */
+    public static File getTargetFile(File workspaceFolder, String name) {
+        if(name == null) {
+            return null;
+        }
+        String fileName = new File(name.replace('\\', '/')).getName();
+        if(fileName.isEmpty() || fileName.equals(".") || fileName.equals("..")) {
+            return null;
+        }
+        return new File(workspaceFolder, fileName);
+    }
+
+    /**
+     * Writes a whole file from a stream.
+     * @param stream Content of the file.
+     * @param target File to write.
+     * @return The number of bytes written.
+     * @throws IOException Exception thrown if the file can not be written.
+     */
+    public long write(InputStream stream, File target) throws IOException {
+        long start = System.nanoTime();
+        long written = 0;
+        try(ReadableByteChannel in = Channels.newChannel(stream);
+            FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long count = out.transferFrom(in, written, Long.MAX_VALUE);
+            //transferFrom stops early on some channels, loop until the end of the stream
+            while(count > 0) {
+                written += count;
+                count = out.transferFrom(in, written, Long.MAX_VALUE);
+            }
+        }
+        record(written, System.nanoTime() - start);
+        return written;
+    }
+
+    /**
+     * Writes a chunk of a file. The chunk must start at or before the number of bytes already received, so a chunk
+     * sent again after a failure is accepted. The chunk is streamed into the '.part' file at its position. If it is
+     * shorter than announced or does not match its checksum, the '.part' file is truncated back to the chunk position.
+     * @param chunk Content of the chunk.
+     * @param length Size in bytes of the chunk.
+     * @param target File to write.
+     * @param first Position of the first byte of the chunk in the file.
+     * @param total Total size of the file.
+     * @param md5 Base64 MD5 checksum of the chunk, null to skip the check.
+     * @return The status of the upload.
+     * @throws IOException Exception thrown if the chunk can not be written.
+     */
+    public Status writeChunk(InputStream chunk, long length, File target, long first, long total, String md5)
+            throws IOException {
+        File part = new File(target.getParentFile(), target.getName() + PART_EXTENSION);
+        synchronized (lockFor(part)) {
+            if(length < 0 || length > MAX_CHUNK_BYTES || first < 0 || first > part.length() || first + length > total) {
+                return Status.BAD_RANGE;
+            }
+            long start = System.nanoTime();
+            DigestInputStream in = new DigestInputStream(chunk, md5Digest());
+            long written = 0;
+            try(ReadableByteChannel inChannel = Channels.newChannel(in);
+                FileChannel out = FileChannel.open(part.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE)) {
+                long count = out.transferFrom(inChannel, first, length);
+                //transferFrom stops early on some channels, loop until the end of the chunk
+                while(count > 0 && written + count < length) {
+                    written += count;
+                    count = out.transferFrom(inChannel, first + written, length - written);
+                }
+                written += count;
+                boolean badChecksum = md5 != null && !md5.isEmpty() &&
+                        !md5.equals(DatatypeConverter.printBase64Binary(in.getMessageDigest().digest()));
+                if(written != length || badChecksum) {
+                    //Drops the chunk so that the received size tells the client where to resume
+                    out.truncate(first);
+                    return written != length ? Status.BAD_RANGE : Status.BAD_CHECKSUM;
+                }
+            }
+            record(written, System.nanoTime() - start);
+            if(part.length() == total) {
+                Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                lockMap.remove(part.getAbsolutePath());
+                return Status.COMPLETE;
+            }
+            return Status.INCOMPLETE;
+        }
+    }
+
+    /**
+     * Returns the number of bytes already received for a file.
+     * @param target File being uploaded.
+     * @return The number of received bytes, or -1 if the file is complete.
+     */
+    public long getReceived(File target) {
+        File part = new File(target.getParentFile(), target.getName() + PART_EXTENSION);
+        if(part.exists()) {
+            return part.length();
+        }
+        return target.exists() ? -1 : 0;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     * @return The number of bytes written.
+     */
+    public long getByteCount() {
+        return byteCount.get();
+    }
+
+    /**
+     * Returns the number of chunks or files written.
+     * @return The number of writes.
+     */
+    public long getChunkCount() {
+        return chunkCount.get();
+    }
+
+    /**
+     * Returns the time in milliseconds spent writing.
+     * @return The write time.
+     */
+    public long getWriteTimeMillis() {
+        return writeNanos.get() / 1000000;
+    }
+
+    /**
+     * Returns the average write throughput in bytes per second.
+     * @return The write throughput.
+     */
+    public long getThroughput() {
+        long nanos = writeNanos.get();
+        return nanos == 0 ? 0 : byteCount.get() * 1000000000L / nanos;
+    }
+
+    /**
+     * Returns the lock of a file.
+     * @param file File to lock.
+     * @return The lock object.
+     */
+    private Object lockFor(File file) {
+        Object lock = new Object();
+        Object existing = lockMap.putIfAbsent(file.getAbsolutePath(), lock);
+        return existing == null ? lock : existing;
+    }
+
+    /**
+     * Records a write in the metrics.
+     * @param bytes Number of bytes written.
+     * @param nanos Time of the write in nanoseconds.
+     */
+    private void record(long bytes, long nanos) {
+        byteCount.addAndGet(bytes);
+        chunkCount.incrementAndGet();
+        writeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Returns a new MD5 message digest.
+     * @return The MD5 message digest.
+     */
+    private static MessageDigest md5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported.", e);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.orbisgis.orbisserver.baseserver.model.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Access to the users registered in the session_table of the administration database.
+ * Each request borrows a connection from the DataSource and closes the connection, the statement and the result set
+ * once done. The statements are prepared on each borrowed connection and are not shared between requests.
+ * The session options are kept in a bounded cache which is invalidated on each user modification. A failed read of the
+ * options is not cached so the next request retries it.
+ */
+public class UserStore {
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserStore.class);
+
+    private static final String COUNT_USER_PASSWORD_QUERY =
+            "SELECT COUNT(username) FROM session_table WHERE username = ? AND password = ?;";
+    private static final String COUNT_USER_QUERY =
+            "SELECT COUNT(username) FROM session_table WHERE username = ?;";
+    private static final String SESSION_OPTIONS_QUERY =
+            "SELECT expirationTime, poolSize FROM session_table WHERE username = ?;";
+    private static final String INSERT_USER_QUERY =
+            "INSERT INTO session_table (username, password) VALUES (?,?);";
+    private static final String UPDATE_PASSWORD_QUERY =
+            "UPDATE session_table SET password = ? WHERE username = ?;";
+
+    /** Default maximum number of session options cached. */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    /** Administration database. */
+    private DataSource ds;
+    /** Cache of the session options with the username as key, the eldest accessed entries are evicted first. */
+    private final Map<String, Map<String, Object>> sessionOptionCache;
+
+    /**
+     * Main constructor.
+     * @param ds Administration database containing the session_table.
+     * @param cacheSize Maximum number of session options cached.
+     */
+    public UserStore(DataSource ds, final int cacheSize){
+        this.ds = ds;
+        this.sessionOptionCache = new LinkedHashMap<String, Map<String, Object>>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Object>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Test if the user name and password are correct.
+     * @param username Name of the user.
+     * @param password Password of the user.
+     * @return True if the user is correct, false otherwise.
+     */
+    public boolean isValidUser(String username, String password){
+        try(Connection connection = ds.getConnection();
+            PreparedStatement ps = connection.prepareStatement(COUNT_USER_PASSWORD_QUERY)) {
+            ps.setString(1, username);
+            ps.setString(2, password);
+            try(ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) != 0;
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Unable to request the database in order to test username/password.\n"+e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Test if the user name is correct.
+     * @param username Name of the user.
+     * @return True if the user is correct, false otherwise.
+     */
+    public boolean exists(String username){
+        try(Connection connection = ds.getConnection();
+            PreparedStatement ps = connection.prepareStatement(COUNT_USER_QUERY)) {
+            ps.setString(1, username);
+            try(ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) != 0;
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Unable to request the database in order to test username.\n"+e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Adds a user with the given name and password.
+     * @param username Name of the user.
+     * @param password Password of the user.
+     * @return True if the user has been added, false otherwise.
+     */
+    public boolean addUser(String username, String password){
+        try(Connection connection = ds.getConnection();
+            PreparedStatement ps = connection.prepareStatement(INSERT_USER_QUERY)) {
+            ps.setString(1, username);
+            ps.setString(2, password);
+            ps.execute();
+            return true;
+        } catch (SQLException e) {
+            LOGGER.error("Unable to add a user.\n" + e.getMessage());
+        } finally {
+            invalidate(username);
+        }
+        return false;
+    }
+
+    /**
+     * Updates the password of a user.
+     * @param username Name of the user.
+     * @param newPassword New password.
+     * @return True if the password has been changed, false otherwise.
+     */
+    public boolean changePassword(String username, String newPassword){
+        try(Connection connection = ds.getConnection();
+            PreparedStatement ps = connection.prepareStatement(UPDATE_PASSWORD_QUERY)) {
+            ps.setString(1, newPassword);
+            ps.setString(2, username);
+            return ps.executeUpdate() != 0;
+        } catch (SQLException e) {
+            LOGGER.error("Unable to change password.\n" + e.getMessage());
+        } finally {
+            invalidate(username);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the options of the session of the given user. If the user has no option set or if the options can not
+     * be read, the returned map is empty and the session will use its default values.
+     * @param username Name of the user.
+     * @return A new map containing the session options.
+     */
+    public Map<String, Object> getSessionOptions(String username){
+        Map<String, Object> optionMap;
+        synchronized (sessionOptionCache) {
+            optionMap = sessionOptionCache.get(username);
+        }
+        if(optionMap == null) {
+            try {
+                optionMap = loadSessionOptions(username);
+            } catch (SQLException e) {
+                LOGGER.error("Unable to request the database in order to get the session options.\n"+e.getMessage());
+                return new HashMap<>();
+            }
+            synchronized (sessionOptionCache) {
+                sessionOptionCache.put(username, optionMap);
+            }
+        }
+        return new HashMap<>(optionMap);
+    }
+
+    /**
+     * Removes the cached options of the given user.
+     * @param username Name of the user.
+     */
+    public void invalidate(String username){
+        synchronized (sessionOptionCache) {
+            sessionOptionCache.remove(username);
+        }
+    }
+
+    /**
+     * Reads the options of the session of the given user from the database.
+     * @param username Name of the user.
+     * @return An unmodifiable map containing the session options.
+     * @throws SQLException Exception thrown if the options can not be read.
+     */
+    private Map<String, Object> loadSessionOptions(String username) throws SQLException {
+        Map<String, Object> optionMap = new HashMap<>();
+        try(Connection connection = ds.getConnection();
+            PreparedStatement ps = connection.prepareStatement(SESSION_OPTIONS_QUERY)) {
+            ps.setString(1, username);
+            try(ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    long expirationTime = rs.getLong(1);
+                    if (!rs.wasNull()) {
+                        optionMap.put(Session.PROPERTY_EXPIRATION_TIME_MILLIS, expirationTime);
+                    }
+                    int poolSize = rs.getInt(2);
+                    if (!rs.wasNull()) {
+                        optionMap.put(Session.JOB_POOL_SIZE, poolSize);
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableMap(optionMap);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateFilter;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Puntal;
+import com.vividsolutions.jts.simplify.DouglasPeuckerSimplifier;
+import org.h2gis.utilities.TableLocation;
+import org.orbisgis.orbisserver.baseserver.model.DatabaseField;
+import org.orbisgis.orbisserver.baseserver.model.DatabaseTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the vector tiles of a table in the web mercator tiling scheme (EPSG:3857). The geometries of a tile are read
+ * through the spatial index with the '&&' operator, converted into tile coordinates, simplified to the tile resolution
+ * and clipped to the tile with a small buffer, then encoded with the {@link MvtEncoder}.
+ */
+public final class VectorTileBuilder {
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(VectorTileBuilder.class);
+
+    /** Half of the width of the web mercator world. */
+    private static final double WORLD_HALF_WIDTH = 20037508.342789244;
+    /** SRID of the web mercator projection. */
+    private static final int WEB_MERCATOR = 3857;
+    /** Maximum zoom level. */
+    public static final int MAX_ZOOM = 24;
+    /** Buffer around the tile in tile coordinates, so that the lines and polygons do not show the tile borders. */
+    private static final int BUFFER = 64;
+    /** Tolerance of the simplification in tile coordinates, below one the simplification would not be visible. */
+    private static final double SIMPLIFY_TOLERANCE = 1.0;
+    /** Maximum number of features of a tile. */
+    private static final int MAX_FEATURES = 20000;
+
+    private VectorTileBuilder() {
+    }
+
+    /**
+     * Returns true if the tile coordinates are valid.
+     * @param z Zoom level.
+     * @param x Column of the tile.
+     * @param y Row of the tile.
+     * @return True if the tile exists, false otherwise.
+     */
+    public static boolean isValid(int z, int x, int y) {
+        return z >= 0 && z <= MAX_ZOOM && x >= 0 && y >= 0 && x < (1 << z) && y < (1 << z);
+    }
+
+    /**
+     * Builds a tile of the first geometry column of a table. The table SRID is read from the GEOMETRY_COLUMNS
+     * metadata, an unknown SRID is considered as web mercator.
+     * @param ds DataSource of the table.
+     * @param table Table to read.
+     * @param z Zoom level.
+     * @param x Column of the tile.
+     * @param y Row of the tile.
+     * @return The encoded tile, empty if the tile contains no feature.
+     * @throws SQLException Exception thrown if the table can not be read.
+     */
+    public static byte[] build(DataSource ds, DatabaseTable table, int z, int x, int y) throws SQLException {
+        DatabaseField geometryField = table.getGeometryField();
+        MvtEncoder encoder = new MvtEncoder(table.getName());
+        if(geometryField == null) {
+            return encoder.encode();
+        }
+        List<DatabaseField> propertyList = new ArrayList<>();
+        for(DatabaseField field : table.getFieldList()) {
+            if(!field.isGeometry()) {
+                propertyList.add(field);
+            }
+        }
+        final double size = 2 * WORLD_HALF_WIDTH / (1 << z);
+        final double minX = -WORLD_HALF_WIDTH + x * size;
+        final double maxY = WORLD_HALF_WIDTH - y * size;
+        double buffer = size * BUFFER / MvtEncoder.EXTENT;
+        Envelope clipEnvelope = new Envelope(-BUFFER, MvtEncoder.EXTENT + BUFFER, -BUFFER, MvtEncoder.EXTENT + BUFFER);
+        Geometry clipGeometry = new GeometryFactory().toGeometry(clipEnvelope);
+        CoordinateFilter toTile = new CoordinateFilter() {
+            @Override
+            public void filter(Coordinate coordinate) {
+                coordinate.x = (coordinate.x - minX) / size * MvtEncoder.EXTENT;
+                coordinate.y = (maxY - coordinate.y) / size * MvtEncoder.EXTENT;
+            }
+        };
+
+        try(Connection connection = ds.getConnection();
+            PreparedStatement ps = connection.prepareStatement(buildQuery(table, geometryField, propertyList))) {
+            ps.setDouble(1, minX - buffer);
+            ps.setDouble(2, maxY - size - buffer);
+            ps.setDouble(3, minX + size + buffer);
+            ps.setDouble(4, maxY + buffer);
+            ps.setInt(5, MAX_FEATURES);
+            try(ResultSet rs = ps.executeQuery()) {
+                while(rs.next()) {
+                    Object value = rs.getObject(propertyList.size() + 2);
+                    if(!(value instanceof Geometry)) {
+                        continue;
+                    }
+                    Geometry geometry = (Geometry) value;
+                    geometry.apply(toTile);
+                    geometry.geometryChanged();
+                    try {
+                        if(!(geometry instanceof Puntal)) {
+                            geometry = DouglasPeuckerSimplifier.simplify(geometry, SIMPLIFY_TOLERANCE);
+                        }
+                        if(!clipEnvelope.contains(geometry.getEnvelopeInternal())) {
+                            geometry = geometry.intersection(clipGeometry);
+                        }
+                    } catch (RuntimeException e) {
+                        //An invalid geometry can not be clipped, so it is not shown
+                        LOGGER.debug("Unable to clip a geometry of the table '"+table.getName()+"'.\n"+e.getMessage());
+                        continue;
+                    }
+                    if(geometry.isEmpty()) {
+                        continue;
+                    }
+                    Map<String, Object> properties = new LinkedHashMap<>();
+                    for(int i = 0; i < propertyList.size(); i++) {
+                        properties.put(propertyList.get(i).getName(), rs.getObject(i + 2));
+                    }
+                    encoder.addFeature(rs.getLong(1), geometry, properties);
+                }
+            }
+        }
+        return encoder.encode();
+    }
+
+    /**
+     * Builds the query of the features of a tile, the parameters being the tile bounds in web mercator and the
+     * maximum number of features.
+     */
+    private static String buildQuery(DatabaseTable table, DatabaseField geometryField,
+                                     List<DatabaseField> propertyList) {
+        String geometry = TableLocation.quoteIdentifier(geometryField.getName());
+        boolean transform = geometryField.getSrid() != 0 && geometryField.getSrid() != WEB_MERCATOR;
+        StringBuilder sb = new StringBuilder("SELECT _ROWID_");
+        for(DatabaseField field : propertyList) {
+            sb.append(", ").append(TableLocation.quoteIdentifier(field.getName()));
+        }
+        if(transform) {
+            sb.append(", ST_Transform(").append(geometry).append(", ").append(WEB_MERCATOR).append(")");
+        }
+        else {
+            sb.append(", ").append(geometry);
+        }
+        sb.append(" FROM ").append(table.getTableLocation()).append(" WHERE ").append(geometry).append(" && ");
+        if(transform) {
+            sb.append("ST_Transform(ST_MakeEnvelope(?, ?, ?, ?, ").append(WEB_MERCATOR).append("), ")
+                    .append(geometryField.getSrid()).append(")");
+        }
+        else {
+            sb.append("ST_MakeEnvelope(?, ?, ?, ?)");
+        }
+        sb.append(" LIMIT ?");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.SFSUtilities;
+import org.orbisgis.orbisserver.api.service.ObservableService;
+import org.orbisgis.orbisserver.api.service.OperationListener;
+import org.orbisgis.orbisserver.api.service.Service;
+import org.orbisgis.orbisserver.api.service.ServiceFactory;
+import org.orbisgis.orbisserver.baseserver.model.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of pre-initialized session resources : a workspace folder, a spatial H2GIS database and the started services.
+ * Building them is expensive (spatial initialisation of the database, start of the WPS server), so a few of them are
+ * built in advance to absorb the login bursts.
+ */
+public class WarmSessionPool {
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarmSessionPool.class);
+
+    /** Catalog of the operations shared by the sessions. */
+    private OperationCatalog operationCatalog;
+    /** Resources ready to be used by a session. */
+    private BlockingQueue<Resources> readyQueue;
+    /** Number of resources being built. */
+    private AtomicInteger pendingCount;
+    /** Service factories used to build the resources. */
+    private volatile List<ServiceFactory> serviceFactoryList;
+    /** Executor building the resources in background, null if the pool is not started. */
+    private volatile ExecutorService buildExecutor;
+    /** Number of resources kept ready. */
+    private volatile int size;
+    /** Maximum number of connections borrowed at the same time from a session database. */
+    private volatile int connectionPoolSize = ConnectionPool.DEFAULT_MAX_SIZE;
+
+    /**
+     * Main constructor.
+     * @param operationCatalog Catalog of the operations shared by the sessions.
+     */
+    public WarmSessionPool(OperationCatalog operationCatalog) {
+        this.operationCatalog = operationCatalog;
+        this.readyQueue = new LinkedBlockingQueue<>();
+        this.pendingCount = new AtomicInteger();
+        this.serviceFactoryList = new ArrayList<>();
+    }
+
+    /**
+     * Starts filling the pool.
+     * @param size Number of resources kept ready.
+     * @param connectionPoolSize Maximum number of connections borrowed at the same time from a session database.
+     * @param buildExecutor Executor building the resources in background.
+     */
+    public void start(int size, int connectionPoolSize, ExecutorService buildExecutor) {
+        this.size = Math.max(0, size);
+        this.connectionPoolSize = connectionPoolSize;
+        this.buildExecutor = buildExecutor;
+        refill();
+    }
+
+    /**
+     * Sets the service factories used to build the resources. The resources built with the previous factories are
+     * released and the pool is filled again.
+     * @param serviceFactoryList List of the service factories.
+     */
+    public void setServiceFactories(List<ServiceFactory> serviceFactoryList) {
+        this.serviceFactoryList = new ArrayList<>(serviceFactoryList);
+        clear();
+        refill();
+    }
+
+    /**
+     * Takes ready resources from the pool. The pool is filled again in background.
+     * @return Ready resources, or null if the pool is empty or if the resources have been built with other factories
+     * than the current ones.
+     */
+    public Resources poll() {
+        Resources resources = readyQueue.poll();
+        refill();
+        if(resources != null && !resources.serviceFactoryList.equals(serviceFactoryList)) {
+            resources.release();
+            return null;
+        }
+        return resources;
+    }
+
+    /**
+     * Builds new resources with the current service factories.
+     * @return The built resources.
+     */
+    public Resources build() {
+        List<ServiceFactory> factoryList = serviceFactoryList;
+        File workspaceFolder = new File("workspace", UUID.randomUUID().toString());
+        workspaceFolder.mkdirs();
+
+        //Creates the DataSource, backed by a connection pool
+        DataSource dataSource = null;
+        ConnectionPool connectionPool = null;
+        String dataBaseLocation = new File(workspaceFolder, "h2_db.mv.db").getAbsolutePath();
+        try {
+            connectionPool = new ConnectionPool(H2GISDBFactory.createDataSource(dataBaseLocation, true),
+                    connectionPoolSize);
+            dataSource = SFSUtilities.wrapSpatialDataSource(connectionPool);
+        } catch (SQLException e) {
+            LOGGER.error("Unable to create the database : \n"+e.getMessage());
+        }
+        LOGGER.info("Session database started.");
+
+        //The executor is bound to the user executor once the resources are used by a session
+        DeferredExecutorService executorService = new DeferredExecutorService();
+
+        Map<String, Object> propertyMap = new HashMap<>();
+        propertyMap.put(ServiceFactory.WORKSPACE_FOLDER_PROP, workspaceFolder);
+        propertyMap.put(ServiceFactory.DATA_SOURCE_PROP, dataSource);
+        propertyMap.put(ServiceFactory.EXECUTOR_SERVICE_PROP, executorService);
+        List<Service> serviceList = new ArrayList<>();
+        for(final ServiceFactory factory : factoryList) {
+            Service service = factory.createService(propertyMap);
+            serviceList.add(service);
+            operationCatalog.register(factory, service);
+            if(service instanceof ObservableService) {
+                ((ObservableService) service).addOperationListener(new OperationListener() {
+                    @Override
+                    public void onOperationsChanged(Service changedService) {
+                        operationCatalog.refresh(factory, changedService);
+                    }
+                });
+            }
+            LOGGER.info("Service "+service.getClass().getSimpleName()+" started.");
+        }
+        return new Resources(workspaceFolder, dataSource, connectionPool, executorService, serviceList, factoryList);
+    }
+
+    /**
+     * Returns the number of resources ready to be used.
+     * @return The number of ready resources.
+     */
+    public int getReadyCount() {
+        return readyQueue.size();
+    }
+
+    /**
+     * Builds resources in background until the pool is full.
+     */
+    private void refill() {
+        ExecutorService executor = buildExecutor;
+        if(executor == null) {
+            return;
+        }
+        while(readyQueue.size() + pendingCount.get() < size) {
+            pendingCount.incrementAndGet();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            readyQueue.add(build());
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Unable to build the session resources.\n"+e.getMessage());
+                        } finally {
+                            pendingCount.decrementAndGet();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pendingCount.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Releases all the ready resources.
+     */
+    private void clear() {
+        Resources resources = readyQueue.poll();
+        while(resources != null) {
+            resources.release();
+            resources = readyQueue.poll();
+        }
+    }
+
+    /**
+     * Stops filling the pool and releases the ready resources.
+     */
+    public void shutdown() {
+        buildExecutor = null;
+        clear();
+    }
+
+    /**
+     * Resources of a session : workspace folder, spatial database, executor and started services.
+     */
+    public static class Resources {
+
+        /** Workspace folder. */
+        private final File workspaceFolder;
+        /** Spatial database. */
+        private final DataSource dataSource;
+        /** Connection pool of the database. */
+        private final ConnectionPool connectionPool;
+        /** Executor of the services, bound to the user executor once used. */
+        private final DeferredExecutorService executorService;
+        /** Started services. */
+        private final List<Service> serviceList;
+        /** Factories of the services. */
+        private final List<ServiceFactory> serviceFactoryList;
+
+        private Resources(File workspaceFolder, DataSource dataSource, ConnectionPool connectionPool,
+                          DeferredExecutorService executorService, List<Service> serviceList,
+                          List<ServiceFactory> serviceFactoryList) {
+            this.workspaceFolder = workspaceFolder;
+            this.dataSource = dataSource;
+            this.connectionPool = connectionPool;
+            this.executorService = executorService;
+            this.serviceList = serviceList;
+            this.serviceFactoryList = serviceFactoryList;
+        }
+
+        /**
+         * Binds the resources to the executor of a user and returns them as session properties.
+         * @param userExecutor Executor of the user jobs.
+         * @return Map of the session properties.
+         */
+        public Map<String, Object> bind(ExecutorService userExecutor) {
+            executorService.bind(userExecutor);
+            Map<String, Object> propertyMap = new HashMap<>();
+            propertyMap.put(ServiceFactory.WORKSPACE_FOLDER_PROP, workspaceFolder);
+            propertyMap.put(ServiceFactory.DATA_SOURCE_PROP, dataSource);
+            propertyMap.put(ServiceFactory.EXECUTOR_SERVICE_PROP, executorService);
+            propertyMap.put(Session.SERVICE_LIST, serviceList);
+            if(connectionPool != null) {
+                propertyMap.put(Session.CONNECTION_POOL, connectionPool);
+            }
+            return propertyMap;
+        }
+
+        /**
+         * Releases resources which will not be used by a session. Once the database is shut down, the workspace
+         * folder and its database file are deleted.
+         */
+        public void release() {
+            for(Service service : serviceList) {
+                service.shutdown();
+            }
+            executorService.shutdownNow();
+            if(connectionPool != null) {
+                connectionPool.close();
+            }
+            try {
+                FileUtils.deleteDirectory(workspaceFolder);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to delete the workspace '"+workspaceFolder+"'.\n"+e.getMessage());
+            }
+        }
+    }
+}
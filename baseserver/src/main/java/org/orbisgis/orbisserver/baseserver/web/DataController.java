@@ -0,0 +1,295 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.web;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.felix.ipojo.annotations.Requires;
+import org.orbisgis.orbisserver.baseserver.BaseServerImpl;
+import org.orbisgis.orbisserver.baseserver.model.DatabaseTable;
+import org.orbisgis.orbisserver.baseserver.model.Session;
+import org.orbisgis.orbisserver.baseserver.utils.ConnectionPool;
+import org.orbisgis.orbisserver.baseserver.utils.TablePreview;
+import org.orbisgis.orbisserver.baseserver.utils.TileCache;
+import org.orbisgis.orbisserver.baseserver.utils.VectorTileBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wisdom.api.DefaultController;
+import org.wisdom.api.annotations.Controller;
+import org.wisdom.api.annotations.Parameter;
+import org.wisdom.api.annotations.Route;
+import org.wisdom.api.bodies.RenderableStream;
+import org.wisdom.api.content.Json;
+import org.wisdom.api.http.HttpMethod;
+import org.wisdom.api.http.Result;
+import org.wisdom.api.http.Status;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Controller giving a direct access to the data of the session database. The data is read on an I/O thread and written
+ * into a pipe while the response reads the other end, so it is never materialized in full.
+ */
+@Controller
+public class DataController extends DefaultController {
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataController.class);
+
+    /** Size of the buffer between the data writer and the response. */
+    private static final int PIPE_SIZE = 64 * 1024;
+    /** Default number of rows of a preview page. */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    /** Media type of the vector tiles. */
+    private static final String MVT_MIME_TYPE = "application/vnd.mapbox-vector-tile";
+    /** SQL state of a missing table, like a table removed since the database content was read. */
+    private static final String TABLE_NOT_FOUND_STATE = "42S02";
+    /** SQL state of a missing column, like the _ROWID_ of a view or of a linked table. */
+    private static final String COLUMN_NOT_FOUND_STATE = "42S22";
+    /** SQL state of a lock timeout. */
+    private static final String LOCK_TIMEOUT_STATE = "HYT00";
+
+    @Requires
+    private BaseServerImpl coreServerController;
+
+    @Requires
+    private Json json;
+
+    /**
+     * Returns a page of the rows of a table as a GeoJSON feature collection. The 'next' member of the collection gives
+     * the 'after' parameter of the next page.
+     * @param tableName Name of the table.
+     * @param columns Comma separated names of the columns, all the columns if empty.
+     * @param bbox Comma separated bounding box 'minX,minY,maxX,maxY' filtering the rows, no filter if empty.
+     * @param after Row id after which the page starts, 0 for the first page.
+     * @param limit Maximum number of rows of the page.
+     * @return The page of rows.
+     */
+    @Route(method = HttpMethod.GET, uri = "/data/preview")
+    public Result preview(@Parameter("table") String tableName, @Parameter("columns") String columns,
+                          @Parameter("bbox") String bbox, @Parameter("after") long after,
+                          @Parameter("limit") int limit) {
+        Session session = coreServerController.findByToken(context().cookieValue("token"));
+        if(session == null) {
+            return unauthorized();
+        }
+        DatabaseTable table = tableName == null ? null : session.getDatabaseContent().getTable(tableName);
+        if(table == null) {
+            return notFound("Unknown table.");
+        }
+        final TablePreview preview;
+        try {
+            List<String> columnList = new ArrayList<>();
+            if(columns != null && !columns.trim().isEmpty()) {
+                for(String column : columns.split(",")) {
+                    columnList.add(column.trim());
+                }
+            }
+            preview = new TablePreview(table, columnList);
+            if(bbox != null && !bbox.trim().isEmpty()) {
+                preview.setBbox(parseBbox(bbox));
+            }
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+        preview.setAfterRowId(Math.max(0, after));
+        preview.setPageSize(limit > 0 ? limit : DEFAULT_PAGE_SIZE);
+
+        //The query is executed before the response is started, so its failure gives an error status
+        final TablePreview.Page page;
+        try {
+            page = preview.open(session.getDataSource());
+        } catch (SQLException e) {
+            LOGGER.error("Unable to read the table '"+tableName+"'.\n"+e.getMessage());
+            if(TABLE_NOT_FOUND_STATE.equals(e.getSQLState())) {
+                return notFound("Unknown table.");
+            }
+            if(COLUMN_NOT_FOUND_STATE.equals(e.getSQLState())) {
+                return badRequest("The table '"+tableName+"' can not be previewed.");
+            }
+            if(LOCK_TIMEOUT_STATE.equals(e.getSQLState())) {
+                return status(Status.SERVICE_UNAVAILABLE);
+            }
+            return internalServerError();
+        }
+        final PipedOutputStream out = new PipedOutputStream();
+        PipedInputStream in;
+        try {
+            in = new PipedInputStream(out, PIPE_SIZE);
+            coreServerController.getIoExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        preview.write(page, out);
+                    } catch (SQLException | IOException e) {
+                        LOGGER.error("Unable to stream the table preview.\n"+e.getMessage());
+                    } finally {
+                        try {
+                            out.close();
+                        } catch (IOException e) {
+                            LOGGER.error("Unable to close the table preview stream.\n"+e.getMessage());
+                        }
+                    }
+                }
+            });
+        } catch (IOException | RejectedExecutionException e) {
+            LOGGER.error("Unable to stream the table preview.\n"+e.getMessage());
+            try {
+                page.close();
+            } catch (SQLException ex) {
+                LOGGER.error("Unable to close the table preview.\n"+ex.getMessage());
+            }
+            return internalServerError();
+        }
+        return ok(new RenderableStream(in)).as("application/json");
+    }
+
+    /**
+     * Returns a Mapbox Vector Tile of the first geometry column of a table, in the web mercator tiling scheme. The
+     * tiles are cached until the table or the data of the session changes.
+     * @param tableName Name of the table.
+     * @param z Zoom level.
+     * @param x Column of the tile.
+     * @param y Row of the tile.
+     * @return The encoded tile.
+     */
+    @Route(method = HttpMethod.GET, uri = "/tiles/{table}/{z}/{x}/{y}.mvt")
+    public Result tile(@Parameter("table") String tableName, @Parameter("z") int z, @Parameter("x") int x,
+                       @Parameter("y") int y) {
+        Session session = coreServerController.findByToken(context().cookieValue("token"));
+        if(session == null) {
+            return unauthorized();
+        }
+        if(!VectorTileBuilder.isValid(z, x, y)) {
+            return notFound("Unknown tile.");
+        }
+        DatabaseTable table = session.getDatabaseContent().getTable(tableName);
+        if(table == null || table.getGeometryField() == null) {
+            return notFound("Unknown spatial table.");
+        }
+        TileCache tileCache = coreServerController.getTileCache();
+        long dataVersion = session.getDataVersion();
+        String key = TileCache.key(session.getToken().toString(), dataVersion, table.getName(), table.getVersion(),
+                z, x, y);
+        byte[] tile = tileCache.get(key);
+        if(tile == null) {
+            try {
+                tile = VectorTileBuilder.build(session.getDataSource(), table, z, x, y);
+            } catch (SQLException e) {
+                LOGGER.error("Unable to build the tile "+z+"/"+x+"/"+y+" of the table '"+tableName+"'.\n"+
+                        e.getMessage());
+                return internalServerError();
+            }
+            tileCache.put(key, tile);
+        }
+        return ok(new RenderableStream(new ByteArrayInputStream(tile)))
+                .as(MVT_MIME_TYPE)
+                .with("ETag", "\"" + dataVersion + "-" + table.getVersion() + "\"");
+    }
+
+    /**
+     * Returns the usage of the connection pool of the session database.
+     * @return The connection pool metrics as JSON.
+     */
+    @Route(method = HttpMethod.GET, uri = "/metrics/connections")
+    public Result connectionMetrics() {
+        Session session = coreServerController.findByToken(context().cookieValue("token"));
+        if(session == null) {
+            return unauthorized();
+        }
+        ConnectionPool connectionPool = session.getConnectionPool();
+        if(connectionPool == null) {
+            return notFound("The session database is not pooled.");
+        }
+        ObjectNode metrics = json.newObject();
+        metrics.put("maxSize", connectionPool.getMaxSize());
+        metrics.put("active", connectionPool.getActiveCount());
+        metrics.put("idle", connectionPool.getIdleCount());
+        metrics.put("created", connectionPool.getCreatedCount());
+        metrics.put("borrows", connectionPool.getBorrowCount());
+        metrics.put("waitTimeMillis", connectionPool.getWaitTimeMillis());
+        metrics.put("timeouts", connectionPool.getTimeoutCount());
+        metrics.put("evicted", connectionPool.getEvictedCount());
+        metrics.put("leaks", connectionPool.getLeakCount());
+        metrics.put("discarded", connectionPool.getDiscardedCount());
+        return ok(metrics).json();
+    }
+
+    /**
+     * Returns the usage of the tile cache.
+     * @return The tile cache metrics.
+     */
+    @Route(method = HttpMethod.GET, uri = "/metrics/tiles")
+    public Result tileMetrics() {
+        TileCache tileCache = coreServerController.getTileCache();
+        ObjectNode metrics = json.newObject();
+        metrics.put("bytes", tileCache.getBytes());
+        metrics.put("hits", tileCache.getHitCount());
+        metrics.put("misses", tileCache.getMissCount());
+        return ok(metrics).json();
+    }
+
+    /**
+     * Parses a bounding box.
+     * @param bbox Comma separated bounding box 'minX,minY,maxX,maxY'.
+     * @return The bounding box as {minX, minY, maxX, maxY}.
+     * @throws IllegalArgumentException Exception thrown if the bounding box is not valid.
+     */
+    private static double[] parseBbox(String bbox) {
+        String[] values = bbox.split(",");
+        if(values.length != 4) {
+            throw new IllegalArgumentException("Invalid bounding box '"+bbox+"'.");
+        }
+        double[] coordinates = new double[4];
+        for(int i = 0; i < 4; i++) {
+            coordinates[i] = Double.parseDouble(values[i].trim());
+        }
+        if(coordinates[0] > coordinates[2] || coordinates[1] > coordinates[3]) {
+            throw new IllegalArgumentException("Invalid bounding box '"+Arrays.toString(coordinates)+"'.");
+        }
+        return coordinates;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.web;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.felix.ipojo.annotations.Invalidate;
+import org.apache.felix.ipojo.annotations.Requires;
+import org.apache.felix.ipojo.annotations.Validate;
+import org.orbisgis.orbisserver.api.model.StatusInfo;
+import org.orbisgis.orbisserver.baseserver.BaseServerImpl;
+import org.orbisgis.orbisserver.baseserver.model.Session;
+import org.orbisgis.orbisserver.baseserver.utils.JobStatusTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wisdom.api.DefaultController;
+import org.wisdom.api.annotations.Closed;
+import org.wisdom.api.annotations.Controller;
+import org.wisdom.api.annotations.Opened;
+import org.wisdom.api.annotations.Parameter;
+import org.wisdom.api.annotations.Route;
+import org.wisdom.api.content.Json;
+import org.wisdom.api.http.HttpMethod;
+import org.wisdom.api.http.Result;
+import org.wisdom.api.http.websockets.Publisher;
+
+/**
+ * Controller pushing the job status changes to the web clients. Each session has its own web socket, identified by
+ * an opaque channel id : /ws/jobs/{channel}. The session token, which authenticates the client, only travels in its
+ * cookie : the channel id is given by the authenticated route /jobs/channel.
+ */
+@Controller
+public class JobStatusController extends DefaultController implements JobStatusTracker.Listener {
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobStatusController.class);
+
+    /** Base uri of the job status web sockets. */
+    public static final String SOCKET_URI = "/ws/jobs/";
+
+    @Requires
+    private BaseServerImpl coreServerController;
+
+    @Requires
+    private Publisher publisher;
+
+    @Requires
+    private Json json;
+
+    @Validate
+    public void start() {
+        coreServerController.getJobStatusTracker().addListener(this);
+    }
+
+    @Invalidate
+    public void stop() {
+        coreServerController.getJobStatusTracker().removeListener(this);
+    }
+
+    /**
+     * Returns the identifier of the job status channel of the session of the client.
+     * @return Json object with the channel identifier.
+     */
+    @Route(method = HttpMethod.GET, uri = "/jobs/channel")
+    public Result channel() {
+        Session session = coreServerController.findByToken(context().cookieValue("token"));
+        if(session == null) {
+            return unauthorized();
+        }
+        ObjectNode channel = json.newObject();
+        channel.put("channel", session.getChannelId());
+        return ok(channel).json();
+    }
+
+    @Opened(SOCKET_URI + "{channel}")
+    public void open(@Parameter("channel") String channel, @Parameter("client") String client) {
+        //The publisher can not close a socket, so the client is asked to close it
+        if(coreServerController.findByChannelId(channel) == null) {
+            LOGGER.warn("Web socket opened by the client '"+client+"' on an unknown channel.");
+            ObjectNode close = json.newObject();
+            close.put("close", true);
+            publisher.send(SOCKET_URI + channel, client, json.stringify(close));
+        }
+    }
+
+    @Closed(SOCKET_URI + "{channel}")
+    public void close(@Parameter("channel") String channel, @Parameter("client") String client) {
+        LOGGER.debug("Web socket closed by the client '"+client+"'.");
+    }
+
+    /**
+     * Returns the metrics of the job status tracker.
+     * @return Json object with the number of jobs waiting for a refresh.
+     */
+    @Route(method = HttpMethod.GET, uri = "/jobs/tracker")
+    public Result tracker() {
+        ObjectNode metrics = json.newObject();
+        metrics.put("queueDepth", coreServerController.getJobStatusTracker().getQueueDepth());
+        return ok(metrics).json();
+    }
+
+    @Override
+    public void onStatusChanged(Session session, StatusInfo statusInfo) {
+        ObjectNode delta = json.newObject();
+        delta.put("jobId", statusInfo.getJobId());
+        delta.put("processTitle", statusInfo.getProcessTitle());
+        delta.put("status", statusInfo.getStatus());
+        if(statusInfo.getPercentCompleted() != null) {
+            delta.put("percentCompleted", statusInfo.getPercentCompleted());
+        }
+        delta.put("hasResult", statusInfo.hasResult());
+        publisher.publish(SOCKET_URI + session.getChannelId(), json.stringify(delta));
+    }
+
+    @Override
+    public void onStartFailed(Session session, String processId, String message) {
+        ObjectNode delta = json.newObject();
+        delta.put("processId", processId);
+        delta.put("status", "FAILED");
+        delta.put("error", message);
+        publisher.publish(SOCKET_URI + session.getChannelId(), json.stringify(delta));
+    }
+}
@@ -38,33 +38,53 @@
  */
 package org.orbisgis.orbisserver.baseserver.web;
 
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.felix.ipojo.annotations.Requires;
 import org.orbisgis.orbisserver.api.model.Operation;
 import org.orbisgis.orbisserver.api.model.StatusInfo;
+import org.orbisgis.orbisserver.api.service.ServiceCallback;
 import org.orbisgis.orbisserver.baseserver.BaseServerImpl;
 import org.orbisgis.orbisserver.baseserver.model.DatabaseContent;
+import org.orbisgis.orbisserver.baseserver.model.DatabaseField;
 import org.orbisgis.orbisserver.baseserver.model.DatabaseTable;
 import org.orbisgis.orbisserver.baseserver.model.Session;
+import org.orbisgis.orbisserver.baseserver.utils.ArchiveCache;
+import org.orbisgis.orbisserver.baseserver.utils.OperationCatalog;
+import org.orbisgis.orbisserver.baseserver.utils.UploadWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.wisdom.api.DefaultController;
 import org.wisdom.api.annotations.Controller;
 import org.wisdom.api.annotations.Parameter;
 import org.wisdom.api.annotations.Route;
 import org.wisdom.api.annotations.View;
 import org.wisdom.api.annotations.scheduler.Async;
+import org.wisdom.api.bodies.RenderableStream;
+import org.wisdom.api.content.Json;
 import org.wisdom.api.http.FileItem;
 import org.wisdom.api.http.HttpMethod;
 import org.wisdom.api.http.Result;
 import org.wisdom.api.templates.Template;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLDecoder;
-import java.util.ArrayList;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Main orbisserver controller containing all the route for the web wps client.
@@ -74,9 +94,30 @@ import java.util.Map;
 @Controller
 public class MainController extends DefaultController {
 
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MainController.class);
+
+    /** Maximum number of operations rendered in the process, import and export lists. */
+    private static final int PAGE_SIZE = 50;
+    /** Pattern of a single range of the Range header. */
+    private static final Pattern BYTE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    /** Pattern of the HTTP dates. */
+    private static final String HTTP_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss zzz";
+    /** Status code of the accepted requests, processed after the response. */
+    private static final int ACCEPTED = 202;
+    /** Status code of the partial content responses. */
+    private static final int PARTIAL_CONTENT = 206;
+    /** Status code of the not modified responses. */
+    private static final int NOT_MODIFIED = 304;
+    /** Status code of the unsatisfiable range responses. */
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+
     @Requires
     private BaseServerImpl coreServerController;
 
+    @Requires
+    private Json json;
+
     @View("Home")
     private Template home;
 
@@ -122,6 +163,23 @@ public class MainController extends DefaultController {
     @View("DatabaseView")
     private Template databaseView;
 
+    /**
+     * Returns the offset of the first element of the given page.
+     * @param page Index of the page, starting from 0. If null, the first page is used.
+     * @return The offset of the first element of the page.
+     */
+    private static int getPageOffset(Integer page) {
+        return page == null || page < 0 ? 0 : page * PAGE_SIZE;
+    }
+
+    /**
+     * Returns the open session corresponding to the token cookie of the request.
+     * @return The session of the request, null if there is no open session for the request token.
+     */
+    private Session getSession() {
+        return coreServerController.findByToken(context().cookieValue("token"));
+    }
+
     @Route(method = HttpMethod.GET, uri = "/")
     public Result home() {
         return ok(render(home));
@@ -155,125 +213,91 @@ public class MainController extends DefaultController {
     }
 
     @Route(method = HttpMethod.GET, uri = "/process/processList")
-    public Result processList(@Parameter("filters") String filters) throws IOException {
-        String token = context().cookieValue("token");
-        for(Session session : coreServerController.getOpenSessionList()) {
-            if (session.getToken().toString().equals(token)) {
-                List<Operation> processList = session.getOperationList();
-                List<Operation> importExportList = new ArrayList<>();
-                List<Operation> filteredList = new ArrayList<>();
-
-                for(Operation op : processList){
-                    for(String keyword :  op.getKeyWord()){
-                        if(keyword.equals("Export") || keyword.equals("Import")){
-                            importExportList.add(op);
-                        }
-                    }
-                }
-                processList.removeAll(importExportList);
-                for(Operation op : processList){
-                    if(op.getTitle().toLowerCase().contains(filters.toLowerCase())) {
-                        filteredList.add(op);
-                    }
-                }
-                return ok(render(processListTemplate, "processList", filteredList));
-            }
+    public Result processList(@Parameter("filters") String filters, @Parameter("page") Integer page) throws IOException {
+        Session session = getSession();
+        if (session != null) {
+            List<Operation> filteredList = session.searchOperations(OperationCatalog.Category.PROCESS, filters,
+                    getPageOffset(page), PAGE_SIZE);
+            return ok(render(processListTemplate, "processList", filteredList));
         }
         return badRequest(render(processListTemplate));
     }
 
     @Route(method = HttpMethod.GET, uri = "/describeProcess")
     public Result describeProcess(@Parameter("id") String id) throws IOException {
-        String token = context().cookieValue("token");
-        Session session = null;
-        for(Session s : coreServerController.getOpenSessionList()) {
-            if (s.getToken().toString().equals(token)) {
-                session = s;
-                Operation op = session.getOperation(id);
-                return ok(render(describeProcess, "operation", op, "session", session));
-            }
+        Session session = getSession();
+        if (session != null) {
+            Operation op = session.getOperation(id);
+            return ok(render(describeProcess, "operation", op, "session", session));
         }
         return badRequest(render(homeContent));
     }
 
     @Route(method = HttpMethod.POST, uri = "/execute")
     public Result execute() throws IOException {
-        for(Session session : coreServerController.getOpenSessionList()) {
+        Session session = getSession();
+        if (session != null) {
             String urlContent = URLDecoder.decode(context().reader().readLine(), "UTF-8");
             String[] split = urlContent.split("&");
-            String token = context().cookieValue("token");
-            if (session.getToken().toString().equals(token)) {
-                Map<String, String> inputData = new HashMap<>();
-                String id = "";
-                for (String str : split) {
-                    String[] val = str.split("=");
-                    if (val[0].equals("processId")) {
-                        id = val[1];
+            Map<String, String> inputData = new HashMap<>();
+            String id = "";
+            for (String str : split) {
+                String[] val = str.split("=");
+                if (val[0].equals("processId")) {
+                    id = val[1];
+                } else {
+                    if (val.length == 1) {
+                        inputData.put(val[0], "");
                     } else {
-                        if (val.length == 1) {
-                            inputData.put(val[0], "");
-                        } else {
-                            inputData.put(val[0], val[1]);
-                        }
+                        inputData.put(val[0], val[1]);
                     }
                 }
-                session.executeOperation(id, inputData);
-                return ok();
             }
+            final Session jobSession = session;
+            final String processId = id;
+            //The job is started in background, a start failure is pushed to the client by the job status socket
+            session.executeOperation(id, inputData).addCallback(new ServiceCallback<StatusInfo>() {
+                @Override
+                public void onSuccess(StatusInfo statusInfo) {
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    coreServerController.getJobStatusTracker().startFailed(jobSession, processId, cause);
+                }
+            });
+            return status(ACCEPTED);
         }
         return badRequest();
     }
 
     @Route(method = HttpMethod.POST, uri = "/uploading")
     public Result upload() throws IOException {
-        String cookie = context().cookieValue("token");
-        for(Session session : coreServerController.getOpenSessionList()) {
-            if(session.getToken().toString().equalsIgnoreCase(cookie)){
-
-                if(!context().files().isEmpty()){
-                    for (FileItem fileItem : context().files()) {
-                        if(fileItem!=null){
-                            byte[] buffer = new byte[8 * 1024];
-                            FileOutputStream out = new FileOutputStream(new File(session.getWorkspaceFolder(),
-                                    fileItem.name()));
-                            BufferedInputStream in = new BufferedInputStream(fileItem.stream());
-                            while (in.read(buffer) != -1) {
-                                out.write(buffer);
-                            }
-                            in.close();
-                            out.close();
+        Session session = getSession();
+        if(session != null){
+            if(!context().files().isEmpty()){
+                for (FileItem fileItem : context().files()) {
+                    if(fileItem!=null){
+                        File target = UploadWriter.getTargetFile(session.getWorkspaceFolder(), fileItem.name());
+                        if(target == null){
+                            return badRequest();
                         }
+                        coreServerController.getUploadWriter().write(fileItem.stream(), target);
                     }
                 }
-                return  ok();
+                session.invalidateTableData();
             }
+            return  ok();
         }
         return badRequest(render(homeContent));
     }
 
     @Route(method = HttpMethod.GET, uri = "/jobs")
     public Result jobs() throws IOException {
-        String token = context().cookieValue("token");
-        for(Session session : coreServerController.getOpenSessionList()) {
-            if (session.getToken().toString().equals(token)) {
-                List<StatusInfo> statusInfoToRefreshList = session.getAllStatusInfoToRefresh();
-                List<StatusInfo> statusInfoList = session.getAllStatusInfo();
-                long minRefresh = Long.MAX_VALUE;
-                for (StatusInfo statusInfo : statusInfoToRefreshList) {
-                    minRefresh = Math.min(session.refreshStatus(statusInfo), minRefresh);
-                }
-
-                for (StatusInfo statusInfo : statusInfoList) {
-                    if (statusInfo.getNextRefreshMillis() >= 0) {
-                        minRefresh = Math.min(statusInfo.getNextRefreshMillis(), minRefresh);
-                    }
-                }
-
-                if (minRefresh == Long.MAX_VALUE) {
-                    minRefresh = -1;
-                }
-                return ok(render(jobs, "jobList", session.getAllStatusInfo(), "nextRefresh", minRefresh));
-            }
+        Session session = getSession();
+        if (session != null) {
+            //The status are refreshed by the JobStatusTracker and pushed to the client, so only render the snapshot
+            return ok(render(jobs, "jobList", session.getAllStatusInfo(), "nextRefresh", -1));
         }
         return ok(render(homeContent));
     }
@@ -299,78 +323,41 @@ public class MainController extends DefaultController {
 
     @Route(method = HttpMethod.GET, uri = "/data")
     public Result data() {
-        String token = context().cookieValue("token");
-        for (Session session : coreServerController.getOpenSessionList()) {
-            if (session.getToken().toString().equals(token)) {
-                return ok(render(data));
-            }
+        Session session = getSession();
+        if (session != null) {
+            return ok(render(data));
         }
         return badRequest(render(data));
     }
 
     @Route(method = HttpMethod.GET, uri = "/dataleftnav")
     public Result dataLeftNav() {
-        String token = context().cookieValue("token");
-        for (Session session : coreServerController.getOpenSessionList()) {
-            if (session.getToken().toString().equals(token)) {
-                return ok(render(dataLeftNav));
-            }
+        Session session = getSession();
+        if (session != null) {
+            return ok(render(dataLeftNav));
         }
         return badRequest(render(data));
     }
 
     @Route(method = HttpMethod.GET, uri = "/data/import")
-    public Result Import(@Parameter("filters") String filters) {
-        String token = context().cookieValue("token");
-        for(Session session : coreServerController.getOpenSessionList()) {
-            if (session.getToken().toString().equals(token)) {
-                List<Operation> opList = session.getOperationList();
-                List<Operation> importList = new ArrayList<>();
-                List<Operation> filteredList = new ArrayList<>();
-
-                for(Operation op : opList){
-                    for(String keyword :  op.getKeyWord()){
-                        if(keyword.equals("Import")){
-                            importList.add(op);
-                        }
-                    }
-                }
-
-                for(Operation op : importList){
-                    if(op.getTitle().toLowerCase().contains(filters.toLowerCase())) {
-                        filteredList.add(op);
-                    }
-                }
-                return ok(render(tImport, "processList", filteredList));
-            }
+    public Result Import(@Parameter("filters") String filters, @Parameter("page") Integer page) {
+        Session session = getSession();
+        if (session != null) {
+            List<Operation> filteredList = session.searchOperations(OperationCatalog.Category.IMPORT, filters,
+                    getPageOffset(page), PAGE_SIZE);
+            return ok(render(tImport, "processList", filteredList));
         }
 
         return badRequest(render(homeContent));
     }
 
     @Route(method = HttpMethod.GET, uri = "/data/export")
-    public Result export(@Parameter("filters") String filters) {
-        String token = context().cookieValue("token");
-        for(Session session : coreServerController.getOpenSessionList()) {
-            if (session.getToken().toString().equals(token)) {
-                List<Operation> opList = session.getOperationList();
-                List<Operation> exportList = new ArrayList<>();
-                List<Operation> filteredList = new ArrayList<>();
-
-                for(Operation op : opList){
-                    for(String keyword :  op.getKeyWord()){
-                        if(keyword.equals("Export")){
-                            exportList.add(op);
-                        }
-                    }
-                }
-                for(Operation op : exportList){
-                    if(op.getTitle().toLowerCase().contains(filters.toLowerCase())) {
-                        filteredList.add(op);
-                    }
-                }
-                return ok(render(export, "processList", filteredList));
-            }
+    public Result export(@Parameter("filters") String filters, @Parameter("page") Integer page) {
+        Session session = getSession();
+        if (session != null) {
+            List<Operation> filteredList = session.searchOperations(OperationCatalog.Category.EXPORT, filters,
+                    getPageOffset(page), PAGE_SIZE);
+            return ok(render(export, "processList", filteredList));
         }
 
         return badRequest(render(homeContent));
@@ -378,11 +365,9 @@ public class MainController extends DefaultController {
 
     @Route(method = HttpMethod.GET, uri = "/process")
     public Result process() {
-        String token = context().cookieValue("token");
-        for(Session session : coreServerController.getOpenSessionList()) {
-            if (session.getToken().toString().equals(token)) {
-                return ok(render(process));
-            }
+        Session session = getSession();
+        if (session != null) {
+            return ok(render(process));
         }
         return badRequest(render(process));
     }
@@ -390,22 +375,18 @@ public class MainController extends DefaultController {
 
     @Route(method = HttpMethod.GET, uri = "/process/leftNavContent")
     public Result leftNavContent() {
-        String token = context().cookieValue("token");
-        for(Session session : coreServerController.getOpenSessionList()) {
-            if (session.getToken().toString().equals(token)) {
-                return ok(render(leftNavContent));
-            }
+        Session session = getSession();
+        if (session != null) {
+            return ok(render(leftNavContent));
         }
         return badRequest(render(process));
     }
 
     @Route(method = HttpMethod.GET, uri = "/user")
     public Result user() {
-        String token = context().cookieValue("token");
-        for(Session session : coreServerController.getOpenSessionList()) {
-            if (session.getToken().toString().equals(token)) {
-                return ok(render(user, "session", session));
-            }
+        Session session = getSession();
+        if (session != null) {
+            return ok(render(user, "session", session));
         }
         return ok(render(user, "session", null));
     }
@@ -431,8 +412,12 @@ public class MainController extends DefaultController {
                     break;
             }
         }
-        if(newPassword.equals(newPasswordRepeat) && token != null) {
-            coreServerController.changePassword(token, newPassword);
+        Session session = coreServerController.findByToken(token);
+        if(session == null) {
+            return badRequest("Unexisting session.");
+        }
+        if(newPassword.equals(newPasswordRepeat)) {
+            coreServerController.changePassword(session.getUsername(), newPassword);
             return ok("Password changed.");
         }
         else{
@@ -442,13 +427,7 @@ public class MainController extends DefaultController {
 
     @Route(method = HttpMethod.GET, uri = "/user/settings")
     public Result settings() {
-        String token = context().cookieValue("token");
-        Session session = null;
-        for(Session s : coreServerController.getOpenSessionList()){
-            if(s.getToken().toString().equals(token)){
-                session = s;
-            }
-        }
+        Session session = getSession();
         if(session != null) {
             return ok(render(userSettings, "session", session));
         }
@@ -459,13 +438,7 @@ public class MainController extends DefaultController {
 
     @Route(method = HttpMethod.GET, uri = "/data/database")
     public Result database() {
-        String token = context().cookieValue("token");
-        Session session = null;
-        for(Session s : coreServerController.getOpenSessionList()){
-            if(s.getToken().toString().equals(token)){
-                session = s;
-            }
-        }
+        Session session = getSession();
         if(session != null) {
             DatabaseContent dbContent = session.getDatabaseContent();
             int maxSize = 0;
@@ -481,24 +454,164 @@ public class MainController extends DefaultController {
         }
     }
 
+    @Route(method = HttpMethod.GET, uri = "/data/database/changes")
+    public Result databaseChanges(@Parameter("since") long since) {
+        Session session = getSession();
+        if(session == null) {
+            return unauthorized();
+        }
+        DatabaseContent dbContent = session.getDatabaseContent();
+        ObjectNode changes = json.newObject();
+        changes.put("version", dbContent.getVersion());
+        if(since == dbContent.getVersion()) {
+            changes.put("full", false);
+            changes.putArray("tables");
+            changes.putArray("removed");
+            return ok(changes).json();
+        }
+        //If the client version is not known anymore, all the tables are sent
+        DatabaseContent previous = session.getDatabaseContent(since);
+        changes.put("full", previous == null);
+        ArrayNode tables = changes.putArray("tables");
+        for(DatabaseTable dbTable : previous == null ? dbContent.getTableList() : dbContent.getChangedTables(previous)) {
+            ObjectNode table = tables.addObject();
+            table.put("name", dbTable.getName());
+            table.put("rowCountEstimate", dbTable.getRowCountEstimate());
+            ArrayNode fields = table.putArray("fields");
+            for(DatabaseField dbField : dbTable.getFieldList()) {
+                ObjectNode field = fields.addObject().put("name", dbField.getName()).put("type", dbField.getType());
+                if(dbField.isGeometry()) {
+                    field.put("indexState", dbField.getIndexState().name());
+                }
+            }
+        }
+        ArrayNode removed = changes.putArray("removed");
+        if(previous != null) {
+            for(String name : dbContent.getRemovedTableNames(previous)) {
+                removed.add(name);
+            }
+        }
+        return ok(changes).json();
+    }
+
     @Route(method = HttpMethod.GET, uri = "/createArchive")
     public Result createArchive(@Parameter("jobId") String jobId) {
-        String token = context().cookieValue("token");
-        Session session = null;
-        for(Session s : coreServerController.getOpenSessionList()){
-            if(s.getToken().toString().equals(token)){
-                session = s;
+        Session session = getSession();
+        if(session == null) {
+            return badRequest("Unexisting session.");
+        }
+        File archive = session.getResultArchive(jobId);
+        if(archive == null) {
+            return badRequest("Unable to create the result archive.");
+        }
+        String eTag = ArchiveCache.getETag(archive);
+        //HTTP dates have a precision of one second
+        long lastModified = archive.lastModified() / 1000 * 1000;
+        String lastModifiedHeader = newHttpDateFormat().format(new Date(lastModified));
+        if(isNotModified(eTag, lastModified)) {
+            return status(NOT_MODIFIED).with("ETag", eTag).with("Last-Modified", lastModifiedHeader);
+        }
+        String range = context().header("Range");
+        String ifRange = context().header("If-Range");
+        //A resumed download with an outdated archive gets the whole new archive
+        if(range != null && (ifRange == null || ifRange.equals(eTag))) {
+            Matcher matcher = BYTE_RANGE.matcher(range.trim());
+            if(matcher.matches()) {
+                long length = archive.length();
+                long first;
+                long last;
+                if(matcher.group(1).isEmpty()) {
+                    //Suffix range : the last bytes of the archive, the whole archive if it is shorter
+                    first = matcher.group(2).isEmpty() ? length :
+                            Math.max(0, length - parseRangeBound(matcher.group(2)));
+                    last = length - 1;
+                }
+                else {
+                    first = parseRangeBound(matcher.group(1));
+                    last = matcher.group(2).isEmpty() ? length - 1 :
+                            Math.min(parseRangeBound(matcher.group(2)), length - 1);
+                }
+                if(first < 0 || first >= length || first > last) {
+                    return status(RANGE_NOT_SATISFIABLE).with("Content-Range", "bytes */" + length);
+                }
+                try {
+                    FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+                    try {
+                        channel.position(first);
+                    } catch (IOException e) {
+                        channel.close();
+                        throw e;
+                    }
+                    InputStream in = Channels.newInputStream(channel);
+                    return status(PARTIAL_CONTENT)
+                            .render(new RenderableStream(new BoundedInputStream(in, last - first + 1)))
+                            .as("application/zip")
+                            .with("Content-Range", "bytes " + first + "-" + last + "/" + length)
+                            .with("Accept-Ranges", "bytes")
+                            .with("ETag", eTag)
+                            .with("Last-Modified", lastModifiedHeader);
+                } catch (IOException e) {
+                    LOGGER.error("Unable to read the result archive.\n"+e.getMessage());
+                    return internalServerError();
+                }
             }
         }
-        if(session != null) {
-            File file = session.getResultAchive(jobId);
-            if(file != null) {
-                return ok(file, true);
+        return ok(archive, true)
+                .with("Content-Disposition", "attachment; filename=\""+jobId+".zip\"")
+                .with("Accept-Ranges", "bytes")
+                .with("ETag", eTag)
+                .with("Last-Modified", lastModifiedHeader);
+    }
+
+    /**
+     * Parses a bound of a byte range. The bound only contains digits, so a number too large for a long can only be
+     * beyond the end of the archive : it is read as {@link Long#MAX_VALUE} and then clamped like any other bound.
+     * @param bound Digits of the bound.
+     * @return The value of the bound.
+     */
+    private static long parseRangeBound(String bound) {
+        try {
+            return Long.parseLong(bound);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Checks the conditional headers of the request against the given entity tag and modification date.
+     * @param eTag Entity tag of the resource.
+     * @param lastModified Last modification date of the resource in milliseconds.
+     * @return True if the client copy of the resource is up to date, false otherwise.
+     */
+    private boolean isNotModified(String eTag, long lastModified) {
+        String ifNoneMatch = context().header("If-None-Match");
+        if(ifNoneMatch != null) {
+            for(String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if(tag.equals("*") || tag.equals(eTag) || tag.equals("W/" + eTag)) {
+                    return true;
+                }
             }
-            return badRequest("Unable to create the result archive.");
+            return false;
         }
-        else{
-            return badRequest("Unexisting session.");
+        String ifModifiedSince = context().header("If-Modified-Since");
+        if(ifModifiedSince != null) {
+            try {
+                return newHttpDateFormat().parse(ifModifiedSince).getTime() >= lastModified;
+            } catch (ParseException e) {
+                return false;
+            }
         }
+        return false;
+    }
+
+    /**
+     * Returns a new format of the HTTP dates. The format is not shared as SimpleDateFormat is not thread safe.
+     * @return A format of the HTTP dates.
+     */
+    private static SimpleDateFormat newHttpDateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_PATTERN, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
     }
 }
@@ -0,0 +1,197 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.web;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.felix.ipojo.annotations.Requires;
+import org.orbisgis.orbisserver.baseserver.BaseServerImpl;
+import org.orbisgis.orbisserver.baseserver.model.Session;
+import org.orbisgis.orbisserver.baseserver.utils.UploadWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wisdom.api.DefaultController;
+import org.wisdom.api.annotations.Controller;
+import org.wisdom.api.annotations.Parameter;
+import org.wisdom.api.annotations.Route;
+import org.wisdom.api.content.Json;
+import org.wisdom.api.http.HttpMethod;
+import org.wisdom.api.http.Result;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Controller of the resumable uploads. A file is sent with PUT /upload/{name}, in one or several chunks described by
+ * the Content-Range header (bytes first-last/total) and optionally checked with the Content-MD5 header. The number of
+ * bytes already received is given by GET /upload/{name}, so an interrupted upload can be resumed. A chunk larger than
+ * {@link UploadWriter#MAX_CHUNK_BYTES} is refused with the status 413.
+ */
+@Controller
+public class UploadController extends DefaultController {
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(UploadController.class);
+
+    /** Pattern of the Content-Range header. */
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+)");
+
+    /** Status code telling the client that other chunks are expected. */
+    private static final int RESUME_INCOMPLETE = 308;
+    /** Status code telling the client that the chunk does not follow the received bytes. */
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+    /** Status code telling the client that the chunk is larger than {@link UploadWriter#MAX_CHUNK_BYTES}. */
+    private static final int REQUEST_ENTITY_TOO_LARGE = 413;
+
+    @Requires
+    private BaseServerImpl coreServerController;
+
+    @Requires
+    private Json json;
+
+    @Route(method = HttpMethod.PUT, uri = "/upload/{name}")
+    public Result uploadChunk(@Parameter("name") String name) {
+        Session session = coreServerController.findByToken(context().cookieValue("token"));
+        if(session == null) {
+            return unauthorized();
+        }
+        File target = UploadWriter.getTargetFile(session.getWorkspaceFolder(), name);
+        if(target == null) {
+            return badRequest("Invalid file name.");
+        }
+        //The request body is handed to the route already read, so its size is bounded before it is read again
+        String contentLength = context().header("Content-Length");
+        try {
+            if(contentLength != null && Long.parseLong(contentLength.trim()) > UploadWriter.MAX_CHUNK_BYTES) {
+                return status(REQUEST_ENTITY_TOO_LARGE);
+            }
+        } catch (NumberFormatException e) {
+            return badRequest("Invalid Content-Length header.");
+        }
+        byte[] chunk = context().raw();
+        if(chunk == null) {
+            chunk = new byte[0];
+        }
+        if(chunk.length > UploadWriter.MAX_CHUNK_BYTES) {
+            return status(REQUEST_ENTITY_TOO_LARGE);
+        }
+        long first = 0;
+        long total = chunk.length;
+        String range = context().header("Content-Range");
+        if(range != null) {
+            Matcher matcher = CONTENT_RANGE.matcher(range.trim());
+            if(!matcher.matches()) {
+                return badRequest("Invalid Content-Range header.");
+            }
+            long last;
+            try {
+                first = Long.parseLong(matcher.group(1));
+                last = Long.parseLong(matcher.group(2));
+                total = Long.parseLong(matcher.group(3));
+            } catch (NumberFormatException e) {
+                return badRequest("Invalid Content-Range header.");
+            }
+            if(last - first + 1 != chunk.length) {
+                return badRequest("The Content-Range header does not match the chunk size.");
+            }
+        }
+        UploadWriter uploadWriter = coreServerController.getUploadWriter();
+        try {
+            switch (uploadWriter.writeChunk(new ByteArrayInputStream(chunk), chunk.length, target, first, total,
+                    context().header("Content-MD5"))) {
+                case COMPLETE:
+                    session.invalidateTableData();
+                    return ok();
+                case INCOMPLETE:
+                    return withRange(status(RESUME_INCOMPLETE), uploadWriter.getReceived(target));
+                case BAD_CHECKSUM:
+                    return badRequest("The chunk does not match its Content-MD5.");
+                default:
+                    return withRange(status(RANGE_NOT_SATISFIABLE), uploadWriter.getReceived(target));
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to write the uploaded chunk.\n"+e.getMessage());
+            return internalServerError();
+        }
+    }
+
+    /**
+     * Adds to the response the Range header giving the bytes already received. The header is omitted when nothing
+     * has been received, as an empty range can not be written.
+     * @param result Response to the chunk.
+     * @param received Number of bytes received, as given by {@link UploadWriter#getReceived(File)}.
+     * @return The response.
+     */
+    private static Result withRange(Result result, long received) {
+        if(received <= 0) {
+            return result;
+        }
+        return result.with("Range", "bytes=0-" + (received - 1));
+    }
+
+    @Route(method = HttpMethod.GET, uri = "/upload/{name}")
+    public Result uploadStatus(@Parameter("name") String name) {
+        Session session = coreServerController.findByToken(context().cookieValue("token"));
+        if(session == null) {
+            return unauthorized();
+        }
+        File target = UploadWriter.getTargetFile(session.getWorkspaceFolder(), name);
+        if(target == null) {
+            return badRequest("Invalid file name.");
+        }
+        long received = coreServerController.getUploadWriter().getReceived(target);
+        ObjectNode status = json.newObject();
+        status.put("complete", received < 0);
+        status.put("received", received < 0 ? target.length() : received);
+        return ok(status).json();
+    }
+
+    @Route(method = HttpMethod.GET, uri = "/metrics/upload")
+    public Result uploadMetrics() {
+        UploadWriter uploadWriter = coreServerController.getUploadWriter();
+        ObjectNode metrics = json.newObject();
+        metrics.put("bytes", uploadWriter.getByteCount());
+        metrics.put("writes", uploadWriter.getChunkCount());
+        metrics.put("writeTimeMillis", uploadWriter.getWriteTimeMillis());
+        metrics.put("bytesPerSecond", uploadWriter.getThroughput());
+        return ok(metrics).json();
+    }
+}
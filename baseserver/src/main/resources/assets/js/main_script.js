@@ -213,6 +213,7 @@ function jobs(){
         {
             $( "#list" ).html("");
             $( "#content" ).html(String(text));
+            openJobSocket();
         },
         error : function(text)
         {
@@ -221,6 +222,84 @@ function jobs(){
     });
 }
 
+/** Web socket receiving the job status changes of the session */
+var jobSocket = null;
+
+function openJobSocket(){
+    if(jobSocket != null || !("WebSocket" in window)){
+        return;
+    }
+    //The session token stays in its cookie, the socket uses the opaque channel of the session
+    $.ajax({ type: "GET",
+        url: "http://localhost:8080/jobs/channel",
+        success : function(data)
+        {
+            if(jobSocket != null){
+                return;
+            }
+            jobSocket = new WebSocket("ws://localhost:8080/ws/jobs/" + data.channel);
+            jobSocket.onmessage = function(event)
+            {
+                var delta = JSON.parse(event.data);
+                //The channel is not known by the server
+                if(delta.close){
+                    closeJobSocket();
+                    return;
+                }
+                //The job could not be started
+                if(delta.error){
+                    $( "#content" ).html($("<div>").addClass("alert alert-danger").text(delta.processId + " : " + delta.error));
+                    return;
+                }
+                //Only update the job list if it is displayed
+                if($( "#job-table" ).length){
+                    applyJobDelta(delta);
+                }
+                //A finished job may have changed the database
+                if((delta.status == "SUCCEEDED" || delta.status == "FAILED") && $( "#database-table" ).length){
+                    refreshDatabaseView();
+                }
+            };
+            jobSocket.onclose = function(event)
+            {
+                jobSocket = null;
+            };
+        }
+    });
+}
+
+/** Bootstrap classes of the job status labels and progress bars */
+var jobLabelClass = {ACCEPTED: "label-primary", RUNNING: "label-info", FAILED: "label-danger", SUCCEEDED: "label-success"};
+var jobBarClass = {ACCEPTED: "progress-bar-default", RUNNING: "progress-bar-info", FAILED: "progress-bar-danger",
+    SUCCEEDED: "progress-bar-success"};
+
+/** Applies a job status change to its row of the job table. A new job or a new result needs the whole table. */
+function applyJobDelta(delta){
+    var row = $( "#job-table tbody tr" ).filter(function(){
+        return $(this).attr("data-job-id") == delta.jobId;
+    });
+    var status = String(delta.status).toUpperCase();
+    if(!row.length || delta.hasResult || !(status in jobLabelClass)){
+        jobs();
+        return;
+    }
+    row.find(".job-status").html($("<p>").addClass("label " + jobLabelClass[status]).text(status));
+    var percent = status == "RUNNING" && delta.percentCompleted != null ? delta.percentCompleted : 100;
+    var bar = $("<div>").addClass("progress-bar " + jobBarClass[status]).attr("role", "progressbar")
+        .css("width", percent + "%");
+    if(status == "RUNNING" || status == "SUCCEEDED"){
+        bar.append($("<span>").text(percent + "%"));
+    }
+    row.find(".progress").html(bar);
+}
+
+function closeJobSocket(){
+    if(jobSocket != null){
+        jobSocket.close();
+        jobSocket = null;
+    }
+}
+
 function data(){
     $.ajax({ type: "GET",
         url: "http://localhost:8080/data",
@@ -346,14 +425,40 @@ function nameFile(){
     $('#in-browse').val(title);
 }
 
+/** Size of the chunks of the uploaded files */
+var UPLOAD_CHUNK_SIZE = 4 * 1024 * 1024;
+
 function loadFile(id){
     nameFile();
-    var form = new FormData();
-    form.append("file",$("#file")[0].files[0]);
-    var request = new XMLHttpRequest();
-    request.open('POST', 'http://localhost:8080/uploading', false);
-    request.send(form);
-    if (request.status === 200) {
+    var file = $("#file")[0].files[0];
+    var url = 'http://localhost:8080/upload/' + encodeURIComponent(file.name);
+    //Resume from the bytes already received by the server
+    var first = 0;
+    var status = new XMLHttpRequest();
+    status.open('GET', url, false);
+    status.send();
+    if (status.status === 200) {
+        var received = JSON.parse(status.responseText);
+        if (!received.complete) {
+            first = received.received;
+        }
+    }
+    var success = true;
+    do {
+        var last = Math.min(first + UPLOAD_CHUNK_SIZE, file.size) - 1;
+        var request = new XMLHttpRequest();
+        request.open('PUT', url, false);
+        if (file.size > 0) {
+            request.setRequestHeader('Content-Range', 'bytes ' + first + '-' + last + '/' + file.size);
+        }
+        request.send(file.slice(first, last + 1));
+        if (request.status !== 200 && request.status !== 308) {
+            success = false;
+            break;
+        }
+        first = last + 1;
+    } while (first < file.size);
+    if (success) {
         $("#"+id).addClass("has-success")
     } else {
         $("#"+id).addClass("has-error")
@@ -463,6 +568,7 @@ function log_out(){
         {
             $( "#user_ul" ).html(String(text));
             writeCookie("token", "");
+            closeJobSocket();
             showUser();
         },
         error : function(text)
@@ -502,6 +608,54 @@ function toggleDatabaseView(){
     }
 }
 
+function databaseRow(table){
+    var row = $("<tr></tr>").attr("data-table", table.name);
+    var title = $("<td></td>").append($("<p class='table-row-title'></p>").text(table.name));
+    if(table.rowCountEstimate >= 0){
+        title.append($("<p></p>").text("~" + table.rowCountEstimate + " rows"));
+    }
+    row.append(title);
+    $.each(table.fields, function(index, field){
+        var cell = $("<td></td>").append($("<span></span>").text(field.name));
+        if(field.indexState){
+            cell.append(" ").append($("<span class='label label-default'></span>").text(field.indexState));
+        }
+        row.append(cell);
+    });
+    return row;
+}
+
+function refreshDatabaseView(){
+    var dbTable = $( "#database-table" );
+    $.ajax({
+        type: "GET",
+        url: "http://localhost:8080/data/database/changes",
+        data: {since: dbTable.attr("data-version")},
+        success : function(changes)
+        {
+            var body = dbTable.children("tbody");
+            if(changes.full){
+                body.empty();
+            }
+            //Only the changed rows are replaced
+            $.each(changes.removed, function(index, name){
+                body.children("tr").filter(function(){ return $(this).attr("data-table") == name; }).remove();
+            });
+            $.each(changes.tables, function(index, table){
+                var row = databaseRow(table);
+                var old = body.children("tr").filter(function(){ return $(this).attr("data-table") == table.name; });
+                if(old.length){
+                    old.replaceWith(row);
+                }
+                else {
+                    body.append(row);
+                }
+            });
+            dbTable.attr("data-version", changes.version);
+        }
+    });
+}
+
 home();
 login();
 showUser();
@@ -0,0 +1,139 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.model;
+
+import org.h2gis.utilities.TableLocation;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test of the {@link DatabaseContent} snapshots.
+ */
+public class DatabaseContentTest {
+
+    /**
+     * The first snapshot has the version 1, as all its tables.
+     */
+    @Test
+    public void testFirstSnapshot() {
+        DatabaseContent snapshot = content(table("T1", 10), table("T2", 20)).snapshot(null);
+        assertEquals(1, snapshot.getVersion());
+        assertEquals(1, snapshot.getTable("T1").getVersion());
+        assertEquals(1, snapshot.getTable("T2").getVersion());
+    }
+
+    /**
+     * An unchanged content gives back the previous snapshot.
+     */
+    @Test
+    public void testUnchangedSnapshot() {
+        DatabaseContent previous = content(table("T1", 10)).snapshot(null);
+        assertSame(previous, content(table("T1", 10)).snapshot(previous));
+    }
+
+    /**
+     * Only the changed tables get the new version, and the changes since the previous snapshot are listed.
+     */
+    @Test
+    public void testChangedSnapshot() {
+        DatabaseContent previous = content(table("T0", 5), table("T1", 10), table("T2", 20)).snapshot(null);
+        DatabaseContent snapshot = content(table("T1", 10), table("T2", 21), table("T3", 30)).snapshot(previous);
+        assertEquals(2, snapshot.getVersion());
+        assertEquals(1, snapshot.getTable("T1").getVersion());
+        assertEquals(2, snapshot.getTable("T2").getVersion());
+        assertEquals(2, snapshot.getTable("T3").getVersion());
+        assertEquals(Arrays.asList("T2", "T3"), names(snapshot.getChangedTables(previous)));
+        assertEquals(Collections.singletonList("T0"), snapshot.getRemovedTableNames(previous));
+        assertEquals(Collections.<String>emptyList(), names(snapshot.getChangedTables(snapshot)));
+    }
+
+    /**
+     * A snapshot can not be modified.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutableSnapshot() {
+        content(table("T1", 10)).snapshot(null).addTable(table("T2", 20));
+    }
+
+    /**
+     * Returns a database content with the given tables.
+     * @param tables Tables of the content.
+     * @return The database content.
+     */
+    private static DatabaseContent content(DatabaseTable... tables) {
+        DatabaseContent content = new DatabaseContent();
+        for(DatabaseTable table : tables) {
+            content.addTable(table);
+        }
+        return content;
+    }
+
+    /**
+     * Returns a table with an identifier and a geometry column.
+     * @param name Name of the table.
+     * @param rowCount Estimated number of rows of the table.
+     * @return The table.
+     */
+    private static DatabaseTable table(String name, long rowCount) {
+        DatabaseTable table = new DatabaseTable(TableLocation.parse(name));
+        table.addField("ID", "INTEGER");
+        table.addGeometryField("THE_GEOM", "POINT", 4326);
+        table.setRowCountEstimate(rowCount);
+        return table;
+    }
+
+    /**
+     * Returns the names of the given tables.
+     * @param tableList List of the tables.
+     * @return The list of the names.
+     */
+    private static List<String> names(List<DatabaseTable> tableList) {
+        String[] names = new String[tableList.size()];
+        for(int i = 0; i < names.length; i++) {
+            names[i] = tableList.get(i).getName();
+        }
+        return Arrays.asList(names);
+    }
+}
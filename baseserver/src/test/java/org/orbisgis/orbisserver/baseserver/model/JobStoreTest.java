@@ -0,0 +1,113 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.model;
+
+import org.junit.Test;
+import org.orbisgis.orbisserver.api.model.StatusInfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test of the {@link JobStore} state transitions.
+ */
+public class JobStoreTest {
+
+    /**
+     * A job moves forward from ACCEPTED to SUCCEEDED, then expires.
+     */
+    @Test
+    public void testLifecycle() {
+        JobStore store = new JobStore();
+        assertTrue(store.add(status("job", "ACCEPTED"), null));
+        assertFalse(store.add(status("job", "ACCEPTED"), null));
+        assertEquals(JobStore.JobState.RUNNING, store.update(status("job", "RUNNING")).getState());
+        //A job which is not finished can not expire
+        assertNull(store.expire("job"));
+        JobStore.Job job = store.update(status("job", "SUCCEEDED"));
+        assertEquals(JobStore.JobState.SUCCEEDED, job.getState());
+        assertTrue(job.isFinished());
+        assertEquals(JobStore.JobState.EXPIRED, store.expire("job").getState());
+        assertNull(store.get("job"));
+        assertTrue(store.isEmpty());
+    }
+
+    /**
+     * A late status can not move a job backward.
+     */
+    @Test
+    public void testLateStatusRejected() {
+        JobStore store = new JobStore();
+        store.add(status("job", "RUNNING"), null);
+        assertNull(store.update(status("job", "ACCEPTED")));
+        store.update(status("job", "FAILED"));
+        assertNull(store.update(status("job", "RUNNING")));
+        assertEquals(JobStore.JobState.FAILED, store.get("job").getState());
+    }
+
+    /**
+     * A status without a known state keeps the current state, an unknown job is not updated.
+     */
+    @Test
+    public void testProgressUpdate() {
+        JobStore store = new JobStore();
+        store.add(status("job", "RUNNING"), null);
+        StatusInfo progress = status("job", null);
+        progress.setPercentCompleted(50);
+        JobStore.Job job = store.update(progress);
+        assertEquals(JobStore.JobState.RUNNING, job.getState());
+        assertEquals(Integer.valueOf(50), job.getStatusInfo().getPercentCompleted());
+        assertNull(store.update(status("other", "RUNNING")));
+        assertEquals(1, store.getStatusInfoList().size());
+    }
+
+    /**
+     * Returns the status of a job.
+     * @param jobId Identifier of the job.
+     * @param status Status of the job.
+     * @return The status information.
+     */
+    private static StatusInfo status(String jobId, String status) {
+        StatusInfo statusInfo = new StatusInfo(jobId);
+        statusInfo.setStatus(status);
+        return statusInfo;
+    }
+}
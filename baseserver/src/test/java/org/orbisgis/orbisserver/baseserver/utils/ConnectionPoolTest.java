@@ -0,0 +1,140 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test of the reuse of the {@link ConnectionPool} connections.
+ */
+public class ConnectionPoolTest {
+
+    /** Pool under test, on an in memory database. */
+    private ConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + getClass().getSimpleName() + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        pool = new ConnectionPool(dataSource, 2);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    /**
+     * The statements and result sets left open by a borrower are closed when the connection is given back, and the
+     * connection is reused.
+     */
+    @Test
+    public void testStatementsClosedOnReturn() throws Exception {
+        Connection connection = pool.getConnection();
+        Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery("SELECT 1");
+        PreparedStatement ps = connection.prepareStatement("SELECT ?");
+        connection.close();
+        assertTrue(statement.isClosed());
+        assertTrue(rs.isClosed());
+        assertTrue(ps.isClosed());
+        assertEquals(1, pool.getIdleCount());
+        try(Connection reused = pool.getConnection()) {
+            assertFalse(reused.isClosed());
+        }
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(0, pool.getDiscardedCount());
+    }
+
+    /**
+     * A connection whose session state has changed is not given to the next borrower.
+     */
+    @Test
+    public void testChangedSessionDiscarded() throws Exception {
+        try(Connection connection = pool.getConnection();
+            Statement statement = connection.createStatement()) {
+            statement.execute("CREATE SCHEMA SANDBOX");
+            statement.execute("SET SCHEMA SANDBOX");
+            statement.execute("SET @BORROWER 1");
+        }
+        assertEquals(1, pool.getDiscardedCount());
+        assertEquals(0, pool.getIdleCount());
+        try(Connection connection = pool.getConnection();
+            Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery("SELECT SCHEMA(), @BORROWER")) {
+            assertTrue(rs.next());
+            assertEquals("PUBLIC", rs.getString(1));
+            assertNull(rs.getObject(2));
+        }
+        assertEquals(2, pool.getCreatedCount());
+    }
+
+    /**
+     * An uncommitted transaction is rolled back when the connection is given back.
+     */
+    @Test
+    public void testTransactionRolledBack() throws Exception {
+        try(Connection connection = pool.getConnection();
+            Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE DATA(ID INT)");
+            connection.setAutoCommit(false);
+            statement.execute("INSERT INTO DATA VALUES (1)");
+        }
+        try(Connection connection = pool.getConnection();
+            Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM DATA")) {
+            assertTrue(connection.getAutoCommit());
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test of the {@link MvtEncoder} class.
+ */
+public class MvtEncoderTest {
+
+    /** Factory of the test geometries. */
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+
+    /**
+     * A tile without feature is empty.
+     */
+    @Test
+    public void testEmptyTile() {
+        MvtEncoder encoder = new MvtEncoder("layer");
+        assertEquals(0, encoder.getFeatureCount());
+        assertArrayEquals(new byte[0], encoder.encode());
+    }
+
+    /**
+     * Checks the bytes of a tile with a single point feature.
+     */
+    @Test
+    public void testPointTile() {
+        MvtEncoder encoder = new MvtEncoder("l");
+        encoder.addFeature(1, FACTORY.createPoint(new Coordinate(25, 17)),
+                Collections.<String, Object>emptyMap());
+        assertEquals(1, encoder.getFeatureCount());
+        byte[] expected = {
+                //Tile : layer message of 19 bytes
+                0x1A, 0x13,
+                //Layer : version 2, name "l"
+                0x78, 0x02, 0x0A, 0x01, 'l',
+                //Feature message of 9 bytes : id 1, type POINT, geometry MoveTo(25, 17)
+                0x12, 0x09, 0x08, 0x01, 0x18, 0x01, 0x22, 0x03, 0x09, 0x32, 0x22,
+                //Layer : extent 4096
+                0x28, (byte) 0x80, 0x20};
+        assertArrayEquals(expected, encoder.encode());
+    }
+
+    /**
+     * A polygon collapsing to a point once rounded to the tile grid is skipped.
+     */
+    @Test
+    public void testCollapsedPolygonSkipped() {
+        MvtEncoder encoder = new MvtEncoder("layer");
+        encoder.addFeature(1, FACTORY.createPolygon(new Coordinate[]{new Coordinate(0, 0), new Coordinate(0.1, 0),
+                new Coordinate(0.1, 0.1), new Coordinate(0, 0)}), Collections.<String, Object>emptyMap());
+        assertEquals(0, encoder.getFeatureCount());
+        assertArrayEquals(new byte[0], encoder.encode());
+    }
+
+    /**
+     * The property keys and values shared by several features are written once in the layer.
+     */
+    @Test
+    public void testSharedProperties() {
+        MvtEncoder encoder = new MvtEncoder("layer");
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("category", "forest");
+        properties.put("missing", null);
+        encoder.addFeature(1, FACTORY.createPoint(new Coordinate(10, 10)), properties);
+        encoder.addFeature(2, FACTORY.createPoint(new Coordinate(20, 20)), properties);
+        assertEquals(2, encoder.getFeatureCount());
+        String tile = new String(encoder.encode(), StandardCharsets.ISO_8859_1);
+        assertEquals(1, count(tile, "category"));
+        assertEquals(1, count(tile, "forest"));
+        //The null values are skipped with their key
+        assertEquals(0, count(tile, "missing"));
+    }
+
+    /**
+     * Returns the number of occurrences of a word in a text.
+     * @param text Text to search in.
+     * @param word Word to count.
+     * @return The number of occurrences.
+     */
+    private static int count(String text, String word) {
+        int count = 0;
+        int index = text.indexOf(word);
+        while(index >= 0) {
+            count++;
+            index = text.indexOf(word, index + word.length());
+        }
+        return count;
+    }
+}
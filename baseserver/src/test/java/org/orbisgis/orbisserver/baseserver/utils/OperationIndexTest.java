@@ -0,0 +1,127 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.junit.Test;
+import org.orbisgis.orbisserver.api.model.Operation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test of the {@link OperationIndex} search.
+ */
+public class OperationIndexTest {
+
+    /** Index of the test operations. */
+    private final OperationIndex index = new OperationIndex(Arrays.asList(
+            operation("buffer", "Buffer", "Compute a buffer around the geometries.", "vector"),
+            operation("csv", "Import CSV", "Import a csv file.", "import", "csv"),
+            operation("grid", "Grid", "Create a grid with a buffer distance.", "vector", "buffer")));
+
+    /**
+     * An empty query gives all the operations in their original order.
+     */
+    @Test
+    public void testEmptyQuery() {
+        assertEquals(Arrays.asList("buffer", "csv", "grid"), ids(index.search("", 0, -1)));
+        assertEquals(Arrays.asList("buffer", "csv", "grid"), ids(index.search(null, 0, -1)));
+    }
+
+    /**
+     * The words are matched by prefix, regardless of the case, a word in the title ranking first.
+     */
+    @Test
+    public void testPrefixRanking() {
+        assertEquals(Arrays.asList("buffer", "grid"), ids(index.search("buf", 0, -1)));
+        assertEquals(Arrays.asList("buffer", "grid"), ids(index.search("BUFFER", 0, -1)));
+        assertEquals(Collections.<String>emptyList(), ids(index.search("raster", 0, -1)));
+    }
+
+    /**
+     * An operation should match all the query words.
+     */
+    @Test
+    public void testAllWords() {
+        assertEquals(Collections.singletonList("grid"), ids(index.search("vector grid", 0, -1)));
+        assertEquals(Collections.<String>emptyList(), ids(index.search("csv grid", 0, -1)));
+    }
+
+    /**
+     * The results are paged, an offset after the results gives an empty page.
+     */
+    @Test
+    public void testPaging() {
+        assertEquals(Collections.singletonList("buffer"), ids(index.search("buffer", 0, 1)));
+        assertEquals(Collections.singletonList("grid"), ids(index.search("buffer", 1, 1)));
+        assertEquals(Collections.<String>emptyList(), ids(index.search("buffer", 5, 1)));
+    }
+
+    /**
+     * Returns an operation.
+     * @param id Identifier of the operation.
+     * @param title Title of the operation.
+     * @param abstr Abstract of the operation.
+     * @param keywords Keywords of the operation.
+     * @return The operation.
+     */
+    private static Operation operation(String id, String title, String abstr, String... keywords) {
+        Operation operation = new Operation(title, id);
+        operation.setAbstr(abstr);
+        operation.setKeyWord(new ArrayList<>(Arrays.asList(keywords)));
+        return operation;
+    }
+
+    /**
+     * Returns the identifiers of the given operations.
+     * @param operationList List of the operations.
+     * @return The list of the identifiers.
+     */
+    private static List<String> ids(List<Operation> operationList) {
+        List<String> ids = new ArrayList<>();
+        for(Operation operation : operationList) {
+            ids.add(operation.getId());
+        }
+        return ids;
+    }
+}
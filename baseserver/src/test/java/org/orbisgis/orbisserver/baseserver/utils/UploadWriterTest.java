@@ -0,0 +1,166 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.baseserver.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test of the {@link UploadWriter} class.
+ */
+public class UploadWriterTest {
+
+    /** Content of the uploaded file. */
+    private static final byte[] CONTENT = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The path part of the uploaded file name is ignored.
+     */
+    @Test
+    public void testGetTargetFile() throws Exception {
+        File workspace = folder.getRoot();
+        assertEquals(new File(workspace, "data.csv"), UploadWriter.getTargetFile(workspace, "data.csv"));
+        assertEquals(new File(workspace, "data.csv"), UploadWriter.getTargetFile(workspace, "../../data.csv"));
+        assertEquals(new File(workspace, "data.csv"), UploadWriter.getTargetFile(workspace, "..\\dir\\data.csv"));
+        assertNull(UploadWriter.getTargetFile(workspace, ".."));
+        assertNull(UploadWriter.getTargetFile(workspace, null));
+    }
+
+    /**
+     * A file uploaded in two chunks is renamed once the last byte is received.
+     */
+    @Test
+    public void testChunksComplete() throws Exception {
+        UploadWriter writer = new UploadWriter();
+        File target = new File(folder.getRoot(), "data.bin");
+        assertEquals(UploadWriter.Status.INCOMPLETE, writeChunk(writer, target, 0, 10, md5(0, 10)));
+        assertEquals(10, writer.getReceived(target));
+        assertFalse(target.exists());
+        assertEquals(UploadWriter.Status.COMPLETE, writeChunk(writer, target, 10, CONTENT.length, null));
+        assertEquals(-1, writer.getReceived(target));
+        assertArrayEquals(CONTENT, Files.readAllBytes(target.toPath()));
+        assertEquals(CONTENT.length, writer.getByteCount());
+        assertEquals(2, writer.getChunkCount());
+    }
+
+    /**
+     * A chunk sent again after a failure is accepted, a chunk after the received bytes is rejected.
+     */
+    @Test
+    public void testChunkRange() throws Exception {
+        UploadWriter writer = new UploadWriter();
+        File target = new File(folder.getRoot(), "data.bin");
+        assertEquals(UploadWriter.Status.BAD_RANGE, writeChunk(writer, target, 4, 8, null));
+        assertEquals(UploadWriter.Status.INCOMPLETE, writeChunk(writer, target, 0, 8, null));
+        assertEquals(UploadWriter.Status.INCOMPLETE, writeChunk(writer, target, 4, 12, null));
+        assertEquals(12, writer.getReceived(target));
+        assertEquals(UploadWriter.Status.COMPLETE, writeChunk(writer, target, 12, CONTENT.length, null));
+        assertArrayEquals(CONTENT, Files.readAllBytes(target.toPath()));
+    }
+
+    /**
+     * A chunk shorter than announced is dropped.
+     */
+    @Test
+    public void testShortChunk() throws Exception {
+        UploadWriter writer = new UploadWriter();
+        File target = new File(folder.getRoot(), "data.bin");
+        assertEquals(UploadWriter.Status.BAD_RANGE, writer.writeChunk(new ByteArrayInputStream(CONTENT, 0, 4), 8,
+                target, 0, CONTENT.length, null));
+        assertEquals(0, writer.getReceived(target));
+    }
+
+    /**
+     * A chunk which does not match its checksum is dropped, the previous chunks are kept.
+     */
+    @Test
+    public void testBadChecksum() throws Exception {
+        UploadWriter writer = new UploadWriter();
+        File target = new File(folder.getRoot(), "data.bin");
+        assertEquals(UploadWriter.Status.INCOMPLETE, writeChunk(writer, target, 0, 8, null));
+        assertEquals(UploadWriter.Status.BAD_CHECKSUM, writeChunk(writer, target, 8, CONTENT.length, md5(0, 8)));
+        assertEquals(8, writer.getReceived(target));
+        assertFalse(target.exists());
+        assertTrue(new File(folder.getRoot(), "data.bin" + UploadWriter.PART_EXTENSION).exists());
+    }
+
+    /**
+     * Writes the bytes of the test content between the given positions as a chunk.
+     * @param writer Writer to use.
+     * @param target File to write.
+     * @param first Position of the first byte of the chunk.
+     * @param end Position after the last byte of the chunk.
+     * @param md5 Base64 MD5 checksum of the chunk, null to skip the check.
+     * @return The status of the upload.
+     */
+    private static UploadWriter.Status writeChunk(UploadWriter writer, File target, int first, int end, String md5)
+            throws Exception {
+        return writer.writeChunk(new ByteArrayInputStream(CONTENT, first, end - first), end - first, target, first,
+                CONTENT.length, md5);
+    }
+
+    /**
+     * Returns the Base64 MD5 checksum of the bytes of the test content between the given positions.
+     * @param first Position of the first byte.
+     * @param end Position after the last byte.
+     * @return The checksum.
+     */
+    private static String md5(int first, int end) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+        digest.update(CONTENT, first, end - first);
+        return DatatypeConverter.printBase64Binary(digest.digest());
+    }
+}
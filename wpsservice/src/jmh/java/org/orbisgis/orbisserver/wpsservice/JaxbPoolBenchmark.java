@@ -0,0 +1,128 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.wpsservice;
+
+import net.opengis.ows._2.AcceptVersionsType;
+import net.opengis.ows._2.SectionsType;
+import net.opengis.wps._2_0.GetCapabilitiesType;
+import net.opengis.wps._2_0.ObjectFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.orbiswps.server.model.JaxbContainer;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the marshalling of a WPS request with a Marshaller created for each call and indenting its output, as done
+ * before the {@link JaxbPool}, with a Marshaller borrowed from the pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+public class JaxbPoolBenchmark {
+
+    /** Request marshalled by the benchmarks. */
+    private JAXBElement<GetCapabilitiesType> request;
+
+    /**
+     * Builds the GetCapabilities request sent by the WpsService to list the operations.
+     */
+    @Setup
+    public void setup() {
+        GetCapabilitiesType getCapabilitiesType = new GetCapabilitiesType();
+        GetCapabilitiesType.AcceptLanguages acceptLanguages = new GetCapabilitiesType.AcceptLanguages();
+        acceptLanguages.getLanguage().add("*");
+        getCapabilitiesType.setAcceptLanguages(acceptLanguages);
+        AcceptVersionsType acceptVersionsType = new AcceptVersionsType();
+        acceptVersionsType.getVersion().add("2.0.0");
+        getCapabilitiesType.setAcceptVersions(acceptVersionsType);
+        SectionsType sectionsType = new SectionsType();
+        sectionsType.getSection().add("All");
+        getCapabilitiesType.setSections(sectionsType);
+        request = new ObjectFactory().createGetCapabilities(getCapabilitiesType);
+    }
+
+    /**
+     * Marshals the request with a new Marshaller indenting its output.
+     * @return The size of the marshalled request.
+     * @throws JAXBException Exception thrown if the request can not be marshalled.
+     */
+    @Benchmark
+    public int freshFormattedMarshaller() throws JAXBException {
+        Marshaller marshaller = JaxbContainer.JAXBCONTEXT.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        marshaller.marshal(request, out);
+        return out.size();
+    }
+
+    /**
+     * Marshals the request with a Marshaller borrowed from the pool.
+     * @return The size of the marshalled request.
+     * @throws JAXBException Exception thrown if the request can not be marshalled.
+     */
+    @Benchmark
+    public int pooledMarshaller() throws JAXBException {
+        Marshaller marshaller = JaxbPool.acquireMarshaller();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            marshaller.marshal(request, out);
+            return out.size();
+        } finally {
+            JaxbPool.release(marshaller);
+        }
+    }
+}
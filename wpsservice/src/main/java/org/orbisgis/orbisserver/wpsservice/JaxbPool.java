@@ -0,0 +1,126 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.wpsservice;
+
+import org.orbiswps.server.model.JaxbContainer;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of Marshaller and Unmarshaller created from the JaxbContainer context and shared by all the WpsService
+ * instances. Marshaller and Unmarshaller are not thread safe, so an instance is borrowed for each call and released
+ * once done. The Marshaller does not indent its output as it is only read by the WpsServer.
+ */
+public final class JaxbPool {
+
+    /** Maximum number of idle instances of each kind kept in the pool. */
+    private static final int MAX_IDLE = 32;
+
+    /** Idle Marshaller instances. */
+    private static final Queue<Marshaller> MARSHALLER_QUEUE = new ConcurrentLinkedQueue<>();
+    /** Number of idle Marshaller instances. */
+    private static final AtomicInteger MARSHALLER_COUNT = new AtomicInteger();
+    /** Idle Unmarshaller instances. */
+    private static final Queue<Unmarshaller> UNMARSHALLER_QUEUE = new ConcurrentLinkedQueue<>();
+    /** Number of idle Unmarshaller instances. */
+    private static final AtomicInteger UNMARSHALLER_COUNT = new AtomicInteger();
+
+    private JaxbPool(){}
+
+    /**
+     * Borrows a Marshaller from the pool, or creates a new one if the pool is empty.
+     * @return A Marshaller which should be given back with {@link #release(Marshaller)}.
+     * @throws JAXBException Exception thrown if the Marshaller can not be created.
+     */
+    public static Marshaller acquireMarshaller() throws JAXBException {
+        Marshaller marshaller = MARSHALLER_QUEUE.poll();
+        if(marshaller != null){
+            MARSHALLER_COUNT.decrementAndGet();
+            return marshaller;
+        }
+        marshaller = JaxbContainer.JAXBCONTEXT.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.FALSE);
+        return marshaller;
+    }
+
+    /**
+     * Gives back a Marshaller to the pool.
+     * @param marshaller Marshaller to release.
+     */
+    public static void release(Marshaller marshaller){
+        if(MARSHALLER_COUNT.incrementAndGet() <= MAX_IDLE){
+            MARSHALLER_QUEUE.offer(marshaller);
+        }
+        else {
+            MARSHALLER_COUNT.decrementAndGet();
+        }
+    }
+
+    /**
+     * Borrows an Unmarshaller from the pool, or creates a new one if the pool is empty.
+     * @return An Unmarshaller which should be given back with {@link #release(Unmarshaller)}.
+     * @throws JAXBException Exception thrown if the Unmarshaller can not be created.
+     */
+    public static Unmarshaller acquireUnmarshaller() throws JAXBException {
+        Unmarshaller unmarshaller = UNMARSHALLER_QUEUE.poll();
+        if(unmarshaller != null){
+            UNMARSHALLER_COUNT.decrementAndGet();
+            return unmarshaller;
+        }
+        return JaxbContainer.JAXBCONTEXT.createUnmarshaller();
+    }
+
+    /**
+     * Gives back an Unmarshaller to the pool.
+     * @param unmarshaller Unmarshaller to release.
+     */
+    public static void release(Unmarshaller unmarshaller){
+        if(UNMARSHALLER_COUNT.incrementAndGet() <= MAX_IDLE){
+            UNMARSHALLER_QUEUE.offer(unmarshaller);
+        }
+        else {
+            UNMARSHALLER_COUNT.decrementAndGet();
+        }
+    }
+}
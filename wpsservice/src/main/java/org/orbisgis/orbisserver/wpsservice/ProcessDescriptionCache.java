@@ -0,0 +1,130 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.wpsservice;
+
+import org.orbisgis.orbisserver.api.model.Operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the described operations, shared by all the WpsService instances.
+ * The operations are grouped by script set, identified by the update sequence of the WpsServer capabilities and by
+ * the list of the available processes, so that all the sessions running the same scripts share the same descriptions.
+ * The cached operations are read only.
+ */
+public final class ProcessDescriptionCache {
+
+    /** Described operations with the script set key as first key and the process identifier as second key. */
+    private static final ConcurrentMap<String, ConcurrentMap<String, Operation>> CACHE = new ConcurrentHashMap<>();
+
+    private ProcessDescriptionCache(){}
+
+    /**
+     * Builds the key identifying a script set.
+     * @param updateSequence Update sequence of the WpsServer capabilities, can be null.
+     * @param operationList List of the operations available in the WpsServer.
+     * @return The script set key.
+     */
+    public static String buildKey(String updateSequence, List<Operation> operationList){
+        List<String> idList = new ArrayList<>();
+        for(Operation operation : operationList){
+            idList.add(operation.getId());
+        }
+        Collections.sort(idList);
+        return (updateSequence == null ? "" : updateSequence) + "#" + idList.size() + "#" + idList.hashCode();
+    }
+
+    /**
+     * Returns the cached operation.
+     * @param scriptSetKey Key of the script set.
+     * @param id Identifier of the process.
+     * @return The cached operation, null if it is not cached.
+     */
+    public static Operation get(String scriptSetKey, String id){
+        if(scriptSetKey == null){
+            return null;
+        }
+        ConcurrentMap<String, Operation> operationMap = CACHE.get(scriptSetKey);
+        return operationMap == null ? null : operationMap.get(id);
+    }
+
+    /**
+     * Caches the given operation if there is not already a cached one for the same process.
+     * @param scriptSetKey Key of the script set.
+     * @param id Identifier of the process.
+     * @param operation Described operation.
+     * @return The cached operation.
+     */
+    public static Operation putIfAbsent(String scriptSetKey, String id, Operation operation){
+        if(scriptSetKey == null){
+            return operation;
+        }
+        ConcurrentMap<String, Operation> operationMap = CACHE.get(scriptSetKey);
+        if(operationMap == null){
+            operationMap = new ConcurrentHashMap<>();
+            ConcurrentMap<String, Operation> existing = CACHE.putIfAbsent(scriptSetKey, operationMap);
+            if(existing != null){
+                operationMap = existing;
+            }
+        }
+        Operation existing = operationMap.putIfAbsent(id, operation);
+        return existing == null ? operation : existing;
+    }
+
+    /**
+     * Removes all the cached operations of a script set.
+     * @param scriptSetKey Key of the script set.
+     */
+    public static void invalidate(String scriptSetKey){
+        if(scriptSetKey != null) {
+            CACHE.remove(scriptSetKey);
+        }
+    }
+
+    /**
+     * Removes the cached operations of all the script sets.
+     */
+    public static void invalidateAll(){
+        CACHE.clear();
+    }
+}
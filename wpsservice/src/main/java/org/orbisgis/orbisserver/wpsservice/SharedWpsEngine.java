@@ -0,0 +1,342 @@
+/*
+ * OrbisServer is an OSGI web application to expose OGC services.
+ *
+ * OrbisServer is part of the OrbisGIS platform
+ *
+ * OrbisGIS is a java GIS application dedicated to research in GIScience.
+ * OrbisGIS is developed by the GIS group of the DECIDE team of the
+ * Lab-STICC CNRS laboratory, see <http://www.lab-sticc.fr/>.
+ *
+ * The GIS group of the DECIDE team is located at :
+ *
+ * Laboratoire Lab-STICC – CNRS UMR 6285
+ * Equipe DECIDE
+ * UNIVERSITÉ DE BRETAGNE-SUD
+ * Institut Universitaire de Technologie de Vannes
+ * 8, Rue Montaigne - BP 561 56017 Vannes Cedex
+ *
+ * OrbisServer is distributed under LGPL 3 license.
+ *
+ * Copyright (C) 2017 CNRS (Lab-STICC UMR CNRS 6285)
+ *
+ *
+ * OrbisServer is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * OrbisServer is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * OrbisServer. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * For more information, please consult: <http://www.orbisgis.org/>
+ * or contact directly:
+ * info_at_ orbisgis.org
+ */
+package org.orbisgis.orbisserver.wpsservice;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.SFSUtilities;
+import org.orbiswps.scripts.WpsScriptPlugin;
+import org.orbiswps.server.WpsServer;
+import org.orbiswps.server.WpsServerImpl;
+import org.orbiswps.server.WpsServerListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * WPS engine shared by all the sessions : the WpsServerImpl is created and the scripts are loaded and compiled once.
+ *
+ * The per session isolation is done by routing : the engine is given a DataSource and an ExecutorService which
+ * forward to the ones of the session calling it. A session enters the engine with its DataSource and executor before
+ * a call and exits after. The jobs submitted during the call run on the session executor and keep using the session
+ * DataSource. The WpsServerImpl has a single workspace, so the output files are written in the engine workspace and
+ * moved by the WpsService into an output folder of the job under the session workspace when the result is requested.
+ */
+public class SharedWpsEngine {
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedWpsEngine.class);
+
+    /** Context of the session calling the engine on the current thread. */
+    private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<>();
+
+    /** Shared WpsServer instance. */
+    private WpsServerImpl wpsServer;
+    /** Workspace of the engine, where the jobs write their outputs before they are moved to the session. */
+    private File workspaceFolder;
+    /** DataSource used outside of any session context. */
+    private DataSource defaultDataSource;
+    /** ExecutorService used outside of any session context. */
+    private ExecutorService defaultExecutor;
+    /** Listeners of the services using the engine, notified on a script set change. */
+    private List<WpsServerListener> scriptListenerList = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates the shared engine in the given workspace folder and loads the scripts.
+     * @param workspaceFolder Workspace of the engine.
+     * @throws IOException Exception thrown if the wps server properties can not be copied in the workspace.
+     * @throws SQLException Exception thrown if the default database can not be created.
+     */
+    public SharedWpsEngine(File workspaceFolder) throws IOException, SQLException {
+        this.workspaceFolder = workspaceFolder;
+        workspaceFolder.mkdirs();
+        File f = new File(workspaceFolder, "wpsServer.properties");
+        try(InputStream is = WpsService.class.getResource("wpsServer.properties").openStream()) {
+            Files.copy(is, f.toPath(), REPLACE_EXISTING);
+        }
+        String dataBaseLocation = new File(workspaceFolder, "h2_db.mv.db").getAbsolutePath();
+        defaultDataSource = SFSUtilities.wrapSpatialDataSource(H2GISDBFactory.createDataSource(dataBaseLocation, true));
+        defaultExecutor = Executors.newCachedThreadPool();
+
+        DataSource routingDataSource = new RoutingDataSource();
+        wpsServer = new WpsServerImpl(workspaceFolder.getAbsolutePath(), routingDataSource, f.getAbsolutePath());
+        wpsServer.setExecutorService(new RoutingExecutorService());
+        wpsServer.setDatabase(WpsServer.Database.H2GIS);
+        wpsServer.setDataSource(routingDataSource);
+
+        WpsScriptPlugin scriptPlugin = new WpsScriptPlugin();
+        scriptPlugin.setWpsServer(wpsServer);
+        scriptPlugin.activate();
+
+        //All the sessions share the scripts, so all the cached process descriptions are outdated on a change
+        wpsServer.addWpsServerListener(new WpsServerListener() {
+            @Override
+            public void onScriptAdd() {
+                ProcessDescriptionCache.invalidateAll();
+                for(WpsServerListener listener : scriptListenerList) {
+                    listener.onScriptAdd();
+                }
+            }
+
+            @Override
+            public void onScriptRemoved() {
+                ProcessDescriptionCache.invalidateAll();
+                for(WpsServerListener listener : scriptListenerList) {
+                    listener.onScriptRemoved();
+                }
+            }
+        });
+        LOGGER.info("Shared WPS engine started.");
+    }
+
+    /**
+     * Returns the shared WpsServer.
+     * @return The shared WpsServer.
+     */
+    public WpsServerImpl getWpsServer() {
+        return wpsServer;
+    }
+
+    /**
+     * Returns the workspace of the engine. The output files of the jobs are written there and then moved by the
+     * services into the workspace of their session.
+     * @return The workspace folder of the engine.
+     */
+    public File getWorkspaceFolder() {
+        return workspaceFolder;
+    }
+
+    /**
+     * Adds a listener notified once the cached process descriptions have been dropped on a script set change.
+     * @param listener Listener to add.
+     */
+    public void addScriptListener(WpsServerListener listener) {
+        scriptListenerList.add(listener);
+    }
+
+    /**
+     * Removes a script listener.
+     * @param listener Listener to remove.
+     */
+    public void removeScriptListener(WpsServerListener listener) {
+        scriptListenerList.remove(listener);
+    }
+
+    /**
+     * Routes the engine calls of the current thread to the given DataSource and ExecutorService, until
+     * {@link #exit()} is called.
+     * @param dataSource DataSource of the session.
+     * @param executorService ExecutorService of the session.
+     */
+    public void enter(DataSource dataSource, ExecutorService executorService) {
+        CONTEXT.set(new Context(dataSource, executorService));
+    }
+
+    /**
+     * Ends the routing of the engine calls of the current thread.
+     */
+    public void exit() {
+        CONTEXT.remove();
+    }
+
+    /**
+     * Releases the engine resources.
+     */
+    public void shutdown() {
+        defaultExecutor.shutdownNow();
+        try(Connection connection = defaultDataSource.getConnection();
+            Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        } catch (SQLException e) {
+            LOGGER.error("Unable to shutdown the default database of the shared engine.\n"+e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the DataSource of the current context, or the default one.
+     * @return The current DataSource.
+     */
+    private DataSource currentDataSource() {
+        Context context = CONTEXT.get();
+        return context == null || context.dataSource == null ? defaultDataSource : context.dataSource;
+    }
+
+    /**
+     * Session resources used by the engine calls of a thread.
+     */
+    private static class Context {
+
+        /** DataSource of the session. */
+        private final DataSource dataSource;
+        /** ExecutorService of the session. */
+        private final ExecutorService executorService;
+
+        public Context(DataSource dataSource, ExecutorService executorService) {
+            this.dataSource = dataSource;
+            this.executorService = executorService;
+        }
+    }
+
+    /**
+     * DataSource forwarding to the DataSource of the current context.
+     */
+    private class RoutingDataSource implements DataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return currentDataSource().getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return currentDataSource().getConnection(username, password);
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return currentDataSource().getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            currentDataSource().setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            currentDataSource().setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return currentDataSource().getLoginTimeout();
+        }
+
+        @Override
+        public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return currentDataSource().getParentLogger();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return currentDataSource().unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return currentDataSource().isWrapperFor(iface);
+        }
+    }
+
+    /**
+     * ExecutorService running the tasks on the ExecutorService of the current context. The context is propagated to
+     * the task, so the jobs keep using the DataSource of the session which submitted them.
+     */
+    private class RoutingExecutorService extends AbstractExecutorService {
+
+        @Override
+        public void execute(final Runnable command) {
+            final Context context = CONTEXT.get();
+            if(context == null || context.executorService == null) {
+                defaultExecutor.execute(command);
+                return;
+            }
+            context.executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Context previous = CONTEXT.get();
+                    CONTEXT.set(context);
+                    try {
+                        command.run();
+                    } finally {
+                        if(previous == null) {
+                            CONTEXT.remove();
+                        }
+                        else {
+                            CONTEXT.set(previous);
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            //The engine executor is shared, the session executors are shutdown by their session
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
+}
@@ -47,26 +47,34 @@ import org.orbisgis.orbisserver.api.model.Data;
 import org.orbisgis.orbisserver.api.model.Operation;
 import org.orbisgis.orbisserver.api.model.Result;
 import org.orbisgis.orbisserver.api.model.StatusInfo;
-import org.orbisgis.orbisserver.api.service.Service;
+import org.orbisgis.orbisserver.api.service.ObservableService;
+import org.orbisgis.orbisserver.api.service.OperationListener;
 import org.orbisgis.orbisserver.api.service.ServiceFactory;
 import org.orbiswps.scripts.WpsScriptPlugin;
 import org.orbiswps.server.WpsServer;
 import org.orbiswps.server.WpsServerImpl;
+import org.orbiswps.server.WpsServerListener;
 import org.orbiswps.server.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 import java.io.*;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
@@ -74,7 +82,7 @@ import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 /**
  * Service managing the wps part for the core-server module
  */
-public class WpsService implements Service {
+public class WpsService implements ObservableService {
 
     /** Logger of the class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(WpsService.class);
@@ -88,7 +96,29 @@ public class WpsService implements Service {
     /** DataSource to use for the SQL requests.*/
     private DataSource ds;
     /** Cached list of operations available.*/
-    private List<Operation> cachedOpList;
+    private volatile List<Operation> cachedOpList;
+    /** Key of the script set of the WpsServer in the ProcessDescriptionCache. */
+    private volatile String scriptSetKey;
+    /** WPS engine shared by the sessions, null if the service has its own WpsServer. */
+    private SharedWpsEngine sharedEngine;
+    /** Listener of the script set of the WpsServer. */
+    private WpsServerListener scriptListener;
+    /** Listeners notified once the operation list has been refreshed. */
+    private List<OperationListener> operationListenerList = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a service with its own WpsServer.
+     */
+    public WpsService() {
+    }
+
+    /**
+     * Creates a service using the given shared WPS engine.
+     * @param sharedEngine WPS engine shared by the sessions.
+     */
+    public WpsService(SharedWpsEngine sharedEngine) {
+        this.sharedEngine = sharedEngine;
+    }
 
     @Override
     public StatusInfo executeOperation(ExecuteRequest request) {
@@ -117,8 +147,6 @@ public class WpsService implements Service {
             }
 
 
-            Unmarshaller unmarshaller = JaxbContainer.JAXBCONTEXT.createUnmarshaller();
-            Marshaller marshaller = JaxbContainer.JAXBCONTEXT.createMarshaller();
             ObjectFactory factory = new ObjectFactory();
             //Creates the ExecuteRequestType
 
@@ -128,17 +156,7 @@ public class WpsService implements Service {
             execute.setResponse("document");
             execute.setMode("auto");
 
-            //Marshall the ExecuteRequestType object into an OutputStream
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            marshaller.marshal(factory.createExecute(execute), out);
-            //Write the OutputStream content into an Input stream before sending it to the wpsService
-            InputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
-            ByteArrayOutputStream xml = (ByteArrayOutputStream) wpsServer.callOperation(in);
-            //Get back the result of the DescribeProcess request as a BufferReader
-            InputStream resultXml = new ByteArrayInputStream(xml.toByteArray());
-            //Unmarshall the result and check that the object is the same as the resource unmashalled xml.
-            Object resultObject = unmarshaller.unmarshal(resultXml);
+            Object resultObject = callWpsServer(factory.createExecute(execute));
 
             net.opengis.wps._2_0.StatusInfo statusInfo = (net.opengis.wps._2_0.StatusInfo) resultObject;
             StatusInfo status = new StatusInfo(statusInfo.getJobID());
@@ -164,22 +182,10 @@ public class WpsService implements Service {
     public StatusInfo getStatus(StatusRequest request) {
 
         try {
-            Unmarshaller unmarshaller = JaxbContainer.JAXBCONTEXT.createUnmarshaller();
-            Marshaller marshaller = JaxbContainer.JAXBCONTEXT.createMarshaller();
             //Get the corresponding GetStatus
             GetStatus getStatus = new GetStatus();
             getStatus.setJobID(request.getId());
-            //Marshall the GetStatus object into an OutputStream
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            marshaller.marshal(getStatus, out);
-            //Write the OutputStream content into an Input stream before sending it to the wpsService
-            InputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
-            ByteArrayOutputStream xml = (ByteArrayOutputStream) wpsServer.callOperation(in);
-            //Get back the result of the DescribeProcess request as a BufferReader
-            InputStream resultXml = new ByteArrayInputStream(xml.toByteArray());
-            //Unmarshall the result and check that the object is the same as the resource unmashalled xml.
-            net.opengis.wps._2_0.StatusInfo info = (net.opengis.wps._2_0.StatusInfo)unmarshaller.unmarshal(resultXml);
+            net.opengis.wps._2_0.StatusInfo info = (net.opengis.wps._2_0.StatusInfo)callWpsServer(getStatus);
             StatusInfo statusInfo = new StatusInfo(info.getJobID());
             statusInfo.setEstimatedCompletion(info.getEstimatedCompletion());
             statusInfo.setNextPoll(info.getNextPoll());
@@ -205,30 +211,16 @@ public class WpsService implements Service {
     public Result getResult(StatusRequest request) {
 
         try {
-            Unmarshaller unmarshaller = JaxbContainer.JAXBCONTEXT.createUnmarshaller();
-            Marshaller marshaller = JaxbContainer.JAXBCONTEXT.createMarshaller();
             //Get the corresponding GetResult
             GetResult getResult = new GetResult();
             getResult.setJobID(request.getId());
-            //Marshall the GetResult object into an OutputStream
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            marshaller.marshal(getResult, out);
-            //Write the OutputStream content into an Input stream before sending it to the wpsService
-            InputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
-            ByteArrayOutputStream xml = (ByteArrayOutputStream) wpsServer.callOperation(in);
-            //Get back the result of the DescribeProcess request as a BufferReader
-            InputStream resultXml = new ByteArrayInputStream(xml.toByteArray());
-            //Unmarshall the result and check that the object is the same as the resource unmashalled xml.
-            net.opengis.wps._2_0.Result result = (net.opengis.wps._2_0.Result)unmarshaller.unmarshal(resultXml);
+            net.opengis.wps._2_0.Result result = (net.opengis.wps._2_0.Result)callWpsServer(getResult);
             Result res = new Result(result.getJobID());
             res.setExpirationDate(result.getExpirationDate());
             List<Output> outputList = new ArrayList<>();
             Operation currentOp = null;
-            for(Operation op : cachedOpList){
-                if(op.getId().equalsIgnoreCase(request.getProcessId())){
-                    currentOp = op;
-                }
+            if(request.getProcessId() != null) {
+                currentOp = getOperation(request.getProcessId());
             }
             for(DataOutputType outData : result.getOutput()){
                 Output output = new Output(outData.getId());
@@ -246,7 +238,7 @@ public class WpsService implements Service {
                     output.setData(data);
                 }
                 else if(outData.isSetReference()) {
-                    output.setReference(outData.getReference().getHref());
+                    output.setReference(localizeReference(result.getJobID(), outData.getReference().getHref()));
                 }
                 outputList.add(output);
             }
@@ -259,12 +251,44 @@ public class WpsService implements Service {
         return null;
     }
 
+    /**
+     * With a shared engine, moves the output file written in the engine workspace into an output folder of the job
+     * under the session workspace, so that the sessions do not share their output files.
+     * @param jobId Id of the job which has written the output.
+     * @param reference Reference of the output.
+     * @return The reference of the output in the session workspace, or the given reference if it is not a file of
+     * the engine workspace.
+     */
+    private String localizeReference(String jobId, String reference) {
+        if(sharedEngine == null || workspaceFolder == null || reference == null || !reference.startsWith("file:")) {
+            return reference;
+        }
+        try {
+            Path path = Paths.get(new URI(reference)).toAbsolutePath().normalize();
+            Path engineWorkspace = sharedEngine.getWorkspaceFolder().toPath().toAbsolutePath().normalize();
+            if(!path.startsWith(engineWorkspace) || path.getFileName() == null) {
+                return reference;
+            }
+            File jobFolder = new File(new File(workspaceFolder, "jobs"), jobId);
+            Path target = jobFolder.toPath().resolve(path.getFileName().toString());
+            //The result may be requested several times, the output is only moved on the first request
+            if(!Files.exists(target) && Files.exists(path)) {
+                if(!jobFolder.isDirectory() && !jobFolder.mkdirs()) {
+                    throw new IOException("Unable to create the folder '"+jobFolder+"'.");
+                }
+                Files.move(path, target, REPLACE_EXISTING);
+            }
+            return target.toUri().toString();
+        } catch (URISyntaxException | IllegalArgumentException | IOException e) {
+            LOGGER.error("Unable to move the result '"+reference+"' into the session workspace.\n"+e.getMessage());
+            return reference;
+        }
+    }
+
     @Override
     public List<Operation> getAllOperation() {
-        cachedOpList = new ArrayList<>();
+        List<Operation> opList = new ArrayList<>();
         try {
-            Unmarshaller unmarshaller = JaxbContainer.JAXBCONTEXT.createUnmarshaller();
-            Marshaller marshaller = JaxbContainer.JAXBCONTEXT.createMarshaller();
             ObjectFactory factory = new ObjectFactory();
             //Creates the getCapabilities
             GetCapabilitiesType getCapabilitiesType = new GetCapabilitiesType();
@@ -277,18 +301,8 @@ public class WpsService implements Service {
             SectionsType sectionsType = new SectionsType();
             sectionsType.getSection().add("All");
             getCapabilitiesType.setSections(sectionsType);
-            //Marshall the DescribeProcess object into an OutputStream
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            marshaller.marshal(factory.createGetCapabilities(getCapabilitiesType), out);
-            //Write the OutputStream content into an Input stream before sending it to the wpsService
-            InputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
-            ByteArrayOutputStream xml = (ByteArrayOutputStream) wpsServer.callOperation(in);
-            //Get back the result of the DescribeProcess request as a BufferReader
-            ByteArrayInputStream resultXml = new ByteArrayInputStream(xml.toByteArray());
-            //Unmarshall the result and check that the object is the same as the resource unmashalled xml.
-            Object resultObject = unmarshaller.unmarshal(resultXml);
-            WPSCapabilitiesType wpsCapabilitiesType = (WPSCapabilitiesType) ((JAXBElement) resultObject).getValue();
+            Object resultObject = callWpsServer(factory.createGetCapabilities(getCapabilitiesType));
+            WPSCapabilitiesType wpsCapabilitiesType = (WPSCapabilitiesType) resultObject;
 
             List<KeywordsType> keywordsType = null;
             ArrayList<String> listWordEnglish = new ArrayList<>();
@@ -306,12 +320,18 @@ public class WpsService implements Service {
                         }
                     }
                 }
-                cachedOpList.add(op);
+                opList.add(op);
+            }
+            String newScriptSetKey = ProcessDescriptionCache.buildKey(wpsCapabilitiesType.getUpdateSequence(), opList);
+            if(scriptSetKey != null && !scriptSetKey.equals(newScriptSetKey)){
+                ProcessDescriptionCache.invalidate(scriptSetKey);
             }
+            scriptSetKey = newScriptSetKey;
         }
         catch (Exception e){
             LOGGER.error("Unable to get the list of the operations.\n"+e.getMessage());
         }
+        cachedOpList = opList;
         return cachedOpList;
     }
 
@@ -327,164 +347,289 @@ public class WpsService implements Service {
 
     @Override
     public Operation getOperation(String id) {
-        Operation operation = null;
+        Operation summary = null;
         for(Operation op : cachedOpList){
             if(op.getId().equals(id)){
-                operation = op;
-                operation.setAbstr(op.getAbstr());
-                operation.setInputList(new ArrayList<Input>());
-                operation.setOutputList(new ArrayList<Output>());
-                operation.setKeyWord(new ArrayList<String>());
-                try {
-                    Unmarshaller unmarshaller = JaxbContainer.JAXBCONTEXT.createUnmarshaller();
-                    Marshaller marshaller = JaxbContainer.JAXBCONTEXT.createMarshaller();
-                    //Creates the DescribeProcess
-                    DescribeProcess describeProcess = new DescribeProcess();
-                    describeProcess.setLang("en");
-                    CodeType codeType = new CodeType();
-                    codeType.setValue(id);
-                    describeProcess.getIdentifier().add(codeType);
-                    //Marshall the DescribeProcess object into an OutputStream
-                    marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-                    ByteArrayOutputStream out = new ByteArrayOutputStream();
-                    marshaller.marshal(describeProcess, out);
-                    //Write the OutputStream content into an Input stream before sending it to the wpsService
-                    InputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
-                    ByteArrayOutputStream xml = (ByteArrayOutputStream) wpsServer.callOperation(in);
-                    //Get back the result of the DescribeProcess request as a BufferReader
-                    InputStream resultXml = new ByteArrayInputStream(xml.toByteArray());
-                    //Unmarshall the result and check that the object is the same as the resource unmashalled xml.
-                    Object resultObject = unmarshaller.unmarshal(resultXml);
-                    if(resultObject instanceof ProcessOfferings) {
-                        ProcessOfferings processOfferings = (ProcessOfferings)resultObject;
-                        if(processOfferings.getProcessOffering() != null && !processOfferings.getProcessOffering().isEmpty()){
-                            for(InputDescriptionType idt : processOfferings.getProcessOffering().get(0).getProcess().getInput()){
-                                String title = idt.getTitle().get(0).getValue();
-                                String name = idt.getDataDescription().getValue().getClass().getSimpleName();
-                                String type = null;
-                                Boolean optional = (idt.getMinOccurs().intValue()==0);
-                                Map<String, Object> attributeMap = new HashMap<>();
-                                DataDescriptionType dataDescriptionType = idt.getDataDescription().getValue();
-                                if(dataDescriptionType instanceof LiteralDataType){
-                                    if(name.equalsIgnoreCase("LiteralDataType")) {
-                                        LiteralDataType literalData = (LiteralDataType) idt.getDataDescription().getValue();
-                                        for (LiteralDataType.LiteralDataDomain ldd : literalData.getLiteralDataDomain()) {
-                                            if (ldd.isDefault()) {
-                                                String dataType = ldd.getDataType().getValue();
-                                                if (dataType.equalsIgnoreCase("string")) {
-                                                    type = "string";
-                                                }
-                                                if (dataType.equalsIgnoreCase("boolean")) {
-                                                    type = "boolean";
-                                                    attributeMap.put("value", "false");
-                                                    if (ldd.isSetDefaultValue()) {
-                                                        attributeMap.put("value", ldd.getDefaultValue().getValue());
-                                                    }
-                                                }
-                                                if (dataType.equalsIgnoreCase("double") || dataType.equalsIgnoreCase("integer") ||
-                                                        dataType.equalsIgnoreCase("float") || dataType.equalsIgnoreCase("short") ||
-                                                        dataType.equalsIgnoreCase("byte") || dataType.equalsIgnoreCase("unsigned_byte") ||
-                                                        dataType.equalsIgnoreCase("long")) {
-                                                    if (dataType.equalsIgnoreCase("double") || dataType.equalsIgnoreCase("float")) {
-                                                        attributeMap.put("spacing", "0.1");
-                                                    }
-                                                    type = "number";
-                                                    if (ldd.isSetDefaultValue()) {
-                                                        attributeMap.put("value", ldd.getDefaultValue().getValue());
+                summary = op;
+            }
+        }
+        if(summary == null){
+            return null;
+        }
+        Operation operation = ProcessDescriptionCache.get(scriptSetKey, id);
+        if(operation == null){
+            operation = describeOperation(summary);
+            if(operation != null){
+                operation = ProcessDescriptionCache.putIfAbsent(scriptSetKey, id, operation);
+            }
+        }
+        return operation;
+    }
+
+    /**
+     * Builds the full description of an operation with a DescribeProcess request.
+     * The returned Operation is read only as it is shared between all the sessions using the same script set.
+     * @param summary Operation from the GetCapabilities response.
+     * @return The described operation, null if the DescribeProcess request failed.
+     */
+    private Operation describeOperation(Operation summary) {
+        String id = summary.getId();
+        List<Input> inputList = new ArrayList<>();
+        List<Output> outputList = new ArrayList<>();
+        try {
+            //Creates the DescribeProcess
+            DescribeProcess describeProcess = new DescribeProcess();
+            describeProcess.setLang("en");
+            CodeType codeType = new CodeType();
+            codeType.setValue(id);
+            describeProcess.getIdentifier().add(codeType);
+            Object resultObject = callWpsServer(describeProcess);
+            if(resultObject instanceof ProcessOfferings) {
+                ProcessOfferings processOfferings = (ProcessOfferings)resultObject;
+                if(processOfferings.getProcessOffering() != null && !processOfferings.getProcessOffering().isEmpty()){
+                    for(InputDescriptionType idt : processOfferings.getProcessOffering().get(0).getProcess().getInput()){
+                        String title = idt.getTitle().get(0).getValue();
+                        String name = idt.getDataDescription().getValue().getClass().getSimpleName();
+                        String type = null;
+                        Boolean optional = (idt.getMinOccurs().intValue()==0);
+                        Map<String, Object> attributeMap = new HashMap<>();
+                        DataDescriptionType dataDescriptionType = idt.getDataDescription().getValue();
+                        if(dataDescriptionType instanceof LiteralDataType){
+                            if(name.equalsIgnoreCase("LiteralDataType")) {
+                                LiteralDataType literalData = (LiteralDataType) idt.getDataDescription().getValue();
+                                for (LiteralDataType.LiteralDataDomain ldd : literalData.getLiteralDataDomain()) {
+                                    if (ldd.isDefault()) {
+                                        String dataType = ldd.getDataType().getValue();
+                                        if (dataType.equalsIgnoreCase("string")) {
+                                            type = "string";
+                                        }
+                                        if (dataType.equalsIgnoreCase("boolean")) {
+                                            type = "boolean";
+                                            attributeMap.put("value", "false");
+                                            if (ldd.isSetDefaultValue()) {
+                                                attributeMap.put("value", ldd.getDefaultValue().getValue());
+                                            }
+                                        }
+                                        if (dataType.equalsIgnoreCase("double") || dataType.equalsIgnoreCase("integer") ||
+                                                dataType.equalsIgnoreCase("float") || dataType.equalsIgnoreCase("short") ||
+                                                dataType.equalsIgnoreCase("byte") || dataType.equalsIgnoreCase("unsigned_byte") ||
+                                                dataType.equalsIgnoreCase("long")) {
+                                            if (dataType.equalsIgnoreCase("double") || dataType.equalsIgnoreCase("float")) {
+                                                attributeMap.put("spacing", "0.1");
+                                            }
+                                            type = "number";
+                                            if (ldd.isSetDefaultValue()) {
+                                                attributeMap.put("value", ldd.getDefaultValue().getValue());
+                                            }
+                                            if (ldd.isSetAllowedValues()) {
+                                                for (Object valueOrRange : ldd.getAllowedValues().getValueOrRange()) {
+                                                    if (valueOrRange instanceof ValueType) {
+                                                        ValueType value = (ValueType) valueOrRange;
+                                                        attributeMap.put("value", value.getValue());
                                                     }
-                                                    if (ldd.isSetAllowedValues()) {
-                                                        for (Object valueOrRange : ldd.getAllowedValues().getValueOrRange()) {
-                                                            if (valueOrRange instanceof ValueType) {
-                                                                ValueType value = (ValueType) valueOrRange;
-                                                                attributeMap.put("value", value.getValue());
-                                                            }
-                                                            if (valueOrRange instanceof RangeType) {
-                                                                RangeType range = (RangeType) valueOrRange;
-                                                                attributeMap.put("min", range.getMinimumValue().getValue());
-                                                                attributeMap.put("max", range.getMaximumValue().getValue());
-                                                                attributeMap.put("spacing", range.getSpacing().getValue());
-                                                            }
-                                                        }
+                                                    if (valueOrRange instanceof RangeType) {
+                                                        RangeType range = (RangeType) valueOrRange;
+                                                        attributeMap.put("min", range.getMinimumValue().getValue());
+                                                        attributeMap.put("max", range.getMaximumValue().getValue());
+                                                        attributeMap.put("spacing", range.getSpacing().getValue());
                                                     }
                                                 }
                                             }
                                         }
                                     }
                                 }
-                                if(dataDescriptionType instanceof JDBCTable){
-                                    attributeMap.put("value", "Table name");
-                                    JDBCTable table = (JDBCTable)dataDescriptionType;
-                                    if(table.getDefaultValue() != null && !table.getDefaultValue().isEmpty()){
-                                        attributeMap.put("value", table.getDefaultValue());
-                                    }
-                                }
-                                if(dataDescriptionType instanceof JDBCColumn){
-                                    attributeMap.put("value", "Columns name");
-                                    JDBCColumn column = (JDBCColumn)dataDescriptionType;
-                                    if(column.getDefaultValues() != null && column.getDefaultValues().length>0){
-                                        StringBuilder str = new StringBuilder();
-                                        for(String val : column.getDefaultValues()){
-                                            if(str.length() > 0){
-                                                str.append(",");
-                                            }
-                                            str.append(val);
-                                        }
-                                        attributeMap.put("value", str.toString());
+                            }
+                        }
+                        if(dataDescriptionType instanceof JDBCTable){
+                            attributeMap.put("value", "Table name");
+                            JDBCTable table = (JDBCTable)dataDescriptionType;
+                            if(table.getDefaultValue() != null && !table.getDefaultValue().isEmpty()){
+                                attributeMap.put("value", table.getDefaultValue());
+                            }
+                        }
+                        if(dataDescriptionType instanceof JDBCColumn){
+                            attributeMap.put("value", "Columns name");
+                            JDBCColumn column = (JDBCColumn)dataDescriptionType;
+                            if(column.getDefaultValues() != null && column.getDefaultValues().length>0){
+                                StringBuilder str = new StringBuilder();
+                                for(String val : column.getDefaultValues()){
+                                    if(str.length() > 0){
+                                        str.append(",");
                                     }
+                                    str.append(val);
                                 }
-                                if(dataDescriptionType instanceof JDBCValue){
-                                    attributeMap.put("value", "Values name");
-                                    JDBCValue value = (JDBCValue)dataDescriptionType;
-                                    if(value.getDefaultValues() != null && value.getDefaultValues().length>0){
-                                        StringBuilder str = new StringBuilder();
-                                        for(String val : value.getDefaultValues()){
-                                            if(str.length() > 0){
-                                                str.append(",");
-                                            }
-                                            str.append(val);
-                                        }
-                                        attributeMap.put("value", str.toString());
+                                attributeMap.put("value", str.toString());
+                            }
+                        }
+                        if(dataDescriptionType instanceof JDBCValue){
+                            attributeMap.put("value", "Values name");
+                            JDBCValue value = (JDBCValue)dataDescriptionType;
+                            if(value.getDefaultValues() != null && value.getDefaultValues().length>0){
+                                StringBuilder str = new StringBuilder();
+                                for(String val : value.getDefaultValues()){
+                                    if(str.length() > 0){
+                                        str.append(",");
                                     }
+                                    str.append(val);
                                 }
-                                if(dataDescriptionType instanceof Enumeration){
-                                    Enumeration enumeration = (Enumeration)dataDescriptionType;
-                                    attributeMap.put("multiSelection", enumeration.isMultiSelection());
-                                    attributeMap.put("valueList", enumeration.getValues());
-                                    List<String> nameList = new ArrayList<>();
-                                    for(TranslatableString translatableString : enumeration.getValuesNames()){
-                                        for(LanguageStringType languageStringType : translatableString.getStrings()){
-                                            if(languageStringType.getLang().equalsIgnoreCase("en")){
-                                                nameList.add(languageStringType.getValue());
-                                            }
-                                        }
+                                attributeMap.put("value", str.toString());
+                            }
+                        }
+                        if(dataDescriptionType instanceof Enumeration){
+                            Enumeration enumeration = (Enumeration)dataDescriptionType;
+                            attributeMap.put("multiSelection", enumeration.isMultiSelection());
+                            attributeMap.put("valueList", enumeration.getValues());
+                            List<String> nameList = new ArrayList<>();
+                            for(TranslatableString translatableString : enumeration.getValuesNames()){
+                                for(LanguageStringType languageStringType : translatableString.getStrings()){
+                                    if(languageStringType.getLang().equalsIgnoreCase("en")){
+                                        nameList.add(languageStringType.getValue());
                                     }
-                                    attributeMap.put("nameList", nameList);
                                 }
-                                String identifier = idt.getIdentifier().getValue();
-                                Input input = new Input(title, name, identifier, type, attributeMap, optional);
-                                operation.addInput(input);
-                            }
-                            for(OutputDescriptionType odt : processOfferings.getProcessOffering().get(0).getProcess().getOutput()){
-                                String title = odt.getTitle().get(0).getValue();
-                                String identifier = odt.getIdentifier().getValue();
-                                Output output = new Output(title, identifier);
-                                operation.addOutput(output);
                             }
+                            attributeMap.put("nameList", nameList);
                         }
+                        String identifier = idt.getIdentifier().getValue();
+                        Input input = new Input(title, name, identifier, type, attributeMap, optional);
+                        inputList.add(input);
+                    }
+                    for(OutputDescriptionType odt : processOfferings.getProcessOffering().get(0).getProcess().getOutput()){
+                        String title = odt.getTitle().get(0).getValue();
+                        String identifier = odt.getIdentifier().getValue();
+                        Output output = new Output(title, identifier);
+                        outputList.add(output);
                     }
-                }
-                catch(Exception e){
-                    LOGGER.error("Unable to get the Operation with the given id.\n"+e.getMessage());
                 }
             }
         }
+        catch(Exception e){
+            LOGGER.error("Unable to get the Operation with the given id.\n"+e.getMessage());
+            return null;
+        }
+        Operation operation = new Operation(summary.getTitle(), id);
+        operation.setAbstr(summary.getAbstr());
+        operation.setKeyWord(Collections.unmodifiableList(new ArrayList<>(summary.getKeyWord())));
+        operation.setInputList(Collections.unmodifiableList(inputList));
+        operation.setOutputList(Collections.unmodifiableList(outputList));
         return operation;
     }
 
     /**
-     * Creates an  instance of the WpsServer.
+     * Sends the given request to the WpsServer and returns its response.
+     * If the WpsServer is the embedded WpsServerImpl, the request object is directly given to it and the response
+     * object is directly returned. Otherwise (i.e. a remote WPS server) the request is marshalled and the response
+     * unmarshalled.
+     * @param request JAXB object of the request to send.
+     * @return The response of the WpsServer, unwrapped from its JAXBElement if any.
+     * @throws JAXBException Exception thrown if the request or the response can not be (un)marshalled.
+     */
+    private Object callWpsServer(Object request) throws JAXBException {
+        Object response;
+        //Route the shared engine to the session database and executor during the call
+        if(sharedEngine != null) {
+            sharedEngine.enter(ds, executorService);
+        }
+        try {
+            if (wpsServer instanceof WpsServerImpl) {
+                response = invokeWpsServer((WpsServerImpl) wpsServer, request);
+            } else {
+                response = marshallAndCallWpsServer(request);
+            }
+        }
+        finally {
+            if(sharedEngine != null) {
+                sharedEngine.exit();
+            }
+        }
+        if(response instanceof JAXBElement){
+            response = ((JAXBElement) response).getValue();
+        }
+        return response;
+    }
+
+    /**
+     * Gives the request object to the matching operation of the embedded WpsServerImpl, without any serialization.
+     * The request types without matching operation are sent through the XML path.
+     * @param server Embedded WpsServerImpl.
+     * @param request JAXB object of the request, wrapped or not in a JAXBElement.
+     * @return The response object of the WpsServer.
+     * @throws JAXBException Exception thrown if the request has to be marshalled and can not be.
+     */
+    private Object invokeWpsServer(WpsServerImpl server, Object request) throws JAXBException {
+        Object value = request;
+        if(value instanceof JAXBElement){
+            value = ((JAXBElement) value).getValue();
+        }
+        if(value instanceof ExecuteRequestType){
+            return server.execute((ExecuteRequestType) value);
+        }
+        if(value instanceof GetStatus){
+            return server.getStatus((GetStatus) value);
+        }
+        if(value instanceof GetResult){
+            return server.getResult((GetResult) value);
+        }
+        if(value instanceof DescribeProcess){
+            return server.describeProcess((DescribeProcess) value);
+        }
+        if(value instanceof GetCapabilitiesType){
+            return server.getCapabilities((GetCapabilitiesType) value);
+        }
+        return marshallAndCallWpsServer(request);
+    }
+
+    /**
+     * Marshalls the given request, sends it to the WpsServer and unmarshalls its response.
+     * The Marshaller and Unmarshaller are borrowed from the JaxbPool.
+     * @param request JAXB object of the request to send.
+     * @return The unmarshalled response of the WpsServer.
+     * @throws JAXBException Exception thrown if the request or the response can not be (un)marshalled.
+     */
+    private Object marshallAndCallWpsServer(Object request) throws JAXBException {
+        //Marshall the request object into an OutputStream
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Marshaller marshaller = JaxbPool.acquireMarshaller();
+        try {
+            marshaller.marshal(request, out);
+        }
+        finally {
+            JaxbPool.release(marshaller);
+        }
+        //Write the OutputStream content into an Input stream before sending it to the wpsService
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        ByteArrayOutputStream xml = (ByteArrayOutputStream) wpsServer.callOperation(in);
+        //Get back the result of the request as an InputStream and unmarshall it
+        InputStream resultXml = new ByteArrayInputStream(xml.toByteArray());
+        Unmarshaller unmarshaller = JaxbPool.acquireUnmarshaller();
+        try {
+            return unmarshaller.unmarshal(resultXml);
+        }
+        finally {
+            JaxbPool.release(unmarshaller);
+        }
+    }
+
+    /**
+     * Creates an  instance of the WpsServer, or uses the shared one.
      */
     private void createWpsServerInstance(){
+        //Refreshes the operation list once the script set changes
+        scriptListener = new WpsServerListener() {
+            @Override
+            public void onScriptAdd() {
+                onScriptSetChanged();
+            }
+
+            @Override
+            public void onScriptRemoved() {
+                onScriptSetChanged();
+            }
+        };
+        if(sharedEngine != null){
+            wpsServer = sharedEngine.getWpsServer();
+            sharedEngine.addScriptListener(scriptListener);
+            return;
+        }
         File f = new File(workspaceFolder,"wpsServer.properties");
         InputStream is = null;
         try {
@@ -507,11 +652,39 @@ public class WpsService implements Service {
         WpsScriptPlugin scriptPlugin = new WpsScriptPlugin();
         scriptPlugin.setWpsServer(wpsServer);
         scriptPlugin.activate();
+
+        wpsServer.addWpsServerListener(scriptListener);
+    }
+
+    /**
+     * Drops the cached process descriptions, requests again the operation list and notifies the operation listeners.
+     */
+    private void onScriptSetChanged(){
+        if(sharedEngine == null && scriptSetKey != null) {
+            ProcessDescriptionCache.invalidate(scriptSetKey);
+        }
+        getAllOperation();
+        for(OperationListener listener : operationListenerList){
+            listener.onOperationsChanged(this);
+        }
+    }
+
+    @Override
+    public void addOperationListener(OperationListener listener) {
+        operationListenerList.add(listener);
+    }
+
+    @Override
+    public void removeOperationListener(OperationListener listener) {
+        operationListenerList.remove(listener);
     }
 
     @Override
     public void shutdown(){
-        //Nothing to do
+        if(sharedEngine != null && scriptListener != null){
+            sharedEngine.removeScriptListener(scriptListener);
+        }
+        operationListenerList.clear();
     }
 
     @Override
@@ -42,7 +42,13 @@ import org.apache.felix.ipojo.annotations.*;
 import org.orbisgis.orbisserver.api.BaseServer;
 import org.orbisgis.orbisserver.api.service.Service;
 import org.orbisgis.orbisserver.api.service.ServiceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wisdom.api.configuration.ApplicationConfiguration;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.util.Map;
 
 /**
@@ -56,12 +62,25 @@ import java.util.Map;
 @Instantiate
 public class WpsServiceFactory implements ServiceFactory {
 
+    /** Configuration key enabling the WPS engine shared by all the sessions. */
+    public static final String SHARED_ENGINE_KEY = "orbisserver.wps.sharedEngine";
+
+    /** Logger of the class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(WpsServiceFactory.class);
+
     @Requires
     private BaseServer baseServer;
 
+    @Requires
+    private ApplicationConfiguration configuration;
+
+    /** WPS engine shared by the sessions, created on the first service creation in shared mode. */
+    private SharedWpsEngine sharedEngine;
+
     @Override
     public Service createService(Map<String, Object> properties) {
-        WpsService wpsService = new WpsService();
+        SharedWpsEngine engine = getSharedEngine();
+        WpsService wpsService = engine == null ? new WpsService() : new WpsService(engine);
         wpsService.start(properties);
         //initiate the wpsService with a first request
         wpsService.getAllOperation();
@@ -79,6 +98,25 @@ public class WpsServiceFactory implements ServiceFactory {
     }
 
     @Invalidate
-    public void stop(){
+    public synchronized void stop(){
+        if(sharedEngine != null){
+            sharedEngine.shutdown();
+            sharedEngine = null;
+        }
+    }
+
+    /**
+     * Returns the WPS engine shared by the sessions, creating it if needed.
+     * @return The shared engine, or null if the shared mode is disabled or if the engine can not be created.
+     */
+    private synchronized SharedWpsEngine getSharedEngine(){
+        if(sharedEngine == null && configuration.getBooleanWithDefault(SHARED_ENGINE_KEY, false)){
+            try {
+                sharedEngine = new SharedWpsEngine(new File("workspace", "wps-shared"));
+            } catch (IOException | SQLException e) {
+                LOGGER.error("Unable to start the shared WPS engine, each session uses its own.\n"+e.getMessage());
+            }
+        }
+        return sharedEngine;
     }
 }